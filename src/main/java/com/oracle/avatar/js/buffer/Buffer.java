@@ -146,9 +146,19 @@ public final class Buffer {
         return new Buffer(byteBuffer.duplicate());
     }
 
+    /**
+     * The bytes of this buffer, from 0 to its capacity. The backing array when
+     * this buffer spans all of it, else a copy: a slice of a heap buffer is a
+     * region of its parent's array.
+     */
     public byte[] array() {
         if (byteBuffer.hasArray()) {
-            return byteBuffer.array();
+            final byte[] array = byteBuffer.array();
+            final int offset = byteBuffer.arrayOffset();
+            if (offset == 0 && byteBuffer.capacity() == array.length) {
+                return array;
+            }
+            return Arrays.copyOfRange(array, offset, offset + byteBuffer.capacity());
         } else {
             final ByteBuffer dup = byteBuffer.duplicate();
             final byte[] data = new byte[dup.capacity()];
@@ -189,8 +199,7 @@ public final class Buffer {
     }
 
     public String toStringContent(final Charset charset, final int position, final int limit) {
-        final ByteBuffer slice = toByteBuffer(position, limit);
-        return new String(slice.array(), charset);
+        return new String(bytes(position, limit - position), charset);
     }
 
     public Buffer get(final byte[] dest) {
@@ -281,34 +290,50 @@ public final class Buffer {
 
     public int copy(final Buffer targetBuffer, final int targetStart, final int sourceStart, final int sourceEnd) {
         final int len = Math.min(sourceEnd - sourceStart, targetBuffer.byteBuffer.capacity());
-        if (byteBuffer.hasArray() && targetBuffer.byteBuffer.hasArray()) {
-            System.arraycopy(byteBuffer.array(), sourceStart, targetBuffer.byteBuffer.array(), targetStart, len);
-        } else if (targetBuffer.byteBuffer.hasArray()) {
-            System.arraycopy(array(), sourceStart, targetBuffer.byteBuffer.array(), targetStart, len);
-        } else {
-            final int pos = targetBuffer.byteBuffer.position();
-            try {
-                targetBuffer.byteBuffer.position(targetStart);
-                targetBuffer.byteBuffer.put(array(), sourceStart, len);
-            } finally {
-                targetBuffer.byteBuffer.position(pos);
-            }
-        }
+        // region to region, memmove semantics when both are views of the same memory
+        final ByteBuffer target = targetBuffer.byteBuffer.duplicate();
+        target.clear();
+        target.position(targetStart);
+        target.put(region(sourceStart, sourceStart + len));
         return len;
     }
 
     public String toString(final String encoding, final int start, final int length)
             throws UnsupportedEncodingException {
-        return Buffer.fromBytes(Arrays.copyOfRange(array(), start, start + length), encoding);
+        return Buffer.fromBytes(bytes(start, length), encoding);
     }
 
+    /**
+     * A Buffer sharing the bytes from position to end with this one, as node's slice does.
+     */
     public Buffer slice(final int position, final int end) {
-        return new Buffer(Arrays.copyOfRange(array(), position, end));
+        return new Buffer(region(position, end));
+    }
+
+    // A view of the bytes from start to end, whatever the position and limit of this buffer.
+    private ByteBuffer region(final int start, final int end) {
+        final ByteBuffer dup = byteBuffer.duplicate();
+        dup.clear();
+        dup.limit(end);
+        dup.position(start);
+        return dup.slice();
+    }
+
+    // A copy of length bytes from start, only those bytes are copied out of a direct buffer.
+    private byte[] bytes(final int start, final int length) {
+        if (byteBuffer.hasArray()) {
+            final int offset = byteBuffer.arrayOffset() + start;
+            return Arrays.copyOfRange(byteBuffer.array(), offset, offset + length);
+        }
+        final byte[] data = new byte[length];
+        region(start, start + length).get(data);
+        return data;
     }
 
     public void fill(final Double value, final int start, final int end) {
         if (byteBuffer.hasArray()) {
-            Arrays.fill(byteBuffer.array(), start, end, value.byteValue());
+            final int offset = byteBuffer.arrayOffset();
+            Arrays.fill(byteBuffer.array(), offset + start, offset + end, value.byteValue());
         } else {
             final byte[] data = new byte[end - start];
             Arrays.fill(data, value.byteValue());
@@ -664,6 +689,22 @@ public final class Buffer {
         return str == null ? Buffer.EMPTY_STRING : str;
     }
 
+    // copies the remaining bytes of buffers, in order, into one heap buffer,
+    // used to write many small chunks to a stream at once. A direct buffer
+    // per gather would cost more than the copy the stream makes of a heap one.
+    public static ByteBuffer gather(final ByteBuffer[] buffers) {
+        int size = 0;
+        for (final ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        final ByteBuffer gathered = ByteBuffer.allocate(size);
+        for (final ByteBuffer buffer : buffers) {
+            gathered.put(buffer.duplicate());
+        }
+        gathered.flip();
+        return gathered;
+    }
+
     public static Buffer copyBytes(final ByteBuffer buffer) {
         final byte[] bytes = new byte[buffer.remaining()];
         buffer.get(bytes);
@@ -28,8 +28,9 @@ package com.oracle.avatar.js.crypto;
 import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -37,7 +38,6 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
@@ -50,15 +50,17 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.DHParameterSpec;
@@ -70,6 +72,7 @@ import javax.net.ssl.SSLContext;
 import com.oracle.avatar.js.Loader;
 import com.oracle.avatar.js.buffer.Base64Decoder;
 import com.oracle.avatar.js.buffer.Buffer;
+import com.oracle.avatar.js.buffer.HexUtils;
 import com.oracle.avatar.js.eventloop.Callback;
 import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
@@ -82,8 +85,9 @@ public final class Crypto {
 
     private final EventLoop eventLoop;
     private final com.oracle.avatar.js.log.Logger LOG;
-    private final SecureRandom sr = new SecureRandom();
-    private final Random rand = new Random();
+    private final RandomSource randomPool;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
 
     private static final String OFB = "OFB";
     private static final String ECB = "ECB";
@@ -122,6 +126,26 @@ public final class Crypto {
     private static final Map<String, String> HMAC_NAME_MAPPING = new HashMap<>();
     private static final Map<String, String> SIGN_NAME_MAPPING = new HashMap<>();
 
+    private static final InstancePool<MessageDigest> DIGESTS = new InstancePool<>(MessageDigest::getInstance);
+    private static final InstancePool<Mac> MACS = new InstancePool<>(Mac::getInstance);
+    private static final InstancePool<Cipher> CIPHERS = new InstancePool<>(Cipher::getInstance);
+
+    // Default key length of the ciphers without one in their name.
+    private static final Map<String, Integer> KEY_LENGTHS = new ConcurrentHashMap<>();
+
+    // Keys derived from createCipher/createDecipher passwords, the derivation
+    // runs 1000 PBKDF2 iterations. Keyed by algorithm, key length and a
+    // digest of the password, the password itself is not retained.
+    private static final LruCache<String, SecretKey> DERIVED_KEYS =
+            new LruCache<>(Integer.getInteger("avatar-js.crypto.key.cache.size", 256));
+
+    // Parsed PEM keys and certificates of sign and verify, keyed by a digest
+    // of the PEM and the key algorithm.
+    private static final LruCache<String, Object> PARSED_KEYS =
+            new LruCache<>(Integer.getInteger("avatar-js.crypto.pem.cache.size", 1024));
+
+    private static final InstancePool<Signature> SIGNATURES = new InstancePool<>(Signature::getInstance);
+
     static {
         CIPHER_NAME_MAPPING.put("bf-cbc", new CipherJavaName(BF, CBC));
         CIPHER_NAME_MAPPING.put("bf", new CipherJavaName(BF, CBC));
@@ -254,6 +278,7 @@ public final class Crypto {
     public Crypto(final EventLoop eventLoop) {
         this.eventLoop = eventLoop;
         this.LOG = eventLoop.logger("crypto");
+        this.randomPool = new RandomSource(eventLoop);
     }
 
     private boolean isCertificate(final String pemContent) {
@@ -335,24 +360,19 @@ public final class Crypto {
         }
 
         public Buffer sign(final String privKeyPEM) throws Exception {
-            //First decode the base64 encoded key
-            // It gets us the ASN.1 encoded key
-            final byte[] encoded = Base64Decoder.decode(removePEMHeaderAndFooter(privKeyPEM));
-            // Spec for private key
-
-            final PKCS8EncodedKeySpec key = new PKCS8EncodedKeySpec(encoded);
-            final KeyFactory kf = KeyFactory.getInstance(getSignAlgoPart(algo));
-            final PrivateKey privKey = kf.generatePrivate(key);
-
-            final Signature signature = Signature.getInstance(algo);
-            signature.initSign(privKey);
-            for (final String content : updates) {
-                // There is no specified Data encoding. Using ascii.
-                final Buffer b = new Buffer(content, "ascii");
-                signature.update(b.array());
+            final Signature signature = SIGNATURES.acquire(algo);
+            try {
+                signature.initSign(privateKey(algo, privKeyPEM));
+                for (final String content : updates) {
+                    // There is no specified Data encoding. Using ascii.
+                    final Buffer b = new Buffer(content, "ascii");
+                    signature.update(b.array());
+                }
+                final byte[] signedContent = signature.sign();
+                return new Buffer(signedContent);
+            } finally {
+                SIGNATURES.release(algo, signature);
             }
-            final byte[] signedContent = signature.sign();
-            return new Buffer(signedContent);
         }
 
         /* publicKey is a PEM, X.509 encoded RSA public key, DSA public key,
@@ -360,29 +380,71 @@ public final class Crypto {
          */
         public boolean verify(final String publicKey, final Buffer recSignature) throws Exception {
             final byte[] signatureBytes = recSignature.array();
-            final boolean isCert = isCertificate(publicKey);
+            final Signature signature = SIGNATURES.acquire(algo);
+            try {
+                initVerify(signature, algo, publicKey);
+                for (final String content : updates) {
+                    // There is no specified Data encoding. Using ascii.
+                    final Buffer b = new Buffer(content, "ascii");
+                    signature.update(b.array());
+                }
+                return signature.verify(signatureBytes);
+            } finally {
+                SIGNATURES.release(algo, signature);
+            }
+        }
+    }
 
+    private PrivateKey privateKey(final String algo, final String privKeyPEM) throws Exception {
+        final String keyAlgo = getSignAlgoPart(algo);
+        final String id = keyAlgo + '/' + pemDigest(privKeyPEM);
+        PrivateKey privKey = (PrivateKey) PARSED_KEYS.get(id);
+        if (privKey == null) {
+            //First decode the base64 encoded key
+            // It gets us the ASN.1 encoded key
+            final byte[] encoded = Base64Decoder.decode(removePEMHeaderAndFooter(privKeyPEM));
+            // Spec for private key
+            final PKCS8EncodedKeySpec key = new PKCS8EncodedKeySpec(encoded);
+            final KeyFactory kf = KeyFactory.getInstance(keyAlgo);
+            privKey = kf.generatePrivate(key);
+            PARSED_KEYS.put(id, privKey);
+        }
+        return privKey;
+    }
+
+    private void initVerify(final Signature signature, final String algo, final String publicKey) throws Exception {
+        final String keyAlgo = getSignAlgoPart(algo);
+        final String id = keyAlgo + '/' + pemDigest(publicKey);
+        Object key = PARSED_KEYS.get(id);
+        if (key == null) {
             //First decode the base64 encoded key
             // It gets us the ASN.1 encoded key
             final byte[] encoded = Base64Decoder.decode(removePEMHeaderAndFooter(publicKey));
-            final Signature signature = Signature.getInstance(algo);
-            if (isCert) {
+            if (isCertificate(publicKey)) {
                 final CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-                final Certificate cert = certFactory.generateCertificate(new ByteArrayInputStream(encoded));
-                signature.initVerify(cert);
+                key = certFactory.generateCertificate(new ByteArrayInputStream(encoded));
             } else {
                 // Spec for public key
-                final X509EncodedKeySpec key = new X509EncodedKeySpec(encoded);
-                final KeyFactory kf = KeyFactory.getInstance(getSignAlgoPart(algo));
-                final PublicKey pubKey = kf.generatePublic(key);
-                signature.initVerify(pubKey);
-            }
-            for (final String content : updates) {
-                // There is no specified Data encoding. Using ascii.
-                final Buffer b = new Buffer(content, "ascii");
-                signature.update(b.array());
+                final X509EncodedKeySpec spec = new X509EncodedKeySpec(encoded);
+                final KeyFactory kf = KeyFactory.getInstance(keyAlgo);
+                key = kf.generatePublic(spec);
             }
-            return signature.verify(signatureBytes);
+            PARSED_KEYS.put(id, key);
+        }
+        // A certificate is kept as is, initVerify checks its key usage.
+        if (key instanceof Certificate) {
+            signature.initVerify((Certificate) key);
+        } else {
+            signature.initVerify((PublicKey) key);
+        }
+    }
+
+    private static String pemDigest(final String pem) throws GeneralSecurityException {
+        final MessageDigest md = DIGESTS.acquire(SHA_256);
+        try {
+            return HexUtils.encode(md.digest(pem.getBytes(StandardCharsets.UTF_8)));
+        } finally {
+            DIGESTS.release(SHA_256, md);
         }
     }
 
@@ -399,6 +461,7 @@ public final class Crypto {
         private final Buffer key;
         private final Buffer iv;
         private byte[] incomplete_base64;
+        private boolean finished;
 
         private CryptoCipher(final CipherJavaName name, final Buffer key, final Buffer iv) {
             this.name = name;
@@ -441,11 +504,23 @@ public final class Crypto {
 
         private Cipher getCipher() throws Exception {
             if (cipher == null) {
+                if (finished) {
+                    throw new IllegalStateException("Cipher already finalized");
+                }
                 cipher = createCipher();
             }
             return cipher;
         }
 
+        // doFinal resets the cipher, it can be reused by another CryptoCipher.
+        private void release() {
+            if (cipher != null) {
+                CIPHERS.release(cipher.getAlgorithm(), cipher);
+                cipher = null;
+            }
+            finished = true;
+        }
+
         protected abstract Cipher createCipher() throws Exception;
 
         public void setAutoPadding(final boolean padding) {
@@ -687,18 +762,28 @@ public final class Crypto {
 
     public Buffer randomBytes(final int size) {
         checkSize(size);
-        final byte[] buff = new byte[size];
-        sr.nextBytes(buff);
-        Buffer buffer = new Buffer(buff);
+        final Buffer buffer = new Buffer(size);
+        if (!randomPool.take(buffer.toByteBuffer(0, size))) {
+            RandomSource.nextBytes(RandomSource.secure(), buffer.toByteBuffer(0, size));
+        }
         return buffer;
     }
 
     public void randomBytes(final int size, final Callback cb) {
         checkSize(size);
+        // Small requests are served from the pool, no hop to the thread pool.
+        if (size <= RandomSource.MAX_POOLED) {
+            final Buffer buffer = new Buffer(size);
+            if (randomPool.take(buffer.toByteBuffer(0, size))) {
+                eventLoop.post(new Event("crypto.randomBytes", cb, null, buffer));
+                return;
+            }
+        }
         final Callable<Void> c = new Callable<Void>() {
             @Override
             public Void call() throws Exception {
-                final Buffer rand = randomBytes(size);
+                final Buffer rand = new Buffer(size);
+                RandomSource.nextBytes(RandomSource.secure(), rand.toByteBuffer(0, size));
                 eventLoop.post(new Event("crypto.randomBytes", cb, null, rand));
                 return null;
             }
@@ -708,14 +793,17 @@ public final class Crypto {
 
     public Buffer pseudoRandomBytes(final int size) {
         checkSize(size);
-        final byte[] b = new byte[size];
-        rand.nextBytes(b);
-        final Buffer buffer = new Buffer(b);
+        final Buffer buffer = new Buffer(size);
+        RandomSource.nextBytes(ThreadLocalRandom.current(), buffer.toByteBuffer(0, size));
         return buffer;
     }
 
     public void pseudoRandomBytes(final int size, final Callback cb) {
         checkSize(size);
+        if (size <= RandomSource.MAX_POOLED) {
+            eventLoop.post(new Event("crypto.pseudoRandomBytes", cb, null, pseudoRandomBytes(size)));
+            return;
+        }
         final Callable<Void> c = new Callable<Void>() {
             @Override
             public Void call() throws Exception {
@@ -744,9 +832,60 @@ public final class Crypto {
         return sign.verify(pubKeyOrCert, signature);
     }
 
+    /**
+     * Verifies signatures[i] of data[i] with keys[i] in the thread pool,
+     * calls back once with a boolean[] of the results. A signature that
+     * can't be verified, for example with an invalid key, is false.
+     */
+    public void verifyAll(final String opensslName, final String[] keys, final Buffer[] data,
+            final Buffer[] signatures, final Callback cb) {
+        if (keys.length != data.length || data.length != signatures.length) {
+            throw new IllegalArgumentException("keys, data and signatures must have the same length");
+        }
+        final String jname = getName(opensslName, SIGN_NAME_MAPPING);
+        final boolean[] results = new boolean[data.length];
+        submitBatch("crypto.verifyAll", data.length, new BatchItem() {
+            @Override
+            public void run(final int i) throws Exception {
+                final Signature signature = SIGNATURES.acquire(jname);
+                try {
+                    initVerify(signature, jname, keys[i]);
+                    signature.update(data[i].toByteBuffer(0, data[i].capacity()));
+                    results[i] = signature.verify(signatures[i].array());
+                } catch (final Exception e) {
+                    results[i] = false;
+                } finally {
+                    SIGNATURES.release(jname, signature);
+                }
+            }
+        }, results, cb);
+    }
+
+    /**
+     * Signs every data[i] with privKey in the thread pool, calls back once
+     * with a Buffer[] of the signatures.
+     */
+    public void signAll(final String opensslName, final String privKey, final Buffer[] data, final Callback cb) {
+        final String jname = getName(opensslName, SIGN_NAME_MAPPING);
+        final Buffer[] results = new Buffer[data.length];
+        submitBatch("crypto.signAll", data.length, new BatchItem() {
+            @Override
+            public void run(final int i) throws Exception {
+                final Signature signature = SIGNATURES.acquire(jname);
+                try {
+                    signature.initSign(privateKey(jname, privKey));
+                    signature.update(data[i].toByteBuffer(0, data[i].capacity()));
+                    results[i] = new Buffer(signature.sign());
+                } finally {
+                    SIGNATURES.release(jname, signature);
+                }
+            }
+        }, results, cb);
+    }
+
     public Mac newHmac(final String opensslName, final Buffer key) throws Exception {
         final String jname = getName(opensslName, HMAC_NAME_MAPPING);
-        final Mac mac = Mac.getInstance(jname);
+        final Mac mac = MACS.acquire(jname);
         Buffer k = key;
         if (key.capacity() == 0) {
             k = new Buffer(1);
@@ -757,26 +896,81 @@ public final class Crypto {
     }
 
     public void update(final Mac digest, final Buffer content) throws Exception {
-        digest.update(content.array());
+        digest.update(content.toByteBuffer(0, content.capacity()));
     }
 
     public Buffer doFinal(final Mac digest) throws Exception {
         final byte[] ciphered = digest.doFinal();
+        MACS.release(digest.getAlgorithm(), digest);
         return new Buffer(ciphered);
     }
 
-    public MessageDigest newMessageDigest(final String opensslName) throws NoSuchAlgorithmException {
+    public MessageDigest newMessageDigest(final String opensslName) throws GeneralSecurityException {
         final String jname = getName(opensslName, DIGEST_NAME_MAPPING);
-        final MessageDigest md = MessageDigest.getInstance(jname);
-        return md;
+        return DIGESTS.acquire(jname);
     }
 
     public void update(final MessageDigest digest, final Buffer b) throws Exception {
-        digest.update(b.array());
+        digest.update(b.toByteBuffer(0, b.capacity()));
+    }
+
+    /**
+     * One-shot digest of data[offset, offset + length), written at the start
+     * of out. The data is read in place, direct buffers are not copied.
+     * @return the digest length
+     */
+    public int hash(final String opensslName, final Buffer data, final int offset, final int length,
+            final Buffer out) throws GeneralSecurityException {
+        checkRange(data, offset, length);
+        final String jname = getName(opensslName, DIGEST_NAME_MAPPING);
+        final MessageDigest md = DIGESTS.acquire(jname);
+        try {
+            md.update(data.toByteBuffer(offset, offset + length));
+            final byte[] result = md.digest();
+            put(out, result);
+            return result.length;
+        } finally {
+            md.reset();
+            DIGESTS.release(jname, md);
+        }
+    }
+
+    /**
+     * One-shot HMAC of data[offset, offset + length), written at the start
+     * of out.
+     * @return the HMAC length
+     */
+    public int hmac(final String opensslName, final Buffer key, final Buffer data, final int offset, final int length,
+            final Buffer out) throws Exception {
+        checkRange(data, offset, length);
+        final Mac mac = newHmac(opensslName, key);
+        try {
+            mac.update(data.toByteBuffer(offset, offset + length));
+            final byte[] result = mac.doFinal();
+            put(out, result);
+            return result.length;
+        } finally {
+            mac.reset();
+            MACS.release(mac.getAlgorithm(), mac);
+        }
+    }
+
+    private static void put(final Buffer out, final byte[] result) {
+        if (out.capacity() < result.length) {
+            throw new IllegalArgumentException("Output buffer too small, " + result.length + " bytes required");
+        }
+        out.toByteBuffer(0, result.length).put(result);
+    }
+
+    private static void checkRange(final Buffer data, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset + length > data.capacity()) {
+            throw new IllegalArgumentException("Invalid range " + offset + ", " + length);
+        }
     }
 
     public Buffer digest(final MessageDigest digest) throws Exception {
         final byte[] ciphered = digest.digest();
+        DIGESTS.release(digest.getAlgorithm(), digest);
         return new Buffer(ciphered);
     }
 
@@ -787,9 +981,42 @@ public final class Crypto {
 
     public Buffer doFinal(final CryptoCipher ccipher) throws Exception {
         byte[] ciphered = ccipher.getCipher().doFinal();
+        ccipher.release();
         return new Buffer(ciphered);
     }
 
+    /**
+     * Upper bound of the bytes produced by an update of length bytes, or by
+     * the final block if length is 0.
+     */
+    public int getOutputSize(final CryptoCipher ccipher, final int length) throws Exception {
+        return ccipher.getCipher().getOutputSize(length);
+    }
+
+    /**
+     * Ciphers in[inOff, inOff + len) into out at outOff, without
+     * intermediate copies when both buffers are direct.
+     * @return the number of bytes written
+     */
+    public int update(final CryptoCipher ccipher, final Buffer in, final int inOff, final int len,
+            final Buffer out, final int outOff) throws Exception {
+        checkRange(in, inOff, len);
+        checkRange(out, outOff, 0);
+        return ccipher.getCipher().update(in.toByteBuffer(inOff, inOff + len),
+                out.toByteBuffer(outOff, out.capacity()));
+    }
+
+    /**
+     * Writes the final block into out at outOff.
+     * @return the number of bytes written
+     */
+    public int doFinal(final CryptoCipher ccipher, final Buffer out, final int outOff) throws Exception {
+        checkRange(out, outOff, 0);
+        final int written = ccipher.getCipher().doFinal(EMPTY, out.toByteBuffer(outOff, out.capacity()));
+        ccipher.release();
+        return written;
+    }
+
     public CryptoCipher initEncrypt(final String opensslName, final Buffer key) {
         return new Encrypt(getName(opensslName, CIPHER_NAME_MAPPING), key, null);
     }
@@ -831,7 +1058,7 @@ public final class Crypto {
     }
 
     private Cipher newCipher(final int mode, final CipherJavaName jname, final Buffer password, final boolean padding) throws Exception {
-        final Cipher cipher = Cipher.getInstance(jname.getTransformation(padding));
+        final Cipher cipher = CIPHERS.acquire(jname.getTransformation(padding));
         final SecretKey key = passwordToKey(jname, password); // Compute deterministic key
         if (needsIV(jname)) {
             cipher.init(mode, key, passwordToIV(jname, password));
@@ -842,11 +1069,24 @@ public final class Crypto {
         return cipher;
     }
 
-    private SecretKey passwordToKey(final CipherJavaName jname, final Buffer password) throws NoSuchAlgorithmException, InvalidKeySpecException {
+    private SecretKey passwordToKey(final CipherJavaName jname, final Buffer password) throws GeneralSecurityException {
+        final int keyLength = getKeyLength(jname);
+        final MessageDigest md = DIGESTS.acquire(SHA_256);
+        final String id = jname.getName() + '/' + keyLength + '/' + HexUtils.encode(md.digest(password.array()));
+        DIGESTS.release(SHA_256, md);
+        SecretKey key = DERIVED_KEYS.get(id);
+        if (key == null) {
+            key = deriveKey(jname, keyLength, password);
+            DERIVED_KEYS.put(id, key);
+        }
+        return key;
+    }
+
+    private SecretKey deriveKey(final CipherJavaName jname, final int keyLength, final Buffer password) throws NoSuchAlgorithmException, InvalidKeySpecException {
         final SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
         // min salt 8, 1000 iterations is safe.
         final PBEKeySpec ks = new PBEKeySpec(password.toStringContent().toCharArray(),
-                new byte[8], 1000, getKeyLength(jname));
+                new byte[8], 1000, keyLength);
         final SecretKey s = factory.generateSecret(ks);
         final SecretKeySpec secretKeySpec = new SecretKeySpec(s.getEncoded(), jname.getName());
         return secretKeySpec;
@@ -856,8 +1096,14 @@ public final class Crypto {
         if (jname.getKeySize() != -1) {
             return jname.getKeySize();
         }
+        final Integer known = KEY_LENGTHS.get(jname.getName());
+        if (known != null) {
+            return known;
+        }
         final KeyGenerator keygenerator = KeyGenerator.getInstance(jname.getName());
-        return keygenerator.generateKey().getEncoded().length * 8;
+        final int length = keygenerator.generateKey().getEncoded().length * 8;
+        KEY_LENGTHS.put(jname.getName(), length);
+        return length;
     }
 
     private IvParameterSpec passwordToIV(final CipherJavaName jname, final Buffer password) {
@@ -878,9 +1124,8 @@ public final class Crypto {
         return length;
     }
 
-    private Cipher newCipher(final int mode, final CipherJavaName jname, final Buffer key, final Buffer iv, final boolean padding) throws NoSuchAlgorithmException,
-            NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException {
-        final Cipher cipher = Cipher.getInstance(jname.getTransformation(padding));
+    private Cipher newCipher(final int mode, final CipherJavaName jname, final Buffer key, final Buffer iv, final boolean padding) throws GeneralSecurityException {
+        final Cipher cipher = CIPHERS.acquire(jname.getTransformation(padding));
         final SecretKeySpec keySpec = new SecretKeySpec(key.array(), jname.getName());
         if (needsIV(jname) && // No IV for ECB
                 iv != null && iv.capacity() > 0) {
@@ -898,6 +1143,52 @@ public final class Crypto {
         }
     }
 
+    private interface BatchItem {
+        void run(int i) throws Exception;
+    }
+
+    /**
+     * Splits the count items of a batch among up to one task per processor,
+     * the last task to complete posts the result, or the first failure.
+     */
+    private void submitBatch(final String name, final int count, final BatchItem item,
+            final Object result, final Callback cb) {
+        final int tasks = Math.max(1, Math.min(count, Runtime.getRuntime().availableProcessors()));
+        final AtomicInteger remaining = new AtomicInteger(tasks);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final EventLoop.Handle handle = eventLoop.acquire();
+        for (int t = 0; t < tasks; t++) {
+            final int from = (int) ((long) t * count / tasks);
+            final int to = (int) ((long) (t + 1) * count / tasks);
+            eventLoop.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = from; i < to && failure.get() == null; i++) {
+                            item.run(i);
+                        }
+                    } catch (final Exception e) {
+                        if (LOG.enabled()) {
+                            LOG.log(e.getMessage());
+                        }
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            try {
+                                final Exception e = failure.get();
+                                eventLoop.post(e == null ?
+                                        new Event(name, cb, null, result) :
+                                        new Event("crypto.error", cb, e, null));
+                            } finally {
+                                handle.close();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
     private void submitToLoop(final Callable<?> callable, final Callback cb) {
         final EventLoop.Handle handle = eventLoop.acquire();
         eventLoop.submit(new Runnable() {
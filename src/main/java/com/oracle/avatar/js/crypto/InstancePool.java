@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.oracle.avatar.js.crypto;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per thread pools of JCA engines (MessageDigest, Mac, Cipher) keyed by
+ * algorithm, so that a hash or a cipher does not pay for the provider lookup
+ * of getInstance. Instances are released in their reset state, whoever
+ * acquires one initializes it.
+ * The pools are thread confined: an instance released by another thread than
+ * the one that acquired it goes to the pool of the releasing thread.
+ */
+final class InstancePool<T> {
+
+    interface Factory<T> {
+        T create(String algorithm) throws GeneralSecurityException;
+    }
+
+    private static final int MAX_IDLE = Integer.getInteger("avatar-js.crypto.pool.size", 4);
+
+    private final Factory<T> factory;
+    private final ThreadLocal<Map<String, ArrayDeque<T>>> idle = new ThreadLocal<Map<String, ArrayDeque<T>>>() {
+        @Override
+        protected Map<String, ArrayDeque<T>> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    InstancePool(final Factory<T> factory) {
+        this.factory = factory;
+    }
+
+    T acquire(final String algorithm) throws GeneralSecurityException {
+        final ArrayDeque<T> instances = idle.get().get(algorithm);
+        final T instance = instances == null ? null : instances.pollFirst();
+        return instance == null ? factory.create(algorithm) : instance;
+    }
+
+    void release(final String algorithm, final T instance) {
+        if (MAX_IDLE <= 0) {
+            return;
+        }
+        final Map<String, ArrayDeque<T>> pools = idle.get();
+        ArrayDeque<T> instances = pools.get(algorithm);
+        if (instances == null) {
+            instances = new ArrayDeque<>(MAX_IDLE);
+            pools.put(algorithm, instances);
+        }
+        if (instances.size() < MAX_IDLE) {
+            instances.addFirst(instance);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.oracle.avatar.js.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.oracle.avatar.js.eventloop.EventLoop;
+
+/**
+ * Random bytes for randomBytes and pseudoRandomBytes.
+ * Every thread has its own SecureRandom, there is no shared generator to
+ * contend on. Small requests made on the loop thread are served from a pool
+ * of pre-generated bytes, refilled in the thread pool while the other half
+ * of the pool is consumed.
+ */
+final class RandomSource {
+
+    static final int MAX_POOLED = 256;
+
+    private static final int POOL_SIZE = Math.max(MAX_POOLED,
+            Integer.getInteger("avatar-js.crypto.random.pool.size", 4096));
+    private static final int SCRATCH_SIZE = 4096;
+    private static final int SEED_SIZE = 32;
+
+    private static final ThreadLocal<SecureRandom> SECURE = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return newSecureRandom();
+        }
+    };
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[SCRATCH_SIZE];
+        }
+    };
+
+    // Arrays of the sizes of small requests, indexed by size, created on first use.
+    private static final ThreadLocal<byte[][]> SMALL = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[MAX_POOLED + 1][];
+        }
+    };
+
+    private final EventLoop eventLoop;
+    // Only accessed from the loop thread.
+    private byte[] current;
+    private int position;
+    // Set by the thread pool once refilled.
+    private volatile byte[] spare;
+
+    RandomSource(final EventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * DRBG where the runtime has it (JDK 9+), else a SHA1PRNG seeded from
+     * the platform source: the default NativePRNG of JDK 8 serializes every
+     * caller on a global lock. A SHA1PRNG left to seed itself reads the
+     * blocking system entropy source on its first use, which may be on the
+     * loop thread, it is seeded here from the non-blocking NativePRNG.
+     */
+    private static SecureRandom newSecureRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (final NoSuchAlgorithmException ignored) {
+        }
+        try {
+            final SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+            final byte[] seed = new byte[SEED_SIZE];
+            SeedSource.SEED.nextBytes(seed);
+            random.setSeed(seed);
+            return random;
+        } catch (final NoSuchAlgorithmException ignored) {
+        }
+        return new SecureRandom();
+    }
+
+    // Created on first use, only when SHA1PRNG instances are seeded.
+    private static final class SeedSource {
+        static final SecureRandom SEED = new SecureRandom();
+    }
+
+    static SecureRandom secure() {
+        return SECURE.get();
+    }
+
+    /**
+     * Fills dst from its position to its limit, through per thread arrays:
+     * Random generates into whole arrays only. Small requests, the common
+     * ones, use a kept array of their exact size rather than generating a
+     * whole scratch array, larger ones generate into the scratch array.
+     */
+    static void nextBytes(final Random random, final ByteBuffer dst) {
+        while (dst.hasRemaining()) {
+            final int n = Math.min(SCRATCH_SIZE, dst.remaining());
+            final byte[] chunk = chunk(n);
+            random.nextBytes(chunk);
+            dst.put(chunk, 0, n);
+            Arrays.fill(chunk, (byte) 0);
+        }
+    }
+
+    private static byte[] chunk(final int size) {
+        if (size > MAX_POOLED) {
+            return SCRATCH.get();
+        }
+        final byte[][] small = SMALL.get();
+        byte[] chunk = small[size];
+        if (chunk == null) {
+            chunk = small[size] = new byte[size];
+        }
+        return chunk;
+    }
+
+    /**
+     * Fills dst from the pool, on the loop thread only.
+     * @return false if the request is too large or the pool is being
+     * refilled, the caller generates the bytes itself.
+     */
+    boolean take(final ByteBuffer dst) {
+        final int size = dst.remaining();
+        if (size > MAX_POOLED) {
+            return false;
+        }
+        if (current == null) {
+            current = new byte[POOL_SIZE];
+            position = POOL_SIZE;
+            refill(new byte[POOL_SIZE]);
+        }
+        if (POOL_SIZE - position < size) {
+            final byte[] next = spare;
+            if (next == null) {
+                return false;
+            }
+            spare = null;
+            final byte[] drained = current;
+            current = next;
+            position = 0;
+            refill(drained);
+        }
+        dst.put(current, position, size);
+        // Pooled bytes are handed out once.
+        Arrays.fill(current, position, position + size, (byte) 0);
+        position += size;
+        return true;
+    }
+
+    private void refill(final byte[] pool) {
+        eventLoop.submit(new Runnable() {
+            @Override
+            public void run() {
+                secure().nextBytes(pool);
+                spare = pool;
+            }
+        });
+    }
+}
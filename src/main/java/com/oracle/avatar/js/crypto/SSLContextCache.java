@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.crypto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Process wide cache of the SSLContexts built by SecureContexts, keyed by a
+ * digest of their key, certificate, CA, passphrase and session settings.
+ * Building a context means loading key stores and initializing the key and
+ * trust managers, this is done once per set of credentials, whatever the
+ * number of SecureContexts and EventLoops using them. The managers keep no
+ * state of the SecureContext or loop that built them.
+ * Sharing the SSLContext also shares its session caches: a tls.connect to a
+ * peer reached before with the same credentials resumes the session.
+ */
+final class SSLContextCache {
+
+    static final class Entry {
+        final SSLContext context;
+        final X509TrustManager trust;
+
+        private Entry(final SSLContext context, final X509TrustManager trust) {
+            this.context = context;
+            this.trust = trust;
+        }
+    }
+
+    private static final int MAX_CONTEXTS = Integer.getInteger("avatar-js.tls.context.cache.size", 512);
+
+    private static final Map<String, Entry> CONTEXTS = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > MAX_CONTEXTS;
+        }
+    };
+
+    private SSLContextCache() {
+    }
+
+    static Entry get(final String credentials) {
+        synchronized (CONTEXTS) {
+            return CONTEXTS.get(credentials);
+        }
+    }
+
+    /**
+     * Returns the entry to use, the one of a concurrent build for the same
+     * credentials if it won.
+     */
+    static Entry putIfAbsent(final String credentials, final SSLContext context, final X509TrustManager trust) {
+        final Entry entry = new Entry(context, trust);
+        if (MAX_CONTEXTS <= 0) {
+            return entry;
+        }
+        synchronized (CONTEXTS) {
+            final Entry existing = CONTEXTS.get(credentials);
+            if (existing != null) {
+                return existing;
+            }
+            CONTEXTS.put(credentials, entry);
+            return entry;
+        }
+    }
+}
@@ -52,8 +52,10 @@ import javax.net.ssl.SSLSession;
 import com.oracle.avatar.js.buffer.Buffer;
 import com.oracle.avatar.js.buffer.HexUtils;
 import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
 import com.oracle.avatar.js.log.Logger;
+import com.oracle.avatar.js.log.Logging;
 
 /**
  * Secure Connection
@@ -76,7 +78,17 @@ public class SecureConnection {
             return ctx;
         }
     }
+    // Nothing to encrypt, used when the engine produces handshake or close records.
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final Object[] NO_ARGS = {};
+    // Record buffers grown beyond this many packets are released once drained.
+    private static final int MAX_RETAINED_PACKETS = 8;
+    // Run the handshake delegated tasks (key exchange, signatures) in the thread pool.
+    private static final boolean OFFLOAD_TASKS =
+            Boolean.parseBoolean(System.getProperty("avatar-js.tls.handshake.offload", "true"));
+
     private final Logger LOG;
+    private final EventLoop eventLoop;
     private final SecureContext context;
     private final boolean isServer;
     private final boolean requestCertificate;
@@ -84,7 +96,6 @@ public class SecureConnection {
     private final String serverName;
     private SSLEngine sslEngine;
     private ByteBuffer localNetDataForPeer;
-    private ByteBuffer localAppData;
     private ByteBuffer decryptedAppData;
     private ByteBuffer incomingFromPeer;
     private boolean shutingdown;
@@ -93,6 +104,11 @@ public class SecureConnection {
     private final SSLContext ctx;
     private final Callback onRenegoStart;
     private boolean isRenegotiating;
+    private long handshakeStart;
+    private boolean sessionCounted;
+    private boolean sessionResumed;
+    private Callback onTasksDone;
+    private boolean tasksPending;
 
     public SecureConnection(final EventLoop eventLoop,
                             final SecureContext context,
@@ -117,6 +133,7 @@ public class SecureConnection {
                              final String serverName,
                              final boolean rejectUnauthorized,
                              final Callback onRenegoStart) throws Exception {
+        this.eventLoop = eventLoop;
         this.isServer = isServer;
         this.context = context;
         this.requestCertificate = requestCertificate;
@@ -190,11 +207,24 @@ public class SecureConnection {
     }
 
     public boolean isSessionReused() {
-        return context.isSessionReused();
+        return sessionResumed;
+    }
+
+    /**
+     * A resumed session was created by an earlier handshake. Counted once,
+     * renegotiations are not session cache lookups.
+     */
+    private void handshakeFinished() {
+        if (sessionCounted) {
+            return;
+        }
+        sessionCounted = true;
+        sessionResumed = sslEngine.getSession().getCreationTime() < handshakeStart;
+        context.sessionEstablished(sessionResumed);
     }
 
     private SSLEngine createSSLEngine(final SecureContext context) throws Exception {
-        LOG.log("New SSL Engine for host = " + context.getHost() + ", port = " + context.getPort());
+        LOG.log("New SSL Engine for host = %s, port = %s", context.getHost(), context.getPort());
         SSLEngine engine;
         SSLParameters params = new SSLParameters();
 
@@ -215,18 +245,20 @@ public class SecureConnection {
 
         params.setNeedClientAuth(requestCertificate);
 
-        LOG.log("Enabled protocols ");
-        for (final String s : engine.getEnabledProtocols()) {
-            LOG.log(s);
-        }
-        LOG.log("Enabled cipher suites ");
-        for (final String s : engine.getEnabledCipherSuites()) {
-            LOG.log(s);
+        if (Logging.LOGGABLE && LOG.enabled()) {
+            LOG.log("Enabled protocols ");
+            for (final String s : engine.getEnabledProtocols()) {
+                LOG.log(s);
+            }
+            LOG.log("Enabled cipher suites ");
+            for (final String s : engine.getEnabledCipherSuites()) {
+                LOG.log(s);
+            }
         }
 
         // client SNI
         if (serverName != null) {
-            LOG.log("SNI client extension " + serverName);
+            LOG.log("SNI client extension %s", serverName);
             try {
                 SNIServerName sni = new SNIHostName(serverName);
                 List<SNIServerName> lst = new ArrayList<>(1);
@@ -234,11 +266,12 @@ public class SecureConnection {
                 params.setServerNames(lst);
             } catch(Exception ex) {
                 // XXX OK, invalid SNI servername.
-                LOG.log("SNI Exception " + ex + " with " + serverName);
+                LOG.log("SNI Exception %s with %s", ex, serverName);
             }
         }
 
         engine.setSSLParameters(params);
+        context.bindEngine(engine);
         return engine;
     }
 
@@ -256,7 +289,7 @@ public class SecureConnection {
                 }
             }
         }
-        LOG.log("HS DONE, servername is  " + ret);
+        LOG.log("HS DONE, servername is  %s", ret);
         return ret;
     }
 
@@ -264,6 +297,15 @@ public class SecureConnection {
         context.setSNICallback(sniCallback);
     }
 
+    /**
+     * Once set, delegated tasks run in the thread pool and the handshake is
+     * suspended meanwhile. The callback is called on the loop thread when it
+     * can make progress again, tls.js has then to cycle the connection.
+     */
+    public void setTasksCallback(final Callback onTasksDone) {
+        this.onTasksDone = OFFLOAD_TASKS ? onTasksDone : null;
+    }
+
     public void start() throws Exception {
         LOG.log("--HS-- start");
         if (started) {
@@ -276,11 +318,13 @@ public class SecureConnection {
             assert sslEngine != null;
 
             final SSLSession session = sslEngine.getSession();
-            localNetDataForPeer = ByteBuffer.allocate(session.getPacketBufferSize());
-            localAppData = ByteBuffer.allocate(session.getApplicationBufferSize());
-            decryptedAppData = ByteBuffer.allocate(session.getApplicationBufferSize());
-            incomingFromPeer = ByteBuffer.allocate(session.getPacketBufferSize());
+            // Direct, and kept for the connection lifetime: records are copied
+            // straight from and to the direct socket Buffers, no per record allocation.
+            localNetDataForPeer = ByteBuffer.allocateDirect(session.getPacketBufferSize());
+            decryptedAppData = ByteBuffer.allocateDirect(session.getApplicationBufferSize());
+            incomingFromPeer = ByteBuffer.allocateDirect(session.getPacketBufferSize());
 
+            handshakeStart = System.currentTimeMillis();
             sslEngine.beginHandshake();
         } catch (final Exception ex) {
             exception = ex;
@@ -517,8 +561,7 @@ public class SecureConnection {
             }
 
             peerC = new PeerCertificate(x509, builder.toString());
-            LOG.log("Peer Issuer " + peerC.getIssuer()
-                    + "Peer Subject " + peerC.getSubject());
+            LOG.log("Peer Issuer %sPeer Subject %s", peerC.getIssuer(), peerC.getSubject());
         } else {
             throw new Exception("Unsupported Certificate " + pc.getType());
         }
@@ -568,7 +611,7 @@ public class SecureConnection {
      *
      */
     public void shutdown() {
-        LOG.log("--CLOSE-- shutdown " + shutingdown);
+        LOG.log("--CLOSE-- shutdown %s", shutingdown);
 
         assert sslEngine != null;
         if (shutingdown) {
@@ -678,14 +721,23 @@ public class SecureConnection {
         if (!started) {
             return -1;
         }
-        LOG.log("encIn, " + data + ", offset : " + offset + ", length : " + length);
+        if (Logging.LOGGABLE && LOG.enabled()) {
+            LOG.log("encIn, " + data + ", offset : " + offset + ", length : " + length);
+        }
+        if (tasksPending) {
+            // The handshake is suspended, the data is unwrapped once the tasks are done.
+            if (incomingFromPeer.remaining() < length) {
+                incomingFromPeer = handleBufferOverFlow(length, incomingFromPeer);
+            }
+            incomingFromPeer.put(data.toByteBuffer(offset, offset + length));
+            return length;
+        }
         try {
             return unwrap(data, offset, length);
         } catch (final Exception ex) {
             LOG.log("WARNING, encIn, Unwrap Exception " + ex);
-            incomingFromPeer.compact();
             exception = ex;
-            if (LOG.enabled()) {
+            if (Logging.LOGGABLE && LOG.enabled()) {
                 ex.printStackTrace();
             }
             // The next call to encOut will generate a close message
@@ -708,18 +760,20 @@ public class SecureConnection {
         }
         int wrote = 0;
         if (localNetDataForPeer.position() != 0) {
-            LOG.log("encOut, encrypted data length " + localNetDataForPeer.position());
+            if (Logging.LOGGABLE && LOG.enabled()) {
+                LOG.log("encOut, encrypted data length " + localNetDataForPeer.position());
+            }
             wrote = fillBuffer(localNetDataForPeer, pool);
             // wrote is the min between localNetDataForPeer.limit() and pool.remaining()
             // can't be greater than the localNetDataForPeer.limit().
             if (wrote == localNetDataForPeer.limit()) {
-                localNetDataForPeer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+                localNetDataForPeer = recycle(localNetDataForPeer, sslEngine.getSession().getPacketBufferSize());
             } else {
                 LOG.log("encOut, provided buffer is too small.");
                 localNetDataForPeer.compact();
             }
 
-        } else {
+        } else if (!tasksPending) {
             try {
                 if (shutingdown) {
                     if (!sslEngine.isOutboundDone() && !sslEngine.isInboundDone()) {
@@ -733,7 +787,7 @@ public class SecureConnection {
             } catch (final Exception ex) {
                 LOG.log("WARNING, encOut, Wrap Exception " + ex);
                 exception = ex;
-                if (LOG.enabled()) {
+                if (Logging.LOGGABLE && LOG.enabled()) {
                     ex.printStackTrace();
                 }
                 shutdown();
@@ -752,18 +806,20 @@ public class SecureConnection {
 
         // Do not mix application data with handshake
         if (!started || isHandshake()) {
-            LOG.log("clearIn, asked to encrypt content but HS in progress " + pool);
+            LOG.log("clearIn, asked to encrypt content but HS in progress %s", pool);
             //No mix with buffer of size 0.
             return -1;
         }
-        LOG.log("clearIn offset " + offset + " length " + length);
+        if (Logging.LOGGABLE && LOG.enabled()) {
+            LOG.log("clearIn offset " + offset + " length " + length);
+        }
         try {
             final int ret = wrap(pool, offset, length);
             return ret;
         } catch (final Exception ex) {
             LOG.log("WARNING, clearIn, Wrap Exception " + ex);
             exception = ex;
-            if (LOG.enabled()) {
+            if (Logging.LOGGABLE && LOG.enabled()) {
                 ex.printStackTrace();
             }
             shutdown();
@@ -783,13 +839,14 @@ public class SecureConnection {
             // ret is the min between decryptedAppData.limit() and pool.remaining()
             // can't be greater than the decryptedAppData.limit().
             if (ret == decryptedAppData.limit()) {
-                decryptedAppData =
-                    ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+                decryptedAppData = recycle(decryptedAppData, sslEngine.getSession().getApplicationBufferSize());
             } else {
                 LOG.log("clearOut, provided buffer is too small.");
                 decryptedAppData.compact();
             }
-            LOG.log("clearOut produced " + ret + " bytes for application");
+            if (Logging.LOGGABLE && LOG.enabled()) {
+                LOG.log("clearOut produced " + ret + " bytes for application");
+            }
         }
         return ret;
 
@@ -800,8 +857,8 @@ public class SecureConnection {
         initWrap();
         SSLEngineResult res;
         do {
-            res = sslEngine.wrap(localAppData, localNetDataForPeer);
-            LOG.log("--CLOSE-- wrap " + res);
+            res = sslEngine.wrap(EMPTY, localNetDataForPeer);
+            LOG.log("--CLOSE-- wrap %s", res);
             switch (res.getStatus()) {
                 case CLOSED:
                 case OK: {
@@ -828,8 +885,8 @@ public class SecureConnection {
             do {
                 // Generate handshaking data
                 localNetDataForPeer.clear();
-                final SSLEngineResult res = sslEngine.wrap(localAppData, localNetDataForPeer);
-                LOG.log("--HS-- wrap " + res + ", buffer to fill " + pool);
+                final SSLEngineResult res = sslEngine.wrap(EMPTY, localNetDataForPeer);
+                LOG.log("--HS-- wrap %s, buffer to fill %s", res, pool);
                 switch (res.getStatus()) {
                     case OK:
                         encLength += fillBuffer(localNetDataForPeer, pool);
@@ -848,7 +905,8 @@ public class SecureConnection {
                     }
                 }
                 if (res.getHandshakeStatus() == HandshakeStatus.FINISHED) {
-                    LOG.log("--HS-- FINISHED, Cipher suite [ " + getCipherSuite() + "] Session [" + HexUtils.encode(sslEngine.getSession().getId()) + "]");
+                    handshakeFinished();
+                    LOG.log(() -> "--HS-- FINISHED, Cipher suite [ " + getCipherSuite() + "] Session [" + HexUtils.encode(sslEngine.getSession().getId()) + "]");
                 }
              // Loop must stop when the provided buffer is full.
             } while (sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP && encLength < length);
@@ -858,28 +916,34 @@ public class SecureConnection {
     }
 
     private int wrap(final Buffer pool, final int offset, final int length) throws SSLException {
+        final ByteBuffer source;
         if (pool != null) {
-            localAppData.clear();
-            localAppData = safeAllocation(localAppData, pool, offset, length);
-            // Allocating more than the packet size will avoid some useless Buffer Overflow
+            // Encrypt straight from the application Buffer, no intermediate copy.
+            source = pool.toByteBuffer(offset, offset + length);
+            // Sizing for more than the packet size will avoid some useless Buffer Overflow
             // If some content, means that socket has reached its limit and content is accumulating
             // at some point, user will stop write content (write returning false) and
             // the accumulated content will be read and piped to socket.
             // User will then receive drain event to push more data (if needed)
-            if (localNetDataForPeer.position() == 0) {
-                localNetDataForPeer = ByteBuffer.allocate(Math.max(sslEngine.getSession().getPacketBufferSize(), length));
+            if (localNetDataForPeer.position() == 0 && localNetDataForPeer.capacity() < length) {
+                localNetDataForPeer = ByteBuffer.allocateDirect(Math.max(sslEngine.getSession().getPacketBufferSize(), length));
             }
         } else {
-            // default buffer allocation
-            initWrap();
+            // Handshake data, after what is still to be sent.
+            source = EMPTY;
         }
         int consumed = 0;
         SSLEngineResult res;
         do {
-            res = sslEngine.wrap(localAppData, localNetDataForPeer);
+            res = sslEngine.wrap(source, localNetDataForPeer);
 
-            LOG.log("wrap " + res + " bytes consumed " + res.bytesConsumed() + ", enc length " + localNetDataForPeer.position());
+            if (Logging.LOGGABLE && LOG.enabled()) {
+                LOG.log("wrap " + res + " bytes consumed " + res.bytesConsumed() + ", enc length " + localNetDataForPeer.position());
+            }
             consumed += res.bytesConsumed();
+            if (res.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+                handshakeFinished();
+            }
             switch (res.getStatus()) {
                 case OK: {
                     break;
@@ -903,64 +967,104 @@ public class SecureConnection {
     }
 
     private void initWrap() {
-        localNetDataForPeer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
-        localAppData = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+        localNetDataForPeer.clear();
     }
 
     private int unwrap(final Buffer data, final int offset, final int length) throws Exception {
         int readLength;
         SSLEngineResult res = null;
-        initUnwrap(data, offset, length);
-        do {
+        final ByteBuffer in = initUnwrap(data, offset, length);
+        try {
             do {
-                boolean before = sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
-                // The received packet can contain multiple HS unwrap: ChangeCipherSpec and Finished
-                res = sslEngine.unwrap(incomingFromPeer, decryptedAppData);
-                LOG.log("unwrap " + res + ", consumed " + res.bytesConsumed() + ", produced " + res.bytesProduced());
-                boolean after = sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
-                if(before && !after) {
-                    LOG.log("unwrap, handshake renegociation");
-                    isRenegotiating = true;
-                    onRenegoStart.call("renegotiation.start", Collections.emptyList().toArray());
-                }
-            } while (res.getStatus() == SSLEngineResult.Status.OK
-                    && res.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP
-                    && res.bytesProduced() == 0);
+                do {
+                    boolean before = sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+                    // The received packet can contain multiple HS unwrap: ChangeCipherSpec and Finished
+                    res = sslEngine.unwrap(in, decryptedAppData);
+                    if (Logging.LOGGABLE && LOG.enabled()) {
+                        LOG.log("unwrap " + res + ", consumed " + res.bytesConsumed() + ", produced " + res.bytesProduced());
+                    }
+                    boolean after = sslEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+                    if(before && !after) {
+                        LOG.log("unwrap, handshake renegociation");
+                        isRenegotiating = true;
+                        onRenegoStart.call("renegotiation.start", Collections.emptyList().toArray());
+                    }
+                } while (res.getStatus() == SSLEngineResult.Status.OK
+                        && res.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_UNWRAP
+                        && res.bytesProduced() == 0);
 
-            LOG.log("unwrap, main loop done, has remaining in received from peer " + incomingFromPeer.hasRemaining());
+                LOG.log("unwrap, main loop done, has remaining in received from peer %s", in.hasRemaining());
 
-            // Reallocate some space for clear content.
-            if (res.getStatus() == Status.BUFFER_OVERFLOW) {
-                decryptedAppData = handleBufferOverFlow(sslEngine.getSession().getApplicationBufferSize(), decryptedAppData);
-            } else {
-                // Check for other states in between multiple unwrap.
-                // Handshake only.
-                otherStates();
-            }
-            if (res.getHandshakeStatus() == HandshakeStatus.FINISHED) {
-                LOG.log("--HS-- FINISHED, Session [" + HexUtils.encode(sslEngine.getSession().getId()) + "]");
-            }
-            // If there is some data in the incoming buffer, then loop to decrypt it.
-            // Termination occurs when there is not enough in incoming to decrypt
-            // or if Closed has been received embedded in the current packet.
-        } while (res.getStatus() != SSLEngineResult.Status.BUFFER_UNDERFLOW && res.getStatus() != SSLEngineResult.Status.CLOSED
-                && incomingFromPeer.hasRemaining());
+                // Reallocate some space for clear content.
+                if (res.getStatus() == Status.BUFFER_OVERFLOW) {
+                    decryptedAppData = handleBufferOverFlow(sslEngine.getSession().getApplicationBufferSize(), decryptedAppData);
+                } else {
+                    // Check for other states in between multiple unwrap.
+                    // Handshake only.
+                    otherStates();
+                }
+                if (res.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+                    handshakeFinished();
+                    LOG.log(() -> "--HS-- FINISHED, Session [" + HexUtils.encode(sslEngine.getSession().getId()) + "]");
+                }
+                // If there is some data in the incoming buffer, then loop to decrypt it.
+                // Termination occurs when there is not enough in incoming to decrypt
+                // or if Closed has been received embedded in the current packet.
+                // Tasks running in the pool, the rest of the input is unwrapped once done.
+            } while (res.getStatus() != SSLEngineResult.Status.BUFFER_UNDERFLOW && res.getStatus() != SSLEngineResult.Status.CLOSED
+                    && in.hasRemaining() && !tasksPending);
+        } finally {
+            keepUnconsumed(in);
+        }
         readLength = endUnwrap(res, length);
 
         return readLength;
 
     }
 
-    private void initUnwrap(final Buffer data, final int offset, final int length) {
-        LOG.log("start unwrap, incomingFromPeer.position == " + incomingFromPeer.position());
+    /**
+     * When nothing is left over from a previous call, records are decrypted
+     * straight from the received Buffer. Otherwise the received bytes are
+     * appended to the partial record kept in incomingFromPeer.
+     */
+    private ByteBuffer initUnwrap(final Buffer data, final int offset, final int length) {
+        if (Logging.LOGGABLE && LOG.enabled()) {
+            LOG.log("start unwrap, incomingFromPeer.position == " + incomingFromPeer.position());
+        }
+        if (data == null) {
+            // resuming after delegated tasks, only what is left from previous calls.
+            incomingFromPeer.flip();
+            return incomingFromPeer;
+        }
+        if (incomingFromPeer.position() == 0) {
+            return data.toByteBuffer(offset, offset + length);
+        }
         incomingFromPeer = safeAllocation(incomingFromPeer, data, offset, length);
+        return incomingFromPeer;
+    }
+
+    /**
+     * Only the trailing partial record, if any, is copied out of the received
+     * Buffer, it is owned by the caller once encIn returns.
+     */
+    private void keepUnconsumed(final ByteBuffer in) {
+        if (in == incomingFromPeer) {
+            incomingFromPeer.compact();
+        } else if (in.hasRemaining()) {
+            if (in.remaining() > incomingFromPeer.capacity()) {
+                incomingFromPeer = ByteBuffer.allocateDirect(in.remaining());
+            }
+            incomingFromPeer.clear();
+            incomingFromPeer.put(in);
+        }
     }
 
     private int endUnwrap(final SSLEngineResult res, final int length) throws SSLException {
         final int readLength = length;
-        incomingFromPeer.compact();
         assert res.getStatus() != Status.BUFFER_OVERFLOW;
-        LOG.log("end unwrap incomingFromPeer.position == " + incomingFromPeer.position() + " res " + res + " / bytes " + res.bytesProduced() + "decrypted data position " + decryptedAppData.position());
+        if (Logging.LOGGABLE && LOG.enabled()) {
+            LOG.log("end unwrap incomingFromPeer.position == " + incomingFromPeer.position() + " res " + res + " / bytes " + res.bytesProduced() + "decrypted data position " + decryptedAppData.position());
+        }
 
         switch (res.getStatus()) {
             case OK: {
@@ -988,7 +1092,7 @@ public class SecureConnection {
     private static ByteBuffer handleBufferUnderFlow(final int size, final ByteBuffer underflowed) {
         ByteBuffer b = underflowed;
         if (size > underflowed.capacity()) {
-            b = ByteBuffer.allocate(size);
+            b = ByteBuffer.allocateDirect(size);
             underflowed.flip();
             b.put(underflowed);
         }
@@ -996,27 +1100,41 @@ public class SecureConnection {
     }
 
     private static ByteBuffer handleBufferOverFlow(final int size, final ByteBuffer overflowed) {
-        final ByteBuffer b = ByteBuffer.allocate(size + overflowed.position());
+        final ByteBuffer b = ByteBuffer.allocateDirect(size + overflowed.position());
         overflowed.flip();
         b.put(overflowed);
         return b;
     }
 
+    /**
+     * A fully drained buffer is reused, unless an overflow made it grow far
+     * beyond the session size.
+     */
+    private static ByteBuffer recycle(final ByteBuffer drained, final int size) {
+        if (drained.capacity() > size * MAX_RETAINED_PACKETS) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        drained.clear();
+        return drained;
+    }
+
     private static int fillBuffer(final ByteBuffer byteBuffer, final Buffer buffer) {
         byteBuffer.flip();
-        final byte[] content = new byte[Math.min(byteBuffer.limit(), buffer.remaining())];
-        byteBuffer.get(content);
-        buffer.put(content);
-        return content.length;
+        final int limit = byteBuffer.limit();
+        final int length = Math.min(limit, buffer.remaining());
+        byteBuffer.limit(length);
+        buffer.underlying().put(byteBuffer);
+        byteBuffer.limit(limit);
+        return length;
     }
 
     private ByteBuffer safeAllocation(ByteBuffer buffer, final Buffer data, final int offset, final int length) {
         final int total = buffer.position() + length;
         if (total > buffer.capacity()) {
             buffer = handleBufferOverFlow(buffer.remaining() + length, buffer);
-            LOG.log("Overflow, length " + length + ", new Buffer capacity " + buffer.capacity() +", buffer position " + buffer.position());
+            LOG.log("Overflow, length %s, new Buffer capacity %s, buffer position %s", length, buffer.capacity(), buffer.position());
         }
-        buffer.put(data.array(), offset, length);
+        buffer.put(data.toByteBuffer(offset, offset + length));
         buffer.flip();
         return buffer;
     }
@@ -1030,12 +1148,81 @@ public class SecureConnection {
     }
 
     private void doTasks() throws Exception {
+        if (tasksPending) {
+            // the tasks taken from the engine are still running
+            return;
+        }
+        // The SNI callback is JavaScript, called from the tasks, they stay on the loop thread.
+        if (onTasksDone != null && !context.hasSNICallback()) {
+            submitTasks();
+            return;
+        }
         Runnable dtask;
         while ((dtask = sslEngine.getDelegatedTask()) != null) {
             // Certificate are checked during this phase
             dtask.run();
         }
-        LOG.log("--HS-- tasks done, status " + sslEngine.getHandshakeStatus());
+        tasksDone();
+    }
+
+    /**
+     * Key exchange and signature computations stall the loop for milliseconds,
+     * they run in the pool while the other connections are served.
+     */
+    private void submitTasks() {
+        final List<Runnable> tasks = new ArrayList<>(2);
+        Runnable dtask;
+        while ((dtask = sslEngine.getDelegatedTask()) != null) {
+            tasks.add(dtask);
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+        tasksPending = true;
+        final Callback resume = new Callback() {
+            @Override
+            public void call(final String name, final Object[] args) throws Exception {
+                resumeHandshake();
+            }
+        };
+        final EventLoop.Handle handle = eventLoop.acquire();
+        eventLoop.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Certificate are checked during this phase
+                    for (final Runnable task : tasks) {
+                        task.run();
+                    }
+                } finally {
+                    // a failed task is reported by the next wrap or unwrap
+                    eventLoop.post(new Event("tls.tasks", resume));
+                    handle.close();
+                }
+            }
+        });
+    }
+
+    private void resumeHandshake() throws Exception {
+        tasksPending = false;
+        if (!started) {
+            return;
+        }
+        try {
+            tasksDone();
+            if (!tasksPending && incomingFromPeer.position() != 0) {
+                unwrap(null, 0, 0);
+            }
+        } catch (final Exception ex) {
+            LOG.log("WARNING, tasks, Exception " + ex);
+            exception = ex;
+            shutdown();
+        }
+        onTasksDone.call("tls.tasks", NO_ARGS);
+    }
+
+    private void tasksDone() throws Exception {
+        LOG.log("--HS-- tasks done, status %s", sslEngine.getHandshakeStatus());
 
         /*
          * Workaround of JDK-8005859
@@ -31,6 +31,7 @@ import java.security.Key;
 import java.security.KeyFactory;
 import java.security.KeyStore;
 import java.security.Principal;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
@@ -40,12 +41,16 @@ import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.EncryptedPrivateKeyInfo;
 import javax.net.ssl.ExtendedSSLSession;
@@ -56,6 +61,7 @@ import javax.net.ssl.SNIServerName;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509ExtendedKeyManager;
@@ -63,6 +69,7 @@ import javax.net.ssl.X509TrustManager;
 
 import com.oracle.avatar.js.buffer.Base64Decoder;
 import com.oracle.avatar.js.buffer.Buffer;
+import com.oracle.avatar.js.buffer.HexUtils;
 import com.oracle.avatar.js.eventloop.Callback;
 import com.oracle.avatar.js.log.Logger;
 
@@ -80,11 +87,19 @@ public final class SecureContext {
     private static final String TLSV11 = "TLSv1.1";
     private static final String TLSV12 = "TLSv1.2";
 
+    // Server session cache tuning, a negative value keeps the JDK default.
+    private static final int SESSION_CACHE_SIZE = Integer.getInteger("avatar-js.tls.session.cache.size", -1);
+    private static final int SESSION_TIMEOUT = Integer.getInteger("avatar-js.tls.session.timeout", -1);
+
+    // Server engines and the SecureContext whose SNI callback they use.
+    private static final Map<SSLEngine, SecureContext> SNI_ENGINES =
+            Collections.synchronizedMap(new WeakHashMap<SSLEngine, SecureContext>());
+
     private static final Map<String, String[]> JAVA_PROTOCOLS = new HashMap<>();
     private static final Map<String, String> JAVA_CIPHER_SUITES = new HashMap<>();
 
     private Callback sniCallback;
-    private Random random = new Random();
+
     private static String[] toJavaProtocols(final String secureProtocol) {
         if (secureProtocol == null) {
             return null;
@@ -120,14 +135,34 @@ public final class SecureContext {
         this.sniCallback = sniCallback;
     }
 
+    boolean hasSNICallback() {
+        return sniCallback != null;
+    }
+
+    /**
+     * The SSLContext, so its key manager, can be shared with SecureContexts
+     * having other SNI callbacks. The key manager finds the callback to call
+     * from the engine.
+     */
+    void bindEngine(final SSLEngine engine) {
+        if (sniCallback != null) {
+            SNI_ENGINES.put(engine, this);
+        }
+    }
+
     /**
-     * Wrapper required to handle SNI Certificate/hostname association
+     * Wrapper required to handle SNI Certificate/hostname association.
+     * It is shared, through the cached SSLContext, by all the SecureContexts
+     * and loops using the same credentials, so it keeps nothing of the
+     * SecureContext that built it. The SNI callback, and the logger, are the
+     * ones of the SecureContext the engine is bound to.
      */
-    private class KeyManagerWrapper extends X509ExtendedKeyManager {
+    private static final class KeyManagerWrapper extends X509ExtendedKeyManager {
 
         private X509ExtendedKeyManager wrapped;
-        private Map<String, PrivateKey> sniPrivateKeys = new HashMap<>();
-        private Map<String, X509Certificate[]> sniCertificates = new HashMap<>();
+        // Handshakes of several loops can use the same key manager.
+        private Map<String, PrivateKey> sniPrivateKeys = new ConcurrentHashMap<>();
+        private Map<String, X509Certificate[]> sniCertificates = new ConcurrentHashMap<>();
 
         public KeyManagerWrapper(KeyManager[] keyManagers) {
             for (KeyManager km : keyManagers) {
@@ -144,33 +179,27 @@ public final class SecureContext {
 
         @Override
         public String[] getClientAliases(String alias, Principal[] prncpls) {
-            LOG.log("SNI getClientAliases " + alias);
             return wrapped.getClientAliases(alias, prncpls);
         }
 
         @Override
         public String chooseClientAlias(String[] strings, Principal[] prncpls, Socket socket) {
-            LOG.log("SNI chooseClientAlias ");
             return wrapped.chooseClientAlias(strings, prncpls, socket);
         }
 
         @Override
         public String[] getServerAliases(String alias, Principal[] prncpls) {
-            LOG.log("SNI getServerAliases " + alias);
             return wrapped.getServerAliases(alias, prncpls);
         }
 
         @Override
         public String chooseServerAlias(String alias, Principal[] prncpls, Socket socket) {
-            LOG.log("SNI chooseServerAlias " + alias);
             return wrapped.chooseServerAlias(alias, prncpls, socket);
         }
 
         @Override
         public X509Certificate[] getCertificateChain(String alias) {
             X509Certificate[] certs = sniCertificates.remove(alias);
-            LOG.log("SNI getCertificateChain " + alias + " certs " +
-                    (certs == null ? "0" : certs.length));
             if (certs != null) {
                 return certs;
             } else {
@@ -181,8 +210,6 @@ public final class SecureContext {
         @Override
         public PrivateKey getPrivateKey(String alias) {
             PrivateKey pk = sniPrivateKeys.remove(alias);
-            LOG.log("SNI getPrivateKey " + alias +
-                    ", pkey " + (pk == null ? "null" : "pkey"));
             if (pk != null) {
                 return pk;
             } else {
@@ -201,31 +228,35 @@ public final class SecureContext {
         public String chooseEngineServerAlias(String keyType,
                 Principal[] issuers,
                 SSLEngine engine) {
-            LOG.log("SNI, chooseEngineServerAlias for " +  keyType);
+            final SecureContext owner = SNI_ENGINES.get(engine);
+            if (owner == null) {
+                return wrapped.chooseEngineServerAlias(keyType, issuers, engine);
+            }
+            final Logger log = owner.LOG;
+            log.log("SNI, chooseEngineServerAlias for %s", keyType);
             SSLSession session = engine.getHandshakeSession();
             if (session instanceof ExtendedSSLSession) {
                 ExtendedSSLSession es = (ExtendedSSLSession) session;
                 for (SNIServerName sni : es.getRequestedServerNames()) {
                     SNIHostName hn = new SNIHostName(sni.getEncoded());
-                    LOG.log("SNI, SNI host name " + hn.getAsciiName());
-                    SecureContext ctx = retrieveSNICallbackContext(hn);
+                    log.log("SNI, SNI host name %s", hn.getAsciiName());
+                    SecureContext ctx = retrieveSNICallbackContext(owner, hn);
                     if (ctx != null) {
-                        String alias = retrieveInSNICallback(ctx, keyType, hn);
-                        LOG.log("SNI, SNI configuration returned alias " + alias);
+                        String alias = retrieveInSNICallback(log, ctx, keyType);
+                        log.log("SNI, SNI configuration returned alias %s", alias);
                         return alias;
                     }
                 }
             }
             String alias = wrapped.chooseEngineServerAlias(keyType, issuers, engine);
-            LOG.log("SNI, no SNI configuration, standard manager returned alias " + alias);
+            log.log("SNI, no SNI configuration, standard manager returned alias %s", alias);
             return alias;
 
         }
 
-        private SecureContext retrieveSNICallbackContext(SNIHostName hn) {
-            if (sniCallback == null) {
-                return null;
-            }
+        private static SecureContext retrieveSNICallbackContext(SecureContext owner, SNIHostName hn) {
+            final Logger log = owner.LOG;
+            final Callback sniCallback = owner.sniCallback;
             final List<SecureContext> retValue = new ArrayList<>(1);
             Callback ret = new Callback() {
                 @Override
@@ -237,24 +268,24 @@ public final class SecureContext {
             try {
                 sniCallback.call("", args);
             } catch (Exception ex) {
-                LOG.log("SNI Exception when calling SNICallback " + ex);
+                log.log("SNI Exception when calling SNICallback " + ex);
             }
 
             SecureContext ctx = null;
             if (retValue.size() == 1 && retValue.get(0) != null) {
                 ctx = retValue.get(0);
-                LOG.log("SNI Custom context for SNI host " + hn.getAsciiName());
+                log.log("SNI Custom context for SNI host " + hn.getAsciiName());
             }
             return ctx;
         }
 
-        private String retrieveInSNICallback(SecureContext ctx, String keyType, SNIHostName hn) {
+        private String retrieveInSNICallback(Logger log, SecureContext ctx, String keyType) {
             String alias = null;
             try {
-                alias = store(keyType, ctx.getKeyStore(), ctx.passPhrase);
-                LOG.log("SNI computed alias " + alias);
+                alias = store(log, keyType, ctx.getKeyStore(), ctx.passPhrase);
+                log.log("SNI computed alias " + alias);
             } catch (Exception ex) {
-                LOG.log("SNI Exception when retrieving key/certificate, " + ex);
+                log.log("SNI Exception when retrieving key/certificate, " + ex);
             }
 
             return alias;
@@ -262,16 +293,16 @@ public final class SecureContext {
 
         // Returns non null if a PKey and a Certificate have been retrieved
         // for the given key type.
-        private String store(String keyType, KeyStore ks, String passphrase) throws Exception {
+        private String store(Logger log, String keyType, KeyStore ks, String passphrase) throws Exception {
             Enumeration<String> aliases = ks.aliases();
             while (aliases.hasMoreElements()) {
                 String alias = aliases.nextElement();
                 if (ks.isKeyEntry(alias)) {
                     Key k = ks.getKey(alias, passphrase == null ? null : passphrase.toCharArray());
-                    LOG.log("SNI Key alias " + alias + " key type " + k.getAlgorithm());
+                    log.log("SNI Key alias " + alias + " key type " + k.getAlgorithm());
                     if (keyType.equals(k.getAlgorithm())) {
                         Certificate[] cert = ks.getCertificateChain(alias);
-                        String computedAlias = "" + random.nextLong();
+                        String computedAlias = "" + ThreadLocalRandom.current().nextLong();
                         if (k instanceof PrivateKey) {
                             sniPrivateKeys.put(computedAlias, (PrivateKey) k);
                         }
@@ -282,7 +313,7 @@ public final class SecureContext {
                         return computedAlias;
                     }
                 } else {
-                   LOG.log("SNI Skiping alias " + alias + ", not a key");
+                   log.log("SNI Skiping alias " + alias + ", not a key");
                 }
             }
             return null;
@@ -290,9 +321,10 @@ public final class SecureContext {
     }
 
     /**
-     *
+     * Shared like the key manager, the SecureContext checking a chain passes
+     * its logger.
      */
-    private class TrustManagerWrapper implements X509TrustManager {
+    private static final class TrustManagerWrapper implements X509TrustManager {
 
         private final TrustManager[] managers;
 
@@ -305,9 +337,9 @@ public final class SecureContext {
             // certificate check is delegated post HS.
         }
 
-        public void isClientTrusted(final X509Certificate[] chain, final String type) throws CertificateException {
+        public void isClientTrusted(final Logger log, final X509Certificate[] chain, final String type) throws CertificateException {
             for (X509Certificate c : chain) {
-                LOG.log("Client certificate subject " + c.getSubjectDN() + ", issuer " + c.getIssuerDN());
+                log.log("Client certificate subject %s, issuer %s", c.getSubjectDN(), c.getIssuerDN());
             }
 
             for (final TrustManager m : managers) {
@@ -317,11 +349,11 @@ public final class SecureContext {
                         xtm.checkClientTrusted(chain, type);
                     }
                 } catch (final CertificateException ex) {
-                    LOG.log("Client Not trusted" + ex);
+                    log.log("Client Not trusted" + ex);
                     throw ex;
                 }
             }
-            LOG.log("OK, client certificate trusted");
+            log.log("OK, client certificate trusted");
         }
 
         @Override
@@ -329,9 +361,9 @@ public final class SecureContext {
             // certificate check is delegated post HS.
         }
 
-        public void isServerTrusted(final X509Certificate[] chain, final String type) throws CertificateException {
+        public void isServerTrusted(final Logger log, final X509Certificate[] chain, final String type) throws CertificateException {
             for (X509Certificate c : chain) {
-                LOG.log("Server certificate subject " + c.getSubjectDN() + ", issuer " + c.getIssuerDN());
+                log.log("Server certificate subject %s, issuer %s", c.getSubjectDN(), c.getIssuerDN());
             }
             for (final TrustManager m : managers) {
                 try {
@@ -341,11 +373,11 @@ public final class SecureContext {
                     }
                 } catch (final CertificateException ex) {
                     //addInvalid(chain, ex);
-                    LOG.log("Server Not trusted " + ex);
+                    log.log("Server Not trusted " + ex);
                     throw ex;
                 }
             }
-            LOG.log("OK, server certificate trusted ");
+            log.log("OK, server certificate trusted ");
         }
 
         @Override
@@ -369,12 +401,16 @@ public final class SecureContext {
     private final ArrayList<Certificate> trustedCAList = new ArrayList<>();
     private final List<X509CRL> crlList = new ArrayList<>();
     private KeyStore pkcs12;
+    private byte[] pfx;
     private String passPhrase;
     private EncryptedPrivateKeyInfo encryptedPK;
     private PKCS8EncodedKeySpec nonEncryptedPK;
     private SSLContext sslContext;
-    private boolean sessionReused;
     private TrustManagerWrapper trustWrapper;
+    private int sessionCacheSize = SESSION_CACHE_SIZE;
+    private int sessionTimeout = SESSION_TIMEOUT;
+    private final AtomicLong sessionHits = new AtomicLong();
+    private final AtomicLong sessionMisses = new AtomicLong();
     private String host;
     private int port;
 
@@ -486,7 +522,8 @@ public final class SecureContext {
 
     public void loadPKCS12(final Buffer pfx, final String passPhrase) throws Exception {
         this.passPhrase = passPhrase;
-        try (ByteArrayInputStream stream = new ByteArrayInputStream(pfx.array())) {
+        this.pfx = pfx.array();
+        try (ByteArrayInputStream stream = new ByteArrayInputStream(this.pfx)) {
             pkcs12 = KeyStore.getInstance("PKCS12");
             pkcs12.load(stream, passPhrase == null ? null : passPhrase.toCharArray());
             // Check authentication because no Exception is thrown
@@ -548,15 +585,123 @@ public final class SecureContext {
         this.LOG = log;
         if (sslContext != null) {
             LOG.log("Reusing SSLContext");
+            if (trustWrapper == null) {
+                // the context of another session, certificates are still checked against ours.
+                getTrustManagers();
+            }
             return sslContext;
         }
 
-        sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(getCustomKeyManagers(), getTrustManagers(), null);
+        final String credentials = credentialsDigest();
+        SSLContextCache.Entry entry = SSLContextCache.get(credentials);
+        if (entry != null) {
+            LOG.log("Reusing cached SSLContext");
+        } else {
+            final SSLContext built = SSLContext.getInstance("TLS");
+            built.init(getCustomKeyManagers(), getTrustManagers(), null);
+            applySessionSettings(built);
+            entry = SSLContextCache.putIfAbsent(credentials, built, trustWrapper);
+        }
+        sslContext = entry.context;
+        trustWrapper = (TrustManagerWrapper) entry.trust;
 
         return sslContext;
     }
 
+    /**
+     * Number of server side sessions kept, 0 means no limit. The setting is
+     * part of the key of the shared SSLContext, SecureContexts with other
+     * settings get their own. It can't be changed once the SSLContext is in
+     * use, that would change it for the other SecureContexts too.
+     */
+    public void setSessionCacheSize(final int size) {
+        checkSessionSettings();
+        sessionCacheSize = size;
+    }
+
+    /**
+     * Lifetime in seconds of the server side sessions, 0 means no limit.
+     * Same scope as the cache size.
+     */
+    public void setSessionTimeout(final int seconds) {
+        checkSessionSettings();
+        sessionTimeout = seconds;
+    }
+
+    private void checkSessionSettings() {
+        if (sslContext != null) {
+            throw new IllegalStateException("SSLContext already in use, session settings can't be changed");
+        }
+    }
+
+    private void applySessionSettings(final SSLContext context) {
+        final SSLSessionContext sessions = context.getServerSessionContext();
+        if (sessionCacheSize >= 0) {
+            sessions.setSessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout >= 0) {
+            sessions.setSessionTimeout(sessionTimeout);
+        }
+    }
+
+    void sessionEstablished(final boolean resumed) {
+        if (resumed) {
+            sessionHits.incrementAndGet();
+        } else {
+            sessionMisses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Handshakes that resumed a cached session.
+     */
+    public long getSessionCacheHits() {
+        return sessionHits.get();
+    }
+
+    /**
+     * Full handshakes.
+     */
+    public long getSessionCacheMisses() {
+        return sessionMisses.get();
+    }
+
+    /**
+     * Identifies what the SSLContext is built from, two SecureContexts with
+     * the same digest share one SSLContext. Protocols and cipher suites are
+     * set per engine, CRLs are checked after the handshake, they are not part
+     * of it. The session settings are, they configure the SSLContext.
+     */
+    private String credentialsDigest() throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        if (certificate != null) {
+            digest.update(certificate.getEncoded());
+        }
+        if (nonEncryptedPK != null) {
+            digest.update(nonEncryptedPK.getEncoded());
+        }
+        if (encryptedPK != null) {
+            digest.update(encryptedPK.getEncoded());
+        }
+        if (pfx != null) {
+            digest.update(pfx);
+        }
+        if (passPhrase != null) {
+            digest.update(passPhrase.getBytes("UTF-8"));
+        }
+        // separates the local credentials from the trusted ones
+        digest.update((byte) 0);
+        for (final Certificate ca : trustedCAList) {
+            digest.update(ca.getEncoded());
+        }
+        // the session caches are those of the SSLContext
+        digest.update((byte) 0);
+        digest.update(Integer.toString(sessionCacheSize).getBytes("UTF-8"));
+        digest.update((byte) 0);
+        digest.update(Integer.toString(sessionTimeout).getBytes("UTF-8"));
+        return HexUtils.encode(digest.digest());
+    }
+
     private KeyManager[] getCustomKeyManagers() throws Exception {
         KeyManager[] managers = getKeyManagers();
         try {
@@ -603,7 +748,7 @@ public final class SecureContext {
         // Client and server trusts the content of ca
         for (int i = 0; i < getTrustedCertificates().size(); i++) {
             final Certificate cert = getTrustedCertificates().get(i);
-            LOG.log("Adding trusted certificate " + ((X509Certificate) cert).getIssuerDN());
+            LOG.log("Adding trusted certificate %s", ((X509Certificate) cert).getIssuerDN());
             ks.setCertificateEntry("trusted-cert-" + i, cert);
         }
 
@@ -619,14 +764,14 @@ public final class SecureContext {
         tmf.init(ks);
 
         trustWrapper = new TrustManagerWrapper(tmf.getTrustManagers());
-        LOG.log("Number of trusted issuers: " + trustWrapper.getAcceptedIssuers().length);
+        LOG.log(() -> "Number of trusted issuers: " + trustWrapper.getAcceptedIssuers().length);
         final TrustManager[] arr = {trustWrapper};
         return arr;
     }
 
     public void isServerTrusted(X509Certificate[] chain, String authType) throws Exception {
         assert trustWrapper != null;
-        trustWrapper.isServerTrusted(chain, authType);
+        trustWrapper.isServerTrusted(LOG, chain, authType);
     }
 
     public void isClientTrusted(X509Certificate[] chain, String authType) throws Exception {
@@ -640,7 +785,7 @@ public final class SecureContext {
         }
         // Then if the chain is trusted.
         assert trustWrapper != null;
-        trustWrapper.isClientTrusted(chain, authType);
+        trustWrapper.isClientTrusted(LOG, chain, authType);
     }
 
     public void setContext(final SSLContext sslContext) {
@@ -648,15 +793,10 @@ public final class SecureContext {
             throw new IllegalArgumentException("Invalid null session");
         }
 
-        this.sessionReused = true;
         this.sslContext = sslContext;
     }
 
     public SSLContext getContext() {
         return sslContext;
     }
-
-    public boolean isSessionReused() {
-        return sessionReused;
-    }
 }
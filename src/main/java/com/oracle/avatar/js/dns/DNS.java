@@ -25,8 +25,10 @@
 
 package com.oracle.avatar.js.dns;
 
+import java.io.IOException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.oracle.avatar.js.eventloop.Callback;
 import com.oracle.avatar.js.eventloop.Event;
@@ -34,52 +36,150 @@ import com.oracle.avatar.js.eventloop.EventLoop;
 
 public final class DNS {
 
+    // getaddrinfo through the stub resolver instead of InetAddress.
+    private static final boolean STUB_LOOKUP = "stub".equals(System.getProperty("avatar-js.dns.resolver"));
+
+    private static final Map<String, Integer> TYPES = new HashMap<>();
+
+    static {
+        TYPES.put("A", DNSMessage.TYPE_A);
+        TYPES.put("AAAA", DNSMessage.TYPE_AAAA);
+        TYPES.put("CNAME", DNSMessage.TYPE_CNAME);
+        TYPES.put("MX", DNSMessage.TYPE_MX);
+        TYPES.put("NS", DNSMessage.TYPE_NS);
+        TYPES.put("PTR", DNSMessage.TYPE_PTR);
+        TYPES.put("SRV", DNSMessage.TYPE_SRV);
+        TYPES.put("TXT", DNSMessage.TYPE_TXT);
+    }
+
     private final EventLoop eventLoop;
+    private final DNSCache cache;
+    private StubResolver resolver;
 
     public DNS(final EventLoop eventLoop) {
         this.eventLoop = eventLoop;
+        this.cache = new DNSCache(eventLoop);
+    }
+
+    public DNSCache cache() {
+        return cache;
+    }
+
+    /**
+     * The stub resolver of this loop, configured on first use.
+     */
+    public StubResolver resolver() throws IOException {
+        if (resolver == null) {
+            resolver = new StubResolver(eventLoop, ResolverConfig.load());
+        }
+        return resolver;
+    }
+
+    /**
+     * Cancels the pending queries of the stub resolver and closes its
+     * handles, called when the loop stops.
+     */
+    public void close() {
+        if (resolver != null) {
+            resolver.close();
+            resolver = null;
+        }
+        cache.clear();
+    }
+
+    /**
+     * Queries the records of a type (A, AAAA, CNAME, MX, NS, PTR, SRV, TXT)
+     * with the stub resolver. The callback gets an Object[] of Strings,
+     * DNSMessage.Mx, DNSMessage.Srv or String[] for TXT records.
+     */
+    public void query(final String name, final String type, final Callback callback) throws IOException {
+        final Integer rrtype = TYPES.get(type);
+        if (rrtype == null) {
+            throw new IllegalArgumentException("Unsupported record type " + type);
+        }
+        final StubResolver stub = resolver();
+        cache.lookup(type + ":" + name, callback, new DNSCache.Resolution() {
+            @Override
+            public void resolve(final Callback done) {
+                stub.query(name, rrtype, done);
+            }
+        });
     }
 
     public void getHostByAddress(final String address,
                                  final Callback callback) {
-        final EventLoop.Handle handle = eventLoop.acquire();
-        eventLoop.submit(new Runnable() {
+        cache.lookup("ptr:" + address, callback, new DNSCache.Resolution() {
             @Override
-            public void run() {
-                try {
-                    final InetAddress[] hostAddresses = InetAddress.getAllByName(address);
-                    final String[] hostNames = new String[hostAddresses.length];
-                    for (int i = 0; i < hostAddresses.length; i++) {
-                        hostNames[i] = hostAddresses[i].getHostName();
+            public void resolve(final Callback done) {
+                final EventLoop.Handle handle = eventLoop.acquire();
+                eventLoop.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            final InetAddress[] hostAddresses = InetAddress.getAllByName(address);
+                            final String[] hostNames = new String[hostAddresses.length];
+                            for (int i = 0; i < hostAddresses.length; i++) {
+                                hostNames[i] = hostAddresses[i].getHostName();
+                            }
+                            eventLoop.post(new Event("dns.host", done, null, hostNames));
+                        } catch (final Exception e) {
+                            // not only UnknownHostException, a SecurityException
+                            // too must reach the callback
+                            eventLoop.post(new Event("dns.host.error", done, e, null));
+                        } finally {
+                            handle.close();
+                        }
                     }
-                    eventLoop.post(new Event("dns.host", callback, null, hostNames));
-                } catch (final UnknownHostException e) {
-                    eventLoop.post(new Event("dns.host.error", callback, e, null));
-                } finally {
-                    handle.close();
-                }
+                });
             }
         });
     }
 
     public void getAddressByHost(final String hostname,
-                                 final Callback callback) {
-        final EventLoop.Handle handle = eventLoop.acquire();
-        eventLoop.submit(new Runnable() {
+                                 final Callback callback) throws IOException {
+        if (STUB_LOOKUP) {
+            final StubResolver stub = resolver();
+            cache.lookup("addr:" + hostname, callback, new DNSCache.Resolution() {
+                @Override
+                public void resolve(final Callback done) {
+                    // IPv4 first, as InetAddress without java.net.preferIPv6Addresses
+                    stub.query(hostname, DNSMessage.TYPE_A, new Callback() {
+                        @Override
+                        public void call(final String name, final Object[] args) throws Exception {
+                            if (args[0] == null) {
+                                done.call(name, args);
+                            } else {
+                                stub.query(hostname, DNSMessage.TYPE_AAAA, done);
+                            }
+                        }
+                    });
+                }
+            });
+            return;
+        }
+        cache.lookup("addr:" + hostname, callback, new DNSCache.Resolution() {
             @Override
-            public void run() {
-                try {
-                    final InetAddress[] hostAddresses = InetAddress.getAllByName(hostname);
-                    final String[] addresses = new String[hostAddresses.length];
-                    for (int i = 0; i < hostAddresses.length; i++) {
-                        addresses[i] = hostAddresses[i].getHostAddress();
+            public void resolve(final Callback done) {
+                final EventLoop.Handle handle = eventLoop.acquire();
+                eventLoop.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            final InetAddress[] hostAddresses = InetAddress.getAllByName(hostname);
+                            final String[] addresses = new String[hostAddresses.length];
+                            for (int i = 0; i < hostAddresses.length; i++) {
+                                addresses[i] = hostAddresses[i].getHostAddress();
+                            }
+                            eventLoop.post(new Event("dns.address", done, null, addresses));
+                        } catch (final Exception e) {
+                            // not only UnknownHostException, a SecurityException
+                            // too must reach the callback
+                            eventLoop.post(new Event("dns.address.error", done, e, null));
+                        } finally {
+                            handle.close();
+                        }
                     }
-                    eventLoop.post(new Event("dns.address", callback, null, addresses));
-                } catch (final UnknownHostException e) {
-                    eventLoop.post(new Event("dns.address.error", callback, e, null));
-                } finally {
-                    handle.close();
-                }
+                });
             }
         });
     }
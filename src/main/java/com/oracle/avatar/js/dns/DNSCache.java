@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.oracle.avatar.js.dns;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.Event;
+import com.oracle.avatar.js.eventloop.EventLoop;
+
+/**
+ * Cache of the lookups of an EventLoop, accessed from the loop thread only.
+ * Answers are kept for a positive TTL, or their own if shorter, failures
+ * for a negative TTL, the least recently used entries are evicted past the
+ * maximum size.
+ * Concurrent lookups of the same key share one resolution: the first one
+ * starts it, the others wait for its completion.
+ * Callbacks are always called from a posted event, never from lookup.
+ */
+public final class DNSCache {
+
+    /**
+     * A resolution, done calls back on the loop thread with an error or
+     * the answer array, as the DNS callbacks, and optionally the TTL of
+     * the answer in seconds.
+     */
+    public interface Resolution {
+        void resolve(Callback done);
+    }
+
+    private static final long TTL = TimeUnit.SECONDS.toNanos(Long.getLong("avatar-js.dns.ttl", 30));
+    private static final long NEGATIVE_TTL = TimeUnit.SECONDS.toNanos(Long.getLong("avatar-js.dns.negative.ttl", 5));
+    private static final int MAX_ENTRIES = Integer.getInteger("avatar-js.dns.cache.size", 1000);
+
+    private static final class Entry {
+        private final String name;
+        private final Exception error;
+        private final Object answer;
+        private final long expires;
+
+        private Entry(final String name, final Exception error, final Object answer, final long expires) {
+            this.name = name;
+            this.error = error;
+            this.answer = answer;
+            this.expires = expires;
+        }
+    }
+
+    private final EventLoop eventLoop;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, List<Callback>> pending = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public DNSCache(final EventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    public void lookup(final String key, final Callback callback, final Resolution resolution) {
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expires - System.nanoTime() > 0) {
+                (entry.error == null ? hits : negativeHits).incrementAndGet();
+                eventLoop.post(new Event(entry.name, callback, entry.error, entry.answer));
+                return;
+            }
+            entries.remove(key);
+        }
+
+        List<Callback> waiting = pending.get(key);
+        if (waiting != null) {
+            coalesced.incrementAndGet();
+            waiting.add(callback);
+            return;
+        }
+        misses.incrementAndGet();
+        waiting = new ArrayList<>(1);
+        waiting.add(callback);
+        pending.put(key, waiting);
+        try {
+            resolution.resolve(new Callback() {
+                @Override
+                public void call(final String name, final Object[] args) throws Exception {
+                    final long ttl = args.length > 2 && args[2] instanceof Number ? ((Number) args[2]).longValue() : -1;
+                    complete(key, name, (Exception) args[0], args[1], ttl);
+                }
+            });
+        } catch (final RuntimeException e) {
+            // nothing will complete it, the next lookup resolves again
+            pending.remove(key);
+            throw e;
+        }
+    }
+
+    private void complete(final String key, final String name, final Exception error, final Object answer,
+            final long answerTtl) {
+        long ttl = error == null ? TTL : NEGATIVE_TTL;
+        if (error == null && answerTtl >= 0) {
+            ttl = Math.min(ttl, TimeUnit.SECONDS.toNanos(answerTtl));
+        }
+        if (ttl > 0 && MAX_ENTRIES > 0) {
+            entries.put(key, new Entry(name, error, answer, System.nanoTime() + ttl));
+        }
+        // One event per callback, an exception thrown by one does not skip the others.
+        for (final Callback callback : pending.remove(key)) {
+            eventLoop.post(new Event(name, callback, error, answer));
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.oracle.avatar.js.dns;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encoding of DNS queries and decoding of their responses (RFC 1035), for
+ * the record types the resolver supports.
+ */
+public final class DNSMessage {
+
+    public static final int TYPE_A = 1;
+    public static final int TYPE_NS = 2;
+    public static final int TYPE_CNAME = 5;
+    public static final int TYPE_PTR = 12;
+    public static final int TYPE_MX = 15;
+    public static final int TYPE_TXT = 16;
+    public static final int TYPE_AAAA = 28;
+    public static final int TYPE_SRV = 33;
+
+    public static final int RCODE_OK = 0;
+    public static final int RCODE_FORMERR = 1;
+    public static final int RCODE_SERVFAIL = 2;
+    public static final int RCODE_NXDOMAIN = 3;
+    public static final int RCODE_NOTIMP = 4;
+    public static final int RCODE_REFUSED = 5;
+
+    private static final int CLASS_IN = 1;
+    private static final int FLAG_RESPONSE = 0x8000;
+    private static final int FLAG_TRUNCATED = 0x0200;
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+    private static final int MAX_POINTERS = 64;
+
+    public static final class Mx {
+        public final int priority;
+        public final String exchange;
+
+        public Mx(final int priority, final String exchange) {
+            this.priority = priority;
+            this.exchange = exchange;
+        }
+    }
+
+    public static final class Srv {
+        public final int priority;
+        public final int weight;
+        public final int port;
+        public final String name;
+
+        public Srv(final int priority, final int weight, final int port, final String name) {
+            this.priority = priority;
+            this.weight = weight;
+            this.port = port;
+            this.name = name;
+        }
+    }
+
+    /**
+     * An answer record. data is a String for A, AAAA, CNAME, NS and PTR, an
+     * Mx, an Srv, or a String[] of the character strings of a TXT record.
+     */
+    public static final class Record {
+        public final String name;
+        public final int type;
+        public final long ttl;
+        public final Object data;
+
+        public Record(final String name, final int type, final long ttl, final Object data) {
+            this.name = name;
+            this.type = type;
+            this.ttl = ttl;
+            this.data = data;
+        }
+    }
+
+    private final int id;
+    private final int flags;
+    private final String question;
+    private final int questionType;
+    private final List<Record> answers;
+
+    private DNSMessage(final int id, final int flags, final String question, final int questionType,
+            final List<Record> answers) {
+        this.id = id;
+        this.flags = flags;
+        this.question = question;
+        this.questionType = questionType;
+        this.answers = answers;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public int rcode() {
+        return flags & 0xf;
+    }
+
+    public boolean isResponse() {
+        return (flags & FLAG_RESPONSE) != 0;
+    }
+
+    public boolean isTruncated() {
+        return (flags & FLAG_TRUNCATED) != 0;
+    }
+
+    public String question() {
+        return question;
+    }
+
+    public int questionType() {
+        return questionType;
+    }
+
+    public List<Record> answers() {
+        return answers;
+    }
+
+    /**
+     * Answers of a type, whatever their owner: the owner of the records
+     * following a CNAME chain is the canonical name.
+     */
+    public List<Record> answers(final int type) {
+        final List<Record> typed = new ArrayList<>(answers.size());
+        for (final Record record : answers) {
+            if (record.type == type) {
+                typed.add(record);
+            }
+        }
+        return typed;
+    }
+
+    /**
+     * Encodes a recursive query for name.
+     */
+    public static ByteBuffer query(final int id, final String name, final int type) {
+        final ByteBuffer out = ByteBuffer.allocateDirect(12 + name.length() + 2 + 4);
+        out.putShort((short) id);
+        out.putShort((short) FLAG_RECURSION_DESIRED);
+        out.putShort((short) 1);
+        out.putShort((short) 0);
+        out.putShort((short) 0);
+        out.putShort((short) 0);
+        writeName(out, name);
+        out.putShort((short) type);
+        out.putShort((short) CLASS_IN);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Encodes a response, for tests and stub servers.
+     */
+    public static ByteBuffer response(final int id, final int rcode, final String name, final int type,
+            final List<Record> answers) {
+        final ByteBuffer out = ByteBuffer.allocate(512 + 512 * answers.size());
+        out.putShort((short) id);
+        out.putShort((short) (FLAG_RESPONSE | FLAG_RECURSION_DESIRED | 0x0080 | rcode));
+        out.putShort((short) 1);
+        out.putShort((short) answers.size());
+        out.putShort((short) 0);
+        out.putShort((short) 0);
+        writeName(out, name);
+        out.putShort((short) type);
+        out.putShort((short) CLASS_IN);
+        for (final Record record : answers) {
+            writeName(out, record.name);
+            out.putShort((short) record.type);
+            out.putShort((short) CLASS_IN);
+            out.putInt((int) record.ttl);
+            final int lengthAt = out.position();
+            out.putShort((short) 0);
+            writeData(out, record);
+            out.putShort(lengthAt, (short) (out.position() - lengthAt - 2));
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Decodes a message, the buffer is read from its position to its limit.
+     * @throws IllegalArgumentException if the message is malformed
+     */
+    public static DNSMessage parse(final ByteBuffer data) {
+        final ByteBuffer in = data.slice();
+        try {
+            final int id = in.getShort() & 0xffff;
+            final int flags = in.getShort() & 0xffff;
+            final int questions = in.getShort() & 0xffff;
+            final int answerCount = in.getShort() & 0xffff;
+            in.getShort(); // authority
+            in.getShort(); // additional
+            String question = null;
+            int questionType = 0;
+            for (int i = 0; i < questions; i++) {
+                final String name = readName(in);
+                final int type = in.getShort() & 0xffff;
+                in.getShort(); // class
+                if (i == 0) {
+                    question = name;
+                    questionType = type;
+                }
+            }
+            final List<Record> answers = new ArrayList<>(answerCount);
+            for (int i = 0; i < answerCount; i++) {
+                final String name = readName(in);
+                final int type = in.getShort() & 0xffff;
+                final int rclass = in.getShort() & 0xffff;
+                final long ttl = in.getInt() & 0xffffffffL;
+                final int length = in.getShort() & 0xffff;
+                final int end = in.position() + length;
+                if (end > in.limit()) {
+                    throw new IllegalArgumentException("Truncated record " + name);
+                }
+                final Object value = rclass == CLASS_IN ? readData(in, type, length) : null;
+                in.position(end);
+                if (value != null) {
+                    answers.add(new Record(name, type, ttl, value));
+                }
+            }
+            return new DNSMessage(id, flags, question, questionType, Collections.unmodifiableList(answers));
+        } catch (final BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated message", e);
+        }
+    }
+
+    private static Object readData(final ByteBuffer in, final int type, final int length) {
+        switch (type) {
+            case TYPE_A:
+            case TYPE_AAAA: {
+                if (length != (type == TYPE_A ? 4 : 16)) {
+                    throw new IllegalArgumentException("Invalid address length " + length);
+                }
+                final byte[] address = new byte[length];
+                in.get(address);
+                return type == TYPE_A ? formatIPv4(address) : formatIPv6(address);
+            }
+            case TYPE_CNAME:
+            case TYPE_NS:
+            case TYPE_PTR:
+                return readName(in);
+            case TYPE_MX: {
+                final int priority = in.getShort() & 0xffff;
+                return new Mx(priority, readName(in));
+            }
+            case TYPE_SRV: {
+                final int priority = in.getShort() & 0xffff;
+                final int weight = in.getShort() & 0xffff;
+                final int port = in.getShort() & 0xffff;
+                return new Srv(priority, weight, port, readName(in));
+            }
+            case TYPE_TXT: {
+                final int end = in.position() + length;
+                final List<String> strings = new ArrayList<>();
+                while (in.position() < end) {
+                    final byte[] string = new byte[in.get() & 0xff];
+                    in.get(string);
+                    strings.add(new String(string, StandardCharsets.UTF_8));
+                }
+                return strings.toArray(new String[strings.size()]);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static void writeData(final ByteBuffer out, final Record record) {
+        switch (record.type) {
+            case TYPE_A:
+            case TYPE_AAAA:
+                try {
+                    out.put(java.net.InetAddress.getByName((String) record.data).getAddress());
+                } catch (final java.net.UnknownHostException e) {
+                    throw new IllegalArgumentException(e);
+                }
+                break;
+            case TYPE_CNAME:
+            case TYPE_NS:
+            case TYPE_PTR:
+                writeName(out, (String) record.data);
+                break;
+            case TYPE_MX: {
+                final Mx mx = (Mx) record.data;
+                out.putShort((short) mx.priority);
+                writeName(out, mx.exchange);
+                break;
+            }
+            case TYPE_SRV: {
+                final Srv srv = (Srv) record.data;
+                out.putShort((short) srv.priority);
+                out.putShort((short) srv.weight);
+                out.putShort((short) srv.port);
+                writeName(out, srv.name);
+                break;
+            }
+            case TYPE_TXT:
+                for (final String string : (String[]) record.data) {
+                    final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    out.put((byte) bytes.length);
+                    out.put(bytes);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported type " + record.type);
+        }
+    }
+
+    private static String readName(final ByteBuffer in) {
+        final StringBuilder name = new StringBuilder();
+        int position = in.position();
+        int resume = -1;
+        int pointers = 0;
+        while (true) {
+            final int length = in.get(position) & 0xff;
+            if ((length & 0xc0) == 0xc0) {
+                // compression pointer
+                if (++pointers > MAX_POINTERS) {
+                    throw new IllegalArgumentException("Compression loop");
+                }
+                if (resume < 0) {
+                    resume = position + 2;
+                }
+                position = ((length & 0x3f) << 8) | (in.get(position + 1) & 0xff);
+                continue;
+            }
+            if (length == 0) {
+                position++;
+                break;
+            }
+            if (name.length() > 0) {
+                name.append('.');
+            }
+            for (int i = 1; i <= length; i++) {
+                name.append((char) (in.get(position + i) & 0xff));
+            }
+            position += length + 1;
+        }
+        in.position(resume < 0 ? position : resume);
+        return name.toString();
+    }
+
+    private static void writeName(final ByteBuffer out, final String name) {
+        final String absolute = name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+        if (!absolute.isEmpty()) {
+            for (final String label : absolute.split("\\.", -1)) {
+                if (label.isEmpty() || label.length() > 63) {
+                    throw new IllegalArgumentException("Invalid name " + name);
+                }
+                out.put((byte) label.length());
+                for (int i = 0; i < label.length(); i++) {
+                    out.put((byte) label.charAt(i));
+                }
+            }
+        }
+        out.put((byte) 0);
+    }
+
+    private static String formatIPv4(final byte[] a) {
+        return (a[0] & 0xff) + "." + (a[1] & 0xff) + "." + (a[2] & 0xff) + "." + (a[3] & 0xff);
+    }
+
+    // RFC 5952 text, as c-ares returns it: the longest run of zero groups is elided.
+    private static String formatIPv6(final byte[] a) {
+        final int[] groups = new int[8];
+        for (int i = 0; i < 8; i++) {
+            groups[i] = ((a[2 * i] & 0xff) << 8) | (a[2 * i + 1] & 0xff);
+        }
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; i++) {
+            int j = i;
+            while (j < 8 && groups[j] == 0) {
+                j++;
+            }
+            if (j - i > bestLength) {
+                bestStart = i;
+                bestLength = j - i;
+            }
+            i = Math.max(i, j);
+        }
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                text.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(groups[i]));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.oracle.avatar.js.dns;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Name servers, search domains and static hosts, read from resolv.conf(5)
+ * and hosts(5). The avatar-js.dns.servers property, a comma separated list
+ * of ip or ip:port, replaces the name servers of resolv.conf.
+ */
+public final class ResolverConfig {
+
+    private static final int DNS_PORT = 53;
+
+    private final List<InetSocketAddress> servers = new ArrayList<>();
+    private final List<String> search = new ArrayList<>();
+    private final Map<String, List<String>> hosts = new HashMap<>();
+    private int ndots = 1;
+    private int timeout = 5000;
+    private int attempts = 2;
+    private boolean rotate;
+
+    public static ResolverConfig load() throws IOException {
+        final ResolverConfig config = new ResolverConfig();
+        try (final BufferedReader reader = Files.newBufferedReader(
+                Paths.get(System.getProperty("avatar-js.dns.resolv.conf", "/etc/resolv.conf")), StandardCharsets.UTF_8)) {
+            config.parseResolvConf(reader);
+        } catch (final NoSuchFileException ignored) {
+        }
+        try (final BufferedReader reader = Files.newBufferedReader(
+                Paths.get(System.getProperty("avatar-js.dns.hosts", "/etc/hosts")), StandardCharsets.UTF_8)) {
+            config.parseHosts(reader);
+        } catch (final NoSuchFileException ignored) {
+        }
+        final String servers = System.getProperty("avatar-js.dns.servers");
+        if (servers != null) {
+            config.servers.clear();
+            for (final String server : servers.split(",")) {
+                config.addServer(server.trim());
+            }
+        }
+        if (config.servers.isEmpty()) {
+            config.addServer("127.0.0.1");
+        }
+        return config;
+    }
+
+    public void parseResolvConf(final Reader in) throws IOException {
+        final BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String[] fields = fields(line);
+            if (fields.length < 2) {
+                continue;
+            }
+            switch (fields[0]) {
+                case "nameserver":
+                    addServer(fields[1]);
+                    break;
+                case "domain":
+                case "search":
+                    search.clear();
+                    for (int i = 1; i < fields.length; i++) {
+                        search.add(fields[i]);
+                    }
+                    break;
+                case "options":
+                    for (int i = 1; i < fields.length; i++) {
+                        parseOption(fields[i]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    public void parseHosts(final Reader in) throws IOException {
+        final BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String[] fields = fields(line);
+            for (int i = 1; i < fields.length; i++) {
+                final String name = fields[i].toLowerCase(Locale.ROOT);
+                List<String> addresses = hosts.get(name);
+                if (addresses == null) {
+                    addresses = new ArrayList<>(1);
+                    hosts.put(name, addresses);
+                }
+                if (!addresses.contains(fields[0])) {
+                    addresses.add(fields[0]);
+                }
+            }
+        }
+    }
+
+    private void parseOption(final String option) {
+        final int colon = option.indexOf(':');
+        final String name = colon < 0 ? option : option.substring(0, colon);
+        try {
+            switch (name) {
+                case "ndots":
+                    ndots = Math.min(15, Integer.parseInt(option.substring(colon + 1)));
+                    break;
+                case "timeout":
+                    timeout = Math.max(1, Math.min(30, Integer.parseInt(option.substring(colon + 1)))) * 1000;
+                    break;
+                case "attempts":
+                    attempts = Math.max(1, Math.min(5, Integer.parseInt(option.substring(colon + 1))));
+                    break;
+                case "rotate":
+                    rotate = true;
+                    break;
+                default:
+                    break;
+            }
+        } catch (final NumberFormatException | StringIndexOutOfBoundsException ignored) {
+        }
+    }
+
+    private void addServer(final String server) {
+        String host = server;
+        int port = DNS_PORT;
+        final int colon = server.lastIndexOf(':');
+        // ip:port, or [ipv6]:port
+        if (server.startsWith("[")) {
+            final int close = server.indexOf(']');
+            host = server.substring(1, close);
+            if (close + 1 < server.length() && server.charAt(close + 1) == ':') {
+                port = Integer.parseInt(server.substring(close + 2));
+            }
+        } else if (colon > 0 && server.indexOf(':') == colon) {
+            host = server.substring(0, colon);
+            port = Integer.parseInt(server.substring(colon + 1));
+        }
+        // Link local scopes (fe80::1%eth0) are not usable with the UDP handle.
+        final int scope = host.indexOf('%');
+        if (scope > 0) {
+            return;
+        }
+        servers.add(InetSocketAddress.createUnresolved(host, port));
+    }
+
+    private static String[] fields(final String line) {
+        int end = line.length();
+        final int hash = line.indexOf('#');
+        if (hash >= 0) {
+            end = hash;
+        }
+        final int semicolon = line.indexOf(';');
+        if (semicolon >= 0 && semicolon < end) {
+            end = semicolon;
+        }
+        final String content = line.substring(0, end).trim();
+        return content.isEmpty() ? new String[0] : content.split("\\s+");
+    }
+
+    /**
+     * The names to query for name, in order.
+     */
+    public List<String> candidates(final String name) {
+        if (name.endsWith(".")) {
+            return Collections.singletonList(name.substring(0, name.length() - 1));
+        }
+        final List<String> names = new ArrayList<>(search.size() + 1);
+        int dots = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '.') {
+                dots++;
+            }
+        }
+        if (dots >= ndots) {
+            names.add(name);
+        }
+        for (final String domain : search) {
+            names.add(name + "." + domain);
+        }
+        if (dots < ndots) {
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * The static addresses of name, or null.
+     */
+    public List<String> host(final String name) {
+        return hosts.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public List<InetSocketAddress> servers() {
+        return servers;
+    }
+
+    public List<String> search() {
+        return search;
+    }
+
+    public int ndots() {
+        return ndots;
+    }
+
+    public int timeout() {
+        return timeout;
+    }
+
+    public int attempts() {
+        return attempts;
+    }
+
+    public boolean rotate() {
+        return rotate;
+    }
+}
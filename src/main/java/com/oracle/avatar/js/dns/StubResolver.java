@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.oracle.avatar.js.dns;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.Event;
+import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.log.Logger;
+import com.oracle.avatar.js.log.Logging;
+import com.oracle.libuv.Address;
+import com.oracle.libuv.cb.TimerCallback;
+import com.oracle.libuv.cb.UDPRecvCallback;
+import com.oracle.libuv.cb.UDPSendCallback;
+import com.oracle.libuv.handles.TimerHandle;
+import com.oracle.libuv.handles.UDPHandle;
+
+/**
+ * A DNS stub resolver sending its queries to the name servers of
+ * resolv.conf over UDP handles of the loop, no thread is involved.
+ * Static hosts answer A and AAAA queries first. A query is retransmitted to
+ * the next server after the resolv.conf timeout, up to attempts times per
+ * server, and tried with the search domains until one has an answer.
+ * Truncated answers are used as is, there is no TCP fallback.
+ * Against spoofed answers, each transmission of a query has its own UDP
+ * handle, so its own source port, and a query id from a SecureRandom.
+ * Used from the loop thread only. Completion calls back with the error, the
+ * answer and the smallest TTL of the records, in seconds.
+ */
+public final class StubResolver {
+
+    private static final int TICK = 100;
+
+    private final EventLoop eventLoop;
+    private final ResolverConfig config;
+    private final Logger LOG;
+    private final Map<Integer, Query> pending = new HashMap<>();
+    // NativePRNG where available, seeded from /dev/urandom without blocking
+    private final SecureRandom random = new SecureRandom();
+    private TimerHandle timer;
+    private boolean ticking;
+    private int nextServer;
+
+    private final class Query {
+        private final int type;
+        private final List<String> names;
+        private final Callback done;
+        private final EventLoop.Handle handle;
+        private int nameIndex;
+        private int server;
+        private int sends;
+        private int id;
+        private long deadline;
+        private InetSocketAddress sentTo;
+        private UDPHandle udp;
+        private ByteBuffer message;
+        private boolean nodata;
+
+        private Query(final int type, final List<String> names, final Callback done) {
+            this.type = type;
+            this.names = names;
+            this.done = done;
+            this.handle = eventLoop.acquire();
+        }
+
+        private String name() {
+            return names.get(nameIndex);
+        }
+    }
+
+    public StubResolver(final EventLoop eventLoop, final ResolverConfig config) {
+        this.eventLoop = eventLoop;
+        this.config = config;
+        this.LOG = eventLoop.logger("dns");
+    }
+
+    public ResolverConfig config() {
+        return config;
+    }
+
+    public void query(final String name, final int type, final Callback done) {
+        if (type == DNSMessage.TYPE_A || type == DNSMessage.TYPE_AAAA) {
+            final List<String> hosts = config.host(name);
+            if (hosts != null) {
+                final List<String> addresses = new ArrayList<>(hosts.size());
+                for (final String address : hosts) {
+                    if ((address.indexOf(':') >= 0) == (type == DNSMessage.TYPE_AAAA)) {
+                        addresses.add(address);
+                    }
+                }
+                if (!addresses.isEmpty()) {
+                    eventLoop.post(new Event("dns.hosts", done, null,
+                            addresses.toArray(new String[addresses.size()]), 0L));
+                    return;
+                }
+            }
+        }
+        final Query query = new Query(type, config.candidates(name), done);
+        query.server = config.rotate() ? nextServer++ : 0;
+        send(query);
+    }
+
+    private void send(final Query query) {
+        final List<InetSocketAddress> servers = config.servers();
+        final InetSocketAddress server = servers.get(Math.abs(query.server % servers.size()));
+        do {
+            query.id = random.nextInt(0x10000);
+        } while (pending.containsKey(query.id));
+        try {
+            query.message = DNSMessage.query(query.id, query.name(), query.type);
+        } catch (final IllegalArgumentException e) {
+            complete(query, new DNSException("EBADNAME", query.name()), null, 0);
+            return;
+        }
+        query.sentTo = server;
+        query.sends++;
+        query.deadline = System.currentTimeMillis() + config.timeout();
+        if (Logging.LOGGABLE && LOG.enabled()) {
+            LOG.log("query %s type %s to %s", query.name(), query.type, server);
+        }
+        closeUdp(query);
+        try {
+            final boolean v6 = server.getHostString().indexOf(':') >= 0;
+            query.udp = udp(v6, query);
+            if (v6) {
+                query.udp.send6(query.message, 0, query.message.remaining(), server.getPort(), server.getHostString());
+            } else {
+                query.udp.send(query.message, 0, query.message.remaining(), server.getPort(), server.getHostString());
+            }
+        } catch (final RuntimeException e) {
+            if (LOG.enabled()) {
+                LOG.log("query %s not sent to %s: %s", query.name(), server, e);
+            }
+            retry(query, new DNSException("ECONNREFUSED", query.name()));
+            return;
+        }
+        pending.put(query.id, query);
+        startTimer();
+    }
+
+    // A handle per transmission, bound to a port of the system's choosing.
+    private UDPHandle udp(final boolean v6, final Query query) {
+        final UDPHandle udp = AccessController.doPrivileged(new PrivilegedAction<UDPHandle>() {
+            @Override
+            public UDPHandle run() {
+                return eventLoop.handleFactory().newUDPHandle();
+            }
+        });
+        try {
+            if (v6) {
+                udp.bind6(0, "::");
+            } else {
+                udp.bind(0, "0.0.0.0");
+            }
+            udp.setRecvCallback(new UDPRecvCallback() {
+                @Override
+                public void onRecv(final int nread, final ByteBuffer data, final Address address) throws Exception {
+                    if (nread > 0 && data != null) {
+                        final ByteBuffer message = data.duplicate();
+                        message.clear();
+                        message.limit(Math.min(nread, message.capacity()));
+                        received(query, udp, message, address);
+                    }
+                }
+            });
+            udp.setSendCallback(new UDPSendCallback() {
+                @Override
+                public void onSend(final int status, final Exception error) throws Exception {
+                    // A lost query is retransmitted on timeout.
+                }
+            });
+            udp.recvStart();
+            udp.unref();
+        } catch (final RuntimeException e) {
+            udp.close();
+            throw e;
+        }
+        return udp;
+    }
+
+    private static void closeUdp(final Query query) {
+        if (query.udp != null) {
+            query.udp.close();
+            query.udp = null;
+        }
+    }
+
+    private void startTimer() {
+        if (timer == null) {
+            timer = AccessController.doPrivileged(new PrivilegedAction<TimerHandle>() {
+                @Override
+                public TimerHandle run() {
+                    return eventLoop.handleFactory().newTimerHandle();
+                }
+            });
+            timer.setTimerFiredCallback(new TimerCallback() {
+                @Override
+                public void onTimer(final int status) throws Exception {
+                    expire();
+                }
+            });
+            timer.unref();
+        }
+        if (!ticking) {
+            timer.start(TICK, TICK);
+            ticking = true;
+        }
+    }
+
+    private void expire() {
+        final long now = System.currentTimeMillis();
+        final List<Query> expired = new ArrayList<>();
+        for (final Query query : pending.values()) {
+            if (query.deadline - now <= 0) {
+                expired.add(query);
+            }
+        }
+        for (final Query query : expired) {
+            pending.remove(query.id);
+            retry(query, new DNSException("ETIMEOUT", query.name()));
+        }
+        if (pending.isEmpty() && ticking) {
+            timer.stop();
+            ticking = false;
+        }
+    }
+
+    // The same name to the next server, within attempts rounds of the servers.
+    // The search domains are only tried for names that do not exist.
+    private void retry(final Query query, final DNSException error) {
+        if (query.sends < config.attempts() * config.servers().size()) {
+            query.server++;
+            send(query);
+        } else {
+            complete(query, error, null, 0);
+        }
+    }
+
+    private void nextName(final Query query, final DNSException error) {
+        // As c-ares, a name without the type is reported over missing names.
+        query.nodata |= "ENODATA".equals(error.getCode());
+        if (query.nameIndex + 1 < query.names.size()) {
+            query.nameIndex++;
+            query.sends = 0;
+            send(query);
+        } else {
+            complete(query, query.nodata ? new DNSException("ENODATA", query.names.get(0)) : error, null, 0);
+        }
+    }
+
+    private void received(final Query query, final UDPHandle udp, final ByteBuffer data, final Address address) {
+        // A late answer to an earlier transmission.
+        if (query.udp != udp) {
+            return;
+        }
+        final DNSMessage message;
+        try {
+            message = DNSMessage.parse(data);
+        } catch (final IllegalArgumentException e) {
+            if (LOG.enabled()) {
+                LOG.log("invalid response from %s: %s", address, e.getMessage());
+            }
+            return;
+        }
+        // Only the server queried can answer, for the name asked.
+        if (pending.get(message.id()) != query || !message.isResponse() ||
+                !sameAddress(query.sentTo, address) ||
+                !query.name().equalsIgnoreCase(message.question()) ||
+                query.type != message.questionType()) {
+            return;
+        }
+        pending.remove(query.id);
+        switch (message.rcode()) {
+            case DNSMessage.RCODE_OK: {
+                final List<DNSMessage.Record> answers = message.answers(query.type);
+                if (answers.isEmpty()) {
+                    nextName(query, new DNSException("ENODATA", query.name()));
+                    return;
+                }
+                final Object[] values = new Object[answers.size()];
+                long ttl = Long.MAX_VALUE;
+                for (int i = 0; i < values.length; i++) {
+                    final DNSMessage.Record record = answers.get(i);
+                    values[i] = record.data;
+                    ttl = Math.min(ttl, record.ttl);
+                }
+                complete(query, null, values, ttl);
+                break;
+            }
+            case DNSMessage.RCODE_NXDOMAIN:
+                nextName(query, new DNSException("ENOTFOUND", query.name()));
+                break;
+            case DNSMessage.RCODE_FORMERR:
+                nextName(query, new DNSException("EFORMERR", query.name()));
+                break;
+            case DNSMessage.RCODE_REFUSED:
+                retry(query, new DNSException("EREFUSED", query.name()));
+                break;
+            case DNSMessage.RCODE_NOTIMP:
+                retry(query, new DNSException("ENOTIMP", query.name()));
+                break;
+            default:
+                retry(query, new DNSException("ESERVFAIL", query.name()));
+                break;
+        }
+    }
+
+    private static boolean sameAddress(final InetSocketAddress server, final Address address) {
+        if (address == null || server.getPort() != address.getPort()) {
+            return false;
+        }
+        try {
+            // Literal addresses, no lookup involved.
+            return InetAddress.getByName(server.getHostString()).equals(InetAddress.getByName(address.getIp()));
+        } catch (final UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private void complete(final Query query, final DNSException error, final Object[] answer, final long ttl) {
+        try {
+            eventLoop.post(new Event(error == null ? "dns.answer" : "dns.answer.error", query.done, error, answer, ttl));
+        } finally {
+            query.message = null;
+            closeUdp(query);
+            query.handle.close();
+        }
+        if (pending.isEmpty() && ticking) {
+            timer.stop();
+            ticking = false;
+        }
+    }
+
+    /**
+     * Fails the pending queries and closes the handles.
+     */
+    public void close() {
+        for (final Query query : new ArrayList<>(pending.values())) {
+            complete(query, new DNSException("ECANCELLED", query.name()), null, 0);
+        }
+        pending.clear();
+        if (timer != null) {
+            timer.close();
+            timer = null;
+            ticking = false;
+        }
+    }
+}
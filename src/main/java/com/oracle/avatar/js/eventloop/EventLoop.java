@@ -46,7 +46,9 @@ import com.oracle.avatar.js.dns.DNS;
 import com.oracle.avatar.js.log.Logger;
 import com.oracle.avatar.js.log.Logging;
 import com.oracle.avatar.js.metrics.spi.DurationEvent;
+import com.oracle.avatar.js.metrics.ConnectionMetrics;
 import com.oracle.avatar.js.metrics.MetricsService;
+import com.oracle.avatar.js.net.ConnectionPool;
 import com.oracle.libuv.LibUV;
 import com.oracle.libuv.cb.AsyncCallback;
 import com.oracle.libuv.cb.CallbackExceptionHandler;
@@ -71,6 +73,9 @@ public final class EventLoop {
     private final String uvVersion;
     private final Logging logging;
     private final DNS dns;
+    private final ConnectionMetrics connectionMetrics = new ConnectionMetrics(MetricsService.instance());
+    private final WriteLimits writeLimits = new WriteLimits();
+    private final ConnectionPool connectionPool;
     private final LoopHandle uvLoop;
     private final int instanceNumber;
     private final ThreadPool executor;
@@ -253,10 +258,12 @@ public final class EventLoop {
             if (!executor.isShared()) {
                 executor.shutdownNow();
             }
+            dns.close();
             checkHandle.close();
             refHandle.close();
             unrefHandle.close();
             uvLoop.stop();
+            connectionMetrics.unregister();
         }
     }
 
@@ -426,6 +433,7 @@ public final class EventLoop {
         this.uvVersion = Objects.requireNonNull(uvVersion);
         this.logging = Objects.requireNonNull(logging);
         this.dns = new DNS(this);
+        this.connectionPool = new ConnectionPool(this, connectionMetrics);
 
         final LoopCallbackHandler defaultHandler = new LoopCallbackHandler(this);
 
@@ -489,6 +497,7 @@ public final class EventLoop {
         });
         checkHandle.start();
         checkHandle.unref();
+        connectionMetrics.register(instanceNumber);
 
         refHandle = this.handleFactory.newAsyncHandle();
         refHandle.setAsyncCallback(new AsyncCallback() {
@@ -545,6 +554,18 @@ public final class EventLoop {
         return dns;
     }
 
+    public ConnectionMetrics connectionMetrics() {
+        return connectionMetrics;
+    }
+
+    public WriteLimits writeLimits() {
+        return writeLimits;
+    }
+
+    public ConnectionPool connectionPool() {
+        return connectionPool;
+    }
+
     public String getWorkDir() {
         return LibUV.cwd();
     }
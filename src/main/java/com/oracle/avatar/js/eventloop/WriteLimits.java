@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+/**
+ * Caps on the bytes queued for writing by the TCP and pipe handles of a loop, enforced
+ * by tcp_wrap and pipe_wrap, 0 means no cap. When a cap is exceeded the offending handle
+ * stops reading until its queue drains, or is destroyed with ENOBUFS if the policy is close.
+ * -Davatar-js.socket.write.limit=bytes, -Davatar-js.loop.write.limit=bytes,
+ * -Davatar-js.write.limit.policy=pause|close
+ */
+public final class WriteLimits {
+
+    private final long socketLimit;
+    private final long loopLimit;
+    private final boolean closeOnLimit;
+
+    public WriteLimits() {
+        this(Long.getLong("avatar-js.socket.write.limit", 0),
+             Long.getLong("avatar-js.loop.write.limit", 0),
+             "close".equals(System.getProperty("avatar-js.write.limit.policy", "pause")));
+    }
+
+    public WriteLimits(final long socketLimit, final long loopLimit, final boolean closeOnLimit) {
+        this.socketLimit = socketLimit;
+        this.loopLimit = loopLimit;
+        this.closeOnLimit = closeOnLimit;
+    }
+
+    public long socketLimit() {
+        return socketLimit;
+    }
+
+    public long loopLimit() {
+        return loopLimit;
+    }
+
+    public boolean closeOnLimit() {
+        return closeOnLimit;
+    }
+}
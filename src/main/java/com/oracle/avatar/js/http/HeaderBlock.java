@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Builds the status line and headers of an HTTP response, encoded as UTF-8
+ * in a single pass, the encoding the http module writes its header string
+ * with. The Date header is formatted at most once per second.
+ * Encoding a head costs about as much as encoding the same string, the gain
+ * comes from reusing it: callers that send the same head again, such as
+ * {@link HttpRouter}, keep the encoded block and rebuild it when
+ * {@link #dateSecond()} changes.
+ */
+public final class HeaderBlock {
+
+    private static final String CRLF = "\r\n";
+
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private static final class DateLine {
+        private final long second;
+        private final String line;
+
+        DateLine(final long second) {
+            this.second = second;
+            this.line = "Date: " + DATE_FORMAT.format(Instant.ofEpochSecond(second)) + CRLF;
+        }
+    }
+
+    private static volatile DateLine dateLine = new DateLine(System.currentTimeMillis() / 1000);
+
+    private final StringBuilder head = new StringBuilder(256);
+
+    /**
+     * Encodes a complete header block.
+     * @param status The status code
+     * @param reason The reason phrase
+     * @param headers Header names at even indexes and values at odd indexes
+     * @param date true to add a Date header
+     * @return The header block, including the terminating empty line, in a
+     * heap buffer
+     */
+    public static ByteBuffer encode(final int status, final String reason, final String[] headers, final boolean date) {
+        final HeaderBlock block = new HeaderBlock().status(status, reason);
+        if (headers != null) {
+            for (int i = 0; i + 1 < headers.length; i += 2) {
+                block.header(headers[i], headers[i + 1]);
+            }
+        }
+        if (date) {
+            block.date();
+        }
+        block.head.append(CRLF);
+        return ByteBuffer.wrap(block.toByteArray());
+    }
+
+    /**
+     * The current second, as used by the Date header. Callers caching
+     * content that includes {@link #date()} can compare it to decide when to
+     * rebuild.
+     * @return Seconds since the epoch
+     */
+    public static long dateSecond() {
+        return currentDateLine().second;
+    }
+
+    public HeaderBlock status(final int status, final String reason) {
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason).append(CRLF);
+        return this;
+    }
+
+    public HeaderBlock header(final String name, final String value) {
+        head.append(name).append(": ").append(value).append(CRLF);
+        return this;
+    }
+
+    public HeaderBlock date() {
+        head.append(currentDateLine().line);
+        return this;
+    }
+
+    /**
+     * @return The block without the terminating empty line, for callers that
+     * append more headers or the body themselves
+     */
+    public byte[] toByteArray() {
+        return head.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static DateLine currentDateLine() {
+        final long now = System.currentTimeMillis() / 1000;
+        DateLine line = dateLine;
+        if (line.second != now) {
+            // Racing threads build identical lines, any of them can win
+            line = new DateLine(now);
+            dateLine = line;
+        }
+        return line;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+/**
+ * Canonical instances of well-known header names.
+ * The http module lower cases every header name it receives, replacing known
+ * names by their lower case constant makes that a no-op and lets all requests
+ * share the same name instances. The lookup does not allocate.
+ */
+public final class HeaderNames {
+
+    private static final String[] KNOWN = {
+        "accept",
+        "accept-charset",
+        "accept-encoding",
+        "accept-language",
+        "accept-ranges",
+        "access-control-allow-origin",
+        "age",
+        "allow",
+        "authorization",
+        "cache-control",
+        "connection",
+        "content-disposition",
+        "content-encoding",
+        "content-language",
+        "content-length",
+        "content-location",
+        "content-md5",
+        "content-range",
+        "content-type",
+        "cookie",
+        "date",
+        "dnt",
+        "etag",
+        "expect",
+        "expires",
+        "from",
+        "host",
+        "if-match",
+        "if-modified-since",
+        "if-none-match",
+        "if-range",
+        "if-unmodified-since",
+        "keep-alive",
+        "last-modified",
+        "location",
+        "max-forwards",
+        "origin",
+        "pragma",
+        "proxy-authenticate",
+        "proxy-authorization",
+        "range",
+        "referer",
+        "retry-after",
+        "server",
+        "set-cookie",
+        "te",
+        "trailer",
+        "transfer-encoding",
+        "upgrade",
+        "user-agent",
+        "vary",
+        "via",
+        "warning",
+        "www-authenticate",
+        "x-forwarded-for",
+        "x-forwarded-host",
+        "x-forwarded-proto",
+        "x-powered-by",
+        "x-requested-with"
+    };
+
+    private static final int MASK = 255;
+    private static final String[] TABLE = new String[MASK + 1];
+
+    static {
+        for (String name : KNOWN) {
+            int i = hash(name) & MASK;
+            while (TABLE[i] != null) {
+                i = (i + 1) & MASK;
+            }
+            TABLE[i] = name;
+        }
+    }
+
+    private HeaderNames() {
+    }
+
+    /**
+     * Returns the canonical lower case instance of a well-known header name.
+     * @param name The header name, in any case
+     * @return The canonical name, or name itself if it is not well-known
+     */
+    public static String canonical(final String name) {
+        if (name == null) {
+            return null;
+        }
+        int i = hash(name) & MASK;
+        String candidate;
+        while ((candidate = TABLE[i]) != null) {
+            if (equalsIgnoreAsciiCase(candidate, name)) {
+                return candidate;
+            }
+            i = (i + 1) & MASK;
+        }
+        return name;
+    }
+
+    /**
+     * Canonicalizes, in place, the names of a name/value header array as
+     * delivered by the parser.
+     * @param headers Header names at even indexes and values at odd indexes
+     * @return headers
+     */
+    public static String[] canonicalize(final String[] headers) {
+        if (headers != null) {
+            for (int i = 0; i < headers.length; i += 2) {
+                headers[i] = canonical(headers[i]);
+            }
+        }
+        return headers;
+    }
+
+    // candidate is lower case
+    private static boolean equalsIgnoreAsciiCase(final String candidate, final String name) {
+        final int length = candidate.length();
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = name.charAt(i);
+            final char k = candidate.charAt(i);
+            if (c != k && !(c >= 'A' && c <= 'Z' && c + ('a' - 'A') == k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Case insensitive for ASCII letters, header names are tokens
+    private static int hash(final String s) {
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = 31 * h + (s.charAt(i) | 0x20);
+        }
+        return h ^ (h >>> 16);
+    }
+}
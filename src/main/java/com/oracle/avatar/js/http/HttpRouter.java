@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.oracle.avatar.js.buffer.Buffer;
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.libuv.cb.StreamReadCallback;
+import com.oracle.libuv.cb.StreamShutdownCallback;
+import com.oracle.libuv.cb.StreamWriteCallback;
+import com.oracle.libuv.cb.TimerCallback;
+import com.oracle.libuv.handles.TCPHandle;
+import com.oracle.libuv.handles.TimerHandle;
+
+/**
+ * Answers GET and HEAD requests for static routes directly on the event loop
+ * thread, without calling into script. Responses are encoded in advance and
+ * only rebuilt when their Date header changes.
+ * A connection stays in Java as long as its requests match a route. The first
+ * request that does not match (other path or method, request body, upgrade,
+ * oversized head) hands the connection and all unconsumed bytes over to the
+ * script read callback, and the router steps aside for the rest of the
+ * connection's life.
+ * A routed connection without reads or writes for the idle timeout, 2 minutes
+ * by default as for the http server, is closed.
+ * Routers are confined to the event loop thread.
+ */
+public final class HttpRouter {
+
+    /**
+     * A connection answered by the router, until it is forwarded or closed.
+     */
+    public interface Connection {
+        /**
+         * Closes the connection once the responses being written are sent.
+         */
+        void close();
+    }
+
+    private static final int MAX_HEAD_SIZE = 8 * 1024;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final EventLoop eventLoop;
+    private final Map<String, Route> routes = new HashMap<>();
+    private final Set<RoutedConnection> connections = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long idleTimeout = 2 * 60 * 1000;
+    private TimerHandle timer;
+    private boolean ticking;
+    private long requestsServed;
+    private long connectionsForwarded;
+
+    public HttpRouter(final EventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Adds or replaces a route answered with a fixed response.
+     * @param path The request path, the query string is ignored when matching
+     * @param status The status code
+     * @param reason The reason phrase
+     * @param contentType The content type, or null
+     * @param body The response body
+     */
+    public void addStatic(final String path, final int status, final String reason,
+                          final String contentType, final Buffer body) {
+        routes.put(path, new Route(status, reason, contentType, body.array()));
+    }
+
+    /**
+     * Adds or replaces a route answered with the content of a file. The file
+     * is read once, call again to refresh it.
+     * @param path The request path
+     * @param file The file to serve
+     * @param contentType The content type, or null
+     * @throws IOException If the file cannot be read
+     */
+    public void addFile(final String path, final String file, final String contentType) throws IOException {
+        routes.put(path, new Route(200, "OK", contentType, Files.readAllBytes(Paths.get(file))));
+    }
+
+    public boolean removeRoute(final String path) {
+        return routes.remove(path) != null;
+    }
+
+    public long requestsServed() {
+        return requestsServed;
+    }
+
+    public long connectionsForwarded() {
+        return connectionsForwarded;
+    }
+
+    /**
+     * @param millis The idle time after which a routed connection is closed, 0 for none
+     */
+    public void setIdleTimeout(final long millis) {
+        idleTimeout = millis;
+        if (ticking) {
+            timer.stop();
+            ticking = false;
+        }
+        startTimer();
+    }
+
+    /**
+     * Routes the requests of an accepted connection.
+     * @param peer The connection
+     * @param readCallback The script read callback, called once the connection is forwarded
+     * @param writeCallback The script write callback, only called for script writes
+     * @param forward Called once, before the first bytes are handed to readCallback
+     * @return The routed connection, to close it while it is routed
+     */
+    public Connection attach(final TCPHandle peer,
+                             final StreamReadCallback readCallback,
+                             final StreamWriteCallback writeCallback,
+                             final Callback forward) {
+        final RoutedConnection connection = new RoutedConnection(peer, readCallback, writeCallback, forward);
+        peer.setReadCallback(connection);
+        peer.setWriteCallback(connection);
+        connections.add(connection);
+        startTimer();
+        return connection;
+    }
+
+    private void expire() {
+        final long idleSince = System.currentTimeMillis() - idleTimeout;
+        final RoutedConnection[] routed = connections.toArray(new RoutedConnection[connections.size()]);
+        for (final RoutedConnection connection : routed) {
+            if (connection.lastActive <= idleSince) {
+                connection.close();
+            }
+        }
+        if (connections.isEmpty() && ticking) {
+            timer.stop();
+            ticking = false;
+        }
+    }
+
+    // Routed connections are swept every half idle timeout, while there are any.
+    private void startTimer() {
+        if (ticking || idleTimeout <= 0 || connections.isEmpty()) {
+            return;
+        }
+        if (timer == null) {
+            timer = AccessController.doPrivileged(new PrivilegedAction<TimerHandle>() {
+                @Override
+                public TimerHandle run() {
+                    return eventLoop.handleFactory().newTimerHandle();
+                }
+            });
+            timer.setTimerFiredCallback(new TimerCallback() {
+                @Override
+                public void onTimer(final int status) throws Exception {
+                    expire();
+                }
+            });
+            timer.unref();
+        }
+        final long tick = Math.max(10, idleTimeout / 2);
+        timer.start(tick, tick);
+        ticking = true;
+    }
+
+    // Responses are rebuilt when the second of their Date header changes
+    private static final class Route {
+
+        private final int status;
+        private final String reason;
+        private final String contentType;
+        private final byte[] body;
+        private long second = -1;
+        private ByteBuffer keepAlive;
+        private ByteBuffer close;
+        private ByteBuffer keepAliveHead;
+        private ByteBuffer closeHead;
+
+        Route(final int status, final String reason, final String contentType, final byte[] body) {
+            this.status = status;
+            this.reason = reason;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        private ByteBuffer encode(final String connection, final boolean withBody) {
+            final HeaderBlock block = new HeaderBlock().status(status, reason);
+            if (contentType != null) {
+                block.header("Content-Type", contentType);
+            }
+            final byte[] head = block.header("Content-Length", Integer.toString(body.length))
+                    .header("Connection", connection)
+                    .date()
+                    .toByteArray();
+            final ByteBuffer b = ByteBuffer.allocateDirect(head.length + CRLF.length + (withBody ? body.length : 0));
+            b.put(head).put(CRLF);
+            if (withBody) {
+                b.put(body);
+            }
+            b.flip();
+            return b.asReadOnlyBuffer();
+        }
+
+        ByteBuffer response(final boolean head, final boolean keepAlive) {
+            final long now = HeaderBlock.dateSecond();
+            if (now != second) {
+                this.keepAlive = encode("keep-alive", true);
+                close = encode("close", true);
+                keepAliveHead = encode("keep-alive", false);
+                closeHead = encode("close", false);
+                second = now;
+            }
+            final ByteBuffer b = head ? (keepAlive ? keepAliveHead : closeHead) : (keepAlive ? this.keepAlive : close);
+            return b.duplicate();
+        }
+    }
+
+    private final class RoutedConnection implements Connection, StreamReadCallback, StreamWriteCallback, StreamShutdownCallback {
+
+        private final TCPHandle peer;
+        private final StreamReadCallback readCallback;
+        private final StreamWriteCallback writeCallback;
+        private final Callback forward;
+
+        private boolean forwarded;
+        private boolean closing;
+        private long lastActive = System.currentTimeMillis();
+        // Router responses not yet completed, their write callbacks are not for script
+        private int pendingWrites;
+        // Bytes of an incomplete request head
+        private ByteBuffer pending;
+
+        // Parsed request
+        private boolean head;
+        private boolean keepAlive;
+        private boolean routable;
+        private Route route;
+
+        RoutedConnection(final TCPHandle peer,
+                         final StreamReadCallback readCallback,
+                         final StreamWriteCallback writeCallback,
+                         final Callback forward) {
+            this.peer = peer;
+            this.readCallback = readCallback;
+            this.writeCallback = writeCallback;
+            this.forward = forward;
+        }
+
+        @Override
+        public void onRead(final ByteBuffer data) throws Exception {
+            if (forwarded) {
+                readCallback.onRead(data);
+                return;
+            }
+            if (closing) {
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            if (data == null) {
+                if (pending != null && pending.position() > 0) {
+                    pending.flip();
+                    forward(pending);
+                    readCallback.onRead(null);
+                } else {
+                    close();
+                }
+                return;
+            }
+
+            ByteBuffer in = data;
+            if (pending != null && pending.position() > 0) {
+                append(data);
+                pending.flip();
+                in = pending;
+            }
+
+            while (in.hasRemaining()) {
+                final int end = headEnd(in);
+                if (end < 0) {
+                    if (in.remaining() > MAX_HEAD_SIZE) {
+                        forward(in);
+                    } else if (in != pending) {
+                        append(in);
+                    } else {
+                        pending.compact();
+                    }
+                    return;
+                }
+                parse(in, end);
+                if (!routable || route == null) {
+                    forward(in);
+                    return;
+                }
+                in.position(end);
+                requestsServed++;
+                pendingWrites++;
+                peer.write(route.response(head, keepAlive));
+                if (!keepAlive) {
+                    // Anything pipelined after a non keep-alive request is dropped
+                    close();
+                    return;
+                }
+            }
+            if (in == pending) {
+                pending.clear();
+            }
+        }
+
+        @Override
+        public void onWrite(final int status, final Exception error) throws Exception {
+            if (pendingWrites > 0) {
+                pendingWrites--;
+                lastActive = System.currentTimeMillis();
+                if (status < 0 && !forwarded) {
+                    close();
+                }
+            } else {
+                writeCallback.onWrite(status, error);
+            }
+        }
+
+        @Override
+        public void onShutdown(final int status, final Exception error) {
+            peer.close();
+        }
+
+        private void forward(final ByteBuffer remaining) throws Exception {
+            forwarded = true;
+            connectionsForwarded++;
+            connections.remove(this);
+            final ByteBuffer bytes = ByteBuffer.allocateDirect(remaining.remaining());
+            bytes.put(remaining).flip();
+            pending = null;
+            forward.call("http.forward", null);
+            if (bytes.hasRemaining()) {
+                readCallback.onRead(bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closing || forwarded) {
+                return;
+            }
+            closing = true;
+            connections.remove(this);
+            pending = null;
+            peer.readStop();
+            if (pendingWrites > 0) {
+                // Let queued responses go out first
+                peer.setShutdownCallback(this);
+                peer.closeWrite();
+            } else {
+                peer.close();
+            }
+        }
+
+        private void append(final ByteBuffer data) {
+            if (pending == null) {
+                pending = ByteBuffer.allocate(Math.max(1024, data.remaining()));
+            } else if (pending.remaining() < data.remaining()) {
+                final ByteBuffer grown = ByteBuffer.allocate(pending.position() + data.remaining());
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            pending.put(data);
+        }
+
+        // Index following the empty line that ends the request head, -1 if incomplete
+        private int headEnd(final ByteBuffer b) {
+            final int limit = b.limit();
+            for (int i = b.position() + 3; i < limit; i++) {
+                if (b.get(i) == '\n' && b.get(i - 1) == '\r' && b.get(i - 2) == '\n' && b.get(i - 3) == '\r') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private void parse(final ByteBuffer b, final int end) {
+            routable = false;
+            route = null;
+            int i = b.position();
+
+            // Request line
+            final boolean get = matches(b, i, "GET ");
+            head = !get && matches(b, i, "HEAD ");
+            if (!get && !head) {
+                return;
+            }
+            i += get ? 4 : 5;
+            final int pathStart = i;
+            int pathEnd = -1;
+            while (b.get(i) != ' ' && b.get(i) != '\r') {
+                if (b.get(i) == '?' && pathEnd < 0) {
+                    pathEnd = i;
+                }
+                i++;
+            }
+            if (pathEnd < 0) {
+                pathEnd = i;
+            }
+            if (b.get(i) != ' ') {
+                return;
+            }
+            i++;
+            if (matches(b, i, "HTTP/1.1\r\n")) {
+                keepAlive = true;
+            } else if (matches(b, i, "HTTP/1.0\r\n")) {
+                keepAlive = false;
+            } else {
+                return;
+            }
+            i += 10;
+
+            // Headers
+            while (i < end - 2) {
+                final int lineEnd = lineEnd(b, i);
+                if (matchesIgnoreCase(b, i, "connection:")) {
+                    if (containsIgnoreCase(b, i + 11, lineEnd, "close")) {
+                        keepAlive = false;
+                    } else if (containsIgnoreCase(b, i + 11, lineEnd, "keep-alive")) {
+                        keepAlive = true;
+                    }
+                } else if (matchesIgnoreCase(b, i, "content-length:")) {
+                    for (int j = i + 15; j < lineEnd; j++) {
+                        final byte c = b.get(j);
+                        if (c >= '1' && c <= '9') {
+                            return;
+                        }
+                    }
+                } else if (matchesIgnoreCase(b, i, "transfer-encoding:")
+                        || matchesIgnoreCase(b, i, "upgrade:")
+                        || matchesIgnoreCase(b, i, "expect:")) {
+                    return;
+                }
+                i = lineEnd + 2;
+            }
+
+            final byte[] path = new byte[pathEnd - pathStart];
+            for (int j = 0; j < path.length; j++) {
+                path[j] = b.get(pathStart + j);
+            }
+            route = routes.get(new String(path, StandardCharsets.ISO_8859_1));
+            routable = true;
+        }
+
+        private int lineEnd(final ByteBuffer b, int i) {
+            while (b.get(i) != '\r') {
+                i++;
+            }
+            return i;
+        }
+
+        private boolean matches(final ByteBuffer b, final int i, final String s) {
+            if (i + s.length() > b.limit()) {
+                return false;
+            }
+            for (int j = 0; j < s.length(); j++) {
+                if (b.get(i + j) != s.charAt(j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matchesIgnoreCase(final ByteBuffer b, final int i, final String lower) {
+            if (i + lower.length() > b.limit()) {
+                return false;
+            }
+            for (int j = 0; j < lower.length(); j++) {
+                final int c = b.get(i + j);
+                if (c != lower.charAt(j) && !(c >= 'A' && c <= 'Z' && c + ('a' - 'A') == lower.charAt(j))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean containsIgnoreCase(final ByteBuffer b, final int from, final int to, final String lower) {
+            for (int i = from; i + lower.length() <= to; i++) {
+                if (matchesIgnoreCase(b, i, lower)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -78,12 +78,12 @@ public final class ParserSettings extends HttpParserSettings {
                                  int httpVersionMinor,
                                  boolean shouldKeepAlive,
                                  boolean upgrade) {
-        return onHeadersComplete.call(url, headers, method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade);
+        return onHeadersComplete.call(url, HeaderNames.canonicalize(headers), method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade);
     }
     @Override
     public int onHeaders(String url,
                          String[] headers) {
-        return onHeaders.call(url, headers);
+        return onHeaders.call(url, HeaderNames.canonicalize(headers));
     }
 
     @Override
@@ -26,7 +26,15 @@
 package com.oracle.avatar.js.log;
 
 import java.io.Closeable;
+import java.util.function.Supplier;
 
+/**
+ * The variants below check {@link #enabled()} before building their message,
+ * so that a disabled logger costs neither a string concatenation nor a
+ * varargs array. Paths that run per record or per chunk should still guard
+ * with {@code if (Logging.LOGGABLE && LOG.enabled())}, which folds away when
+ * logging is switched off for the whole process.
+ */
 public interface Logger extends Closeable {
 
     void log(final Throwable throwable);
@@ -36,4 +44,27 @@ public interface Logger extends Closeable {
     boolean disable();
     boolean enabled();
 
+    default void log(final Supplier<String> message) {
+        if (enabled()) {
+            log(message.get());
+        }
+    }
+
+    default void log(final String format, final Object arg) {
+        if (enabled()) {
+            log(String.format(format, arg));
+        }
+    }
+
+    default void log(final String format, final Object arg1, final Object arg2) {
+        if (enabled()) {
+            log(String.format(format, arg1, arg2));
+        }
+    }
+
+    default void log(final String format, final Object arg1, final Object arg2, final Object arg3) {
+        if (enabled()) {
+            log(String.format(format, arg1, arg2, arg3));
+        }
+    }
 }
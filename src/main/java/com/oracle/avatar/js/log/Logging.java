@@ -32,6 +32,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public final class Logging {
 
+    /**
+     * False when the avatar-js.log.disabled property is set. No logger can then
+     * be enabled and the guards testing this constant are removed by the JIT.
+     */
+    public static final boolean LOGGABLE = !Boolean.getBoolean("avatar-js.log.disabled");
+
     // each logger instance within a category is given a unique id
     private final ConcurrentHashMap<String, AtomicInteger> NEXT_ID = new ConcurrentHashMap<>();
 
@@ -98,13 +104,13 @@ public final class Logging {
                     ", falling back to " + this.logDirectory);
             }
         }
-        this.enabled = enabled;
-        this.defaultLogger = enabled ? create("avatar-js") : NULL_LOGGER;
+        this.enabled = LOGGABLE && enabled;
+        this.defaultLogger = this.enabled ? create("avatar-js") : NULL_LOGGER;
     }
 
     public boolean setEnabled(final boolean enabled) {
         final boolean was = this.enabled;
-        this.enabled = enabled;
+        this.enabled = LOGGABLE && enabled;
         return was;
     }
 
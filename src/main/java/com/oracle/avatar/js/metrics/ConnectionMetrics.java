@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.oracle.avatar.js.metrics.spi.Counter;
+import com.oracle.avatar.js.metrics.spi.MetricsFactory;
+
+/**
+ * Accounting of the TCP and pipe handles of one event loop: open handles, accepted
+ * connections and their lifetimes, bytes read and written, bytes queued for writing,
+ * the handles paused or closed for exceeding their WriteLimits and the checkouts and
+ * evictions of the ConnectionPool.
+ * Updated by tcp_wrap and pipe_wrap from the loop thread, read through JMX as
+ * com.oracle.avatar.js:type=Connections,loop=n or by script.
+ */
+public final class ConnectionMetrics implements ConnectionMetricsMXBean {
+
+    private static final String DOMAIN = "com.oracle.avatar.js";
+
+    private final boolean enabled;
+    private final Counter open;
+    private final Counter closed;
+    private final Counter accepted;
+    private final Counter lifetime;
+    private final Counter bytesRead;
+    private final Counter bytesWritten;
+    private final Counter queuedWriteBytes;
+    private final Counter writeLimitPauses;
+    private final Counter writeLimitCloses;
+    private final Counter poolHits;
+    private final Counter poolMisses;
+    private final Counter poolEvictions;
+
+    private ObjectName name;
+    private long lastAccepted;
+    private long lastAcceptSample = System.nanoTime();
+    private double acceptRate;
+
+    public ConnectionMetrics(final MetricsFactory factory) {
+        enabled = factory.enabled();
+        open = factory.newCounter("Open Handles");
+        closed = factory.newCounter("Closed Handles");
+        accepted = factory.newCounter("Accepted Connections");
+        lifetime = factory.newCounter("Handle Lifetime");
+        bytesRead = factory.newCounter("Bytes Read");
+        bytesWritten = factory.newCounter("Bytes Written");
+        queuedWriteBytes = factory.newCounter("Queued Write Bytes");
+        writeLimitPauses = factory.newCounter("Write Limit Pauses");
+        writeLimitCloses = factory.newCounter("Write Limit Closes");
+        poolHits = factory.newCounter("Pool Hits");
+        poolMisses = factory.newCounter("Pool Misses");
+        poolEvictions = factory.newCounter("Pool Evictions");
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public void opened() {
+        open.add(1);
+    }
+
+    public void closed(final long lifetimeMillis) {
+        open.add(-1);
+        closed.add(1);
+        lifetime.add(lifetimeMillis);
+    }
+
+    public void accepted() {
+        accepted.add(1);
+    }
+
+    public void read(final long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void queued(final long bytes) {
+        queuedWriteBytes.add(bytes);
+    }
+
+    /**
+     * A queued write completed, bytes are counted as written if it succeeded.
+     */
+    public void written(final long bytes, final boolean succeeded) {
+        queuedWriteBytes.add(-bytes);
+        if (succeeded) {
+            bytesWritten.add(bytes);
+        }
+    }
+
+    public void writeLimitPaused() {
+        writeLimitPauses.add(1);
+    }
+
+    public void writeLimitClosed() {
+        writeLimitCloses.add(1);
+    }
+
+    /**
+     * A pool checkout found an idle connection, or did not.
+     */
+    public void pooled(final boolean hit) {
+        (hit ? poolHits : poolMisses).add(1);
+    }
+
+    public void poolEvicted() {
+        poolEvictions.add(1);
+    }
+
+    /**
+     * Registers with the platform MBean server, a failure to register is not fatal.
+     */
+    public void register(final int loop) {
+        if (!enabled) {
+            return;
+        }
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            @Override
+            public Void run() {
+                try {
+                    final ObjectName objectName = new ObjectName(DOMAIN + ":type=Connections,loop=" + loop);
+                    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                    if (!server.isRegistered(objectName)) {
+                        server.registerMBean(ConnectionMetrics.this, objectName);
+                        name = objectName;
+                    }
+                } catch (final JMException | SecurityException ignored) {
+                }
+                return null;
+            }
+        });
+    }
+
+    public void unregister() {
+        if (name == null) {
+            return;
+        }
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            @Override
+            public Void run() {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                } catch (final JMException | SecurityException ignored) {
+                }
+                name = null;
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public long getOpenHandles() {
+        return open.sum();
+    }
+
+    @Override
+    public long getClosedHandles() {
+        return closed.sum();
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return accepted.sum();
+    }
+
+    /**
+     * Connections accepted per second, over the time since the previous sample,
+     * samples are at least a second apart.
+     */
+    @Override
+    public synchronized double getAcceptRate() {
+        final long now = System.nanoTime();
+        final long elapsed = now - lastAcceptSample;
+        if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+            final long count = accepted.sum();
+            acceptRate = (count - lastAccepted) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            lastAccepted = count;
+            lastAcceptSample = now;
+        }
+        return acceptRate;
+    }
+
+    /**
+     * Average lifetime of the closed handles, in milliseconds.
+     */
+    @Override
+    public double getAverageLifetime() {
+        final long count = closed.sum();
+        return count == 0 ? 0 : lifetime.sum() / (double) count;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getQueuedWriteBytes() {
+        return queuedWriteBytes.sum();
+    }
+
+    @Override
+    public long getWriteLimitPauses() {
+        return writeLimitPauses.sum();
+    }
+
+    @Override
+    public long getWriteLimitCloses() {
+        return writeLimitCloses.sum();
+    }
+
+    @Override
+    public long getPoolHits() {
+        return poolHits.sum();
+    }
+
+    @Override
+    public long getPoolMisses() {
+        return poolMisses.sum();
+    }
+
+    /**
+     * Fraction of the pool checkouts that reused an idle connection.
+     */
+    @Override
+    public double getPoolHitRate() {
+        final long hits = poolHits.sum();
+        final long checkouts = hits + poolMisses.sum();
+        return checkouts == 0 ? 0 : hits / (double) checkouts;
+    }
+
+    @Override
+    public long getPoolEvictions() {
+        return poolEvictions.sum();
+    }
+
+}
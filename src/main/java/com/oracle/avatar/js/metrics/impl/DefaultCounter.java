@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.metrics.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.oracle.avatar.js.metrics.spi.Counter;
+
+/**
+ * Default implementation of the Counter interface, striped to keep updates cheap.
+ */
+public final class DefaultCounter implements Counter {
+
+    private final LongAdder sum = new LongAdder();
+    private final String name;
+
+    /**
+     * Constructor
+     * @param name The name of the counter
+     */
+    public DefaultCounter(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void add(final long value) {
+        sum.add(value);
+    }
+
+    @Override
+    public long sum() {
+        return sum.sum();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+}
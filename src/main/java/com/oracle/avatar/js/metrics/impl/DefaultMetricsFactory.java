@@ -25,6 +25,7 @@
 
 package com.oracle.avatar.js.metrics.impl;
 
+import com.oracle.avatar.js.metrics.spi.Counter;
 import com.oracle.avatar.js.metrics.spi.DurationEvent;
 import com.oracle.avatar.js.metrics.spi.MetricsFactory;
 
@@ -52,4 +53,9 @@ public final class DefaultMetricsFactory implements MetricsFactory {
         return enabled ? new DefaultDurationEvent(name) : new NullDurationEvent(name);
     }
 
+    @Override
+    public Counter newCounter(String name) {
+        return enabled ? new DefaultCounter(name) : new NullCounter(name);
+    }
+
 }
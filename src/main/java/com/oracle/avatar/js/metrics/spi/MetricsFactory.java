@@ -25,6 +25,8 @@
 
 package com.oracle.avatar.js.metrics.spi;
 
+import com.oracle.avatar.js.metrics.impl.NullCounter;
+
 /**
  * A factory for different event types used to collect metrics.
  */
@@ -33,4 +35,11 @@ public interface MetricsFactory {
     public boolean enabled();
     public DurationEvent newDurationEvent(String name);
 
+    /**
+     * Factories written before counters existed collect none.
+     */
+    public default Counter newCounter(String name) {
+        return new NullCounter(name);
+    }
+
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.net;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.metrics.ConnectionMetrics;
+import com.oracle.libuv.cb.TimerCallback;
+import com.oracle.libuv.handles.TimerHandle;
+
+/**
+ * Idle outbound connections of one event loop, for the pooling http agent of the _http_pool module.
+ * The agent builds the keys, a connection is only reused by the agent that opened it,
+ * for the same host, port and tls server name. Connections are opaque to the pool,
+ * script opens, checks and closes them. Checkout is last in first out, the most recently
+ * used connection is the most likely to still be open, and checkout, checkin and close
+ * are O(1).
+ * <p>
+ * A key has at most maxPerHost connections reserved and not yet closed, idle or in use,
+ * and at most maxIdlePerHost idle ones. Idle connections are checked with the caller's
+ * health check on checkout and evicted once idle for the idle timeout, evicted connections
+ * are handed to the evict callback to be closed, they count until reported closed.
+ * -Davatar-js.pool.max.per.host=n, -Davatar-js.pool.max.idle.per.host=n,
+ * -Davatar-js.pool.idle.timeout=ms
+ * <p>
+ * -Davatar-js.http.keepalive=true makes the global agent of http a pooling agent.
+ * <p>
+ * Used from the loop thread only.
+ */
+public final class ConnectionPool {
+
+    private static final class Entry {
+        private final Host host;
+        private final Object connection;
+        private long idleSince;
+        private Entry newer;
+        private Entry older;
+
+        private Entry(final Host host, final Object connection) {
+            this.host = host;
+            this.connection = connection;
+        }
+    }
+
+    private static final class Host {
+        private int open;
+        private int idle;
+        private Entry newest;
+        private Entry oldest;
+
+        private void push(final Entry entry) {
+            entry.older = newest;
+            entry.newer = null;
+            if (newest != null) {
+                newest.newer = entry;
+            } else {
+                oldest = entry;
+            }
+            newest = entry;
+            idle++;
+        }
+
+        private void unlink(final Entry entry) {
+            if (entry.newer != null) {
+                entry.newer.older = entry.older;
+            } else {
+                newest = entry.older;
+            }
+            if (entry.older != null) {
+                entry.older.newer = entry.newer;
+            } else {
+                oldest = entry.newer;
+            }
+            entry.newer = entry.older = null;
+            idle--;
+        }
+    }
+
+    private final EventLoop eventLoop;
+    private final ConnectionMetrics metrics;
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final Map<Object, Entry> idle = new IdentityHashMap<>();
+    private final int maxPerHost;
+    private final int maxIdlePerHost;
+    private final boolean keepAlive = Boolean.getBoolean("avatar-js.http.keepalive");
+    private long idleTimeout;
+    private Callback onEvict;
+    private TimerHandle timer;
+    private boolean ticking;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long failedChecks;
+
+    public ConnectionPool(final EventLoop eventLoop, final ConnectionMetrics metrics) {
+        this(eventLoop, metrics,
+             Integer.getInteger("avatar-js.pool.max.per.host", 64),
+             Integer.getInteger("avatar-js.pool.max.idle.per.host", 16),
+             Long.getLong("avatar-js.pool.idle.timeout", 30000));
+    }
+
+    public ConnectionPool(final EventLoop eventLoop, final ConnectionMetrics metrics,
+                          final int maxPerHost, final int maxIdlePerHost, final long idleTimeout) {
+        this.eventLoop = eventLoop;
+        this.metrics = metrics;
+        this.maxPerHost = maxPerHost;
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean keepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Called with ("evict", [connection]) for each idle connection evicted, which should be closed.
+     */
+    public void setEvictCallback(final Callback onEvict) {
+        this.onEvict = onEvict;
+    }
+
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Takes the most recently used idle connection for key that passes the health check,
+     * idle connections found stale or unhealthy on the way are evicted.
+     *
+     * @param healthy the health check, null to skip it
+     * @return the connection, or null if a new one must be opened
+     */
+    public Object checkout(final String key, final Predicate<Object> healthy) throws Exception {
+        final Host host = hosts.get(key);
+        if (host != null) {
+            final long now = System.currentTimeMillis();
+            Entry entry;
+            while ((entry = host.newest) != null) {
+                remove(entry);
+                if (now - entry.idleSince >= idleTimeout) {
+                    // the older ones have been idle longer
+                    evict(entry);
+                    evictOlder(host, now - idleTimeout + 1);
+                    break;
+                }
+                if (healthy != null && !healthy.test(entry.connection)) {
+                    failedChecks++;
+                    evict(entry);
+                    continue;
+                }
+                hits++;
+                if (metrics.enabled()) {
+                    metrics.pooled(true);
+                }
+                return entry.connection;
+            }
+        }
+        misses++;
+        if (metrics.enabled()) {
+            metrics.pooled(false);
+        }
+        return null;
+    }
+
+    /**
+     * Reserves a new connection for key, to be reported closed when it closes.
+     *
+     * @return false if key has maxPerHost connections already
+     */
+    public boolean reserve(final String key) {
+        Host host = hosts.get(key);
+        if (host == null) {
+            host = new Host();
+            hosts.put(key, host);
+        }
+        if (host.open >= maxPerHost) {
+            return false;
+        }
+        host.open++;
+        return true;
+    }
+
+    /**
+     * Returns a connection reserved for key to the pool.
+     *
+     * @return false if key has maxIdlePerHost idle connections already, connection should be closed
+     */
+    public boolean checkin(final String key, final Object connection) {
+        if (idle.containsKey(connection)) {
+            return true;
+        }
+        final Host host = hosts.get(key);
+        if (host == null || host.idle >= maxIdlePerHost) {
+            return false;
+        }
+        final Entry entry = new Entry(host, connection);
+        entry.idleSince = System.currentTimeMillis();
+        host.push(entry);
+        idle.put(connection, entry);
+        startTimer();
+        return true;
+    }
+
+    /**
+     * A connection reserved for key closed, idle or not.
+     */
+    public void closed(final String key, final Object connection) {
+        final Entry entry = idle.get(connection);
+        if (entry != null) {
+            remove(entry);
+        }
+        final Host host = hosts.get(key);
+        if (host != null) {
+            if (host.open > 0) {
+                host.open--;
+            }
+            if (host.open == 0 && host.idle == 0) {
+                hosts.remove(key);
+            }
+        }
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public double hitRate() {
+        final long checkouts = hits + misses;
+        return checkouts == 0 ? 0 : hits / (double) checkouts;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    public long failedChecks() {
+        return failedChecks;
+    }
+
+    public int idle() {
+        return idle.size();
+    }
+
+    public int idle(final String key) {
+        final Host host = hosts.get(key);
+        return host == null ? 0 : host.idle;
+    }
+
+    public int open(final String key) {
+        final Host host = hosts.get(key);
+        return host == null ? 0 : host.open;
+    }
+
+    private void remove(final Entry entry) {
+        entry.host.unlink(entry);
+        idle.remove(entry.connection);
+    }
+
+    private void evict(final Entry entry) throws Exception {
+        evictions++;
+        if (metrics.enabled()) {
+            metrics.poolEvicted();
+        }
+        if (onEvict != null) {
+            onEvict.call("evict", new Object[] {entry.connection});
+        }
+    }
+
+    // evicts the connections of host idle since before idleSince, oldest first
+    private void evictOlder(final Host host, final long idleSince) throws Exception {
+        Entry entry;
+        while ((entry = host.oldest) != null && entry.idleSince < idleSince) {
+            remove(entry);
+            evict(entry);
+        }
+    }
+
+    private void expire() throws Exception {
+        final long idleSince = System.currentTimeMillis() - idleTimeout + 1;
+        final Iterator<Host> it = hosts.values().iterator();
+        final Host[] expiring = new Host[hosts.size()];
+        int count = 0;
+        while (it.hasNext()) {
+            final Host host = it.next();
+            if (host.oldest != null && host.oldest.idleSince < idleSince) {
+                expiring[count++] = host;
+            }
+        }
+        // evicting runs script, which may close connections and change hosts
+        for (int i = 0; i < count; i++) {
+            evictOlder(expiring[i], idleSince);
+        }
+        if (idle.isEmpty() && ticking) {
+            timer.stop();
+            ticking = false;
+        }
+    }
+
+    // Idle connections are swept every half idle timeout, while there are any.
+    private void startTimer() {
+        if (timer == null) {
+            timer = AccessController.doPrivileged(new PrivilegedAction<TimerHandle>() {
+                @Override
+                public TimerHandle run() {
+                    return eventLoop.handleFactory().newTimerHandle();
+                }
+            });
+            timer.setTimerFiredCallback(new TimerCallback() {
+                @Override
+                public void onTimer(final int status) throws Exception {
+                    expire();
+                }
+            });
+            timer.unref();
+        }
+        if (!ticking) {
+            final long tick = Math.max(10, idleTimeout / 2);
+            timer.start(tick, tick);
+            ticking = true;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.stream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.libuv.Files;
+import com.oracle.libuv.cb.FileReadCallback;
+import com.oracle.libuv.handles.StreamHandle;
+
+/**
+ * Sends a region of a file to a stream, for TCP.sendFile and Pipe.sendFile. The file is
+ * read with libuv into two direct buffers that are written to the stream as they fill,
+ * one read at a time and in file order, so the bytes never reach the Java heap or script.
+ * The owner of the stream reports the completion of each chunk write through
+ * {@link #written(int, Exception)}; done is called with (error, bytesSent) once the region,
+ * or the file, is fully sent or on the first error. Used from the loop thread only.
+ */
+public final class FileSender {
+
+    private static final int CHUNK_SIZE = Integer.getInteger("avatar-js.sendfile.chunk.size", 64 * 1024);
+
+    /**
+     * Read callback of the Files instance used by senders, the read context is the sender.
+     */
+    public static final FileReadCallback READ_CALLBACK = new FileReadCallback() {
+        @Override
+        public void onRead(final Object context, final int bytesRead, final ByteBuffer data, final Exception error) throws Exception {
+            ((FileSender) context).onRead(bytesRead, error);
+        }
+    };
+
+    private final Files files;
+    private final StreamHandle stream;
+    private final int fd;
+    private final Callback done;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>(2);
+    private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>(2);
+    private ByteBuffer reading;
+    private long position;
+    private long remaining;
+    private long sent;
+    private Exception error;
+    private boolean cancelled;
+    private boolean finished;
+
+    /**
+     * @param length the number of bytes to send, or -1 to send up to the end of the file
+     */
+    public FileSender(final Files files, final StreamHandle stream, final int fd,
+                      final long offset, final long length, final Callback done) {
+        this.files = files;
+        this.stream = stream;
+        this.fd = fd;
+        this.position = offset;
+        this.remaining = length < 0 ? Long.MAX_VALUE : length;
+        this.done = done;
+        final int size = (int) Math.max(1, Math.min(CHUNK_SIZE, remaining));
+        free.add(ByteBuffer.allocateDirect(size));
+        free.add(ByteBuffer.allocateDirect(size));
+    }
+
+    public void start() throws Exception {
+        pump();
+        finishIfIdle();
+    }
+
+    /**
+     * Stops reading, a read in progress is dropped and the chunks being written still complete.
+     */
+    public void cancel() {
+        remaining = 0;
+        cancelled = true;
+    }
+
+    public boolean finished() {
+        return finished;
+    }
+
+    public long sent() {
+        return sent;
+    }
+
+    /**
+     * A chunk written by this sender completed.
+     */
+    public void written(final int status, final Exception exception) throws Exception {
+        final ByteBuffer buffer = writing.poll();
+        if (buffer == null) {
+            return;
+        }
+        if (status < 0 && error == null) {
+            error = exception != null ? exception : new IllegalStateException("write failed");
+        } else if (status >= 0) {
+            sent += buffer.limit();
+        }
+        free.add(buffer);
+        pump();
+        finishIfIdle();
+    }
+
+    private void onRead(final int bytesRead, final Exception exception) throws Exception {
+        final ByteBuffer buffer = reading;
+        reading = null;
+        if (exception != null || bytesRead < 0) {
+            if (error == null) {
+                error = exception != null ? exception : new IllegalStateException("read failed");
+            }
+            free.add(buffer);
+        } else if (bytesRead == 0 || cancelled) {
+            // end of file, or cancelled
+            remaining = 0;
+            free.add(buffer);
+        } else {
+            position += bytesRead;
+            if (remaining != Long.MAX_VALUE) {
+                remaining -= bytesRead;
+            }
+            buffer.position(0).limit(bytesRead);
+            writing.add(buffer);
+            try {
+                stream.write(buffer.slice());
+            } catch (final Exception e) {
+                writing.removeLast();
+                free.add(buffer);
+                if (error == null) {
+                    error = e;
+                }
+            }
+            pump();
+        }
+        finishIfIdle();
+    }
+
+    private void pump() {
+        if (reading != null || remaining == 0 || error != null || free.isEmpty()) {
+            return;
+        }
+        final ByteBuffer buffer = free.poll();
+        final int length = (int) Math.min(buffer.capacity(), remaining);
+        buffer.clear();
+        reading = buffer;
+        try {
+            files.read(fd, buffer, 0, length, position, this);
+        } catch (final Exception e) {
+            reading = null;
+            free.add(buffer);
+            error = e;
+        }
+    }
+
+    private void finishIfIdle() throws Exception {
+        if (finished || reading != null || !writing.isEmpty() || (remaining != 0 && error == null)) {
+            return;
+        }
+        finished = true;
+        done.call("sendFile", new Object[] {error, sent});
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.udp;
+
+import java.nio.ByteBuffer;
+
+import com.oracle.avatar.js.buffer.Buffer;
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.libuv.Address;
+import com.oracle.libuv.cb.CheckCallback;
+import com.oracle.libuv.cb.UDPRecvCallback;
+import com.oracle.libuv.handles.CheckHandle;
+import com.oracle.libuv.handles.HandleFactory;
+import com.oracle.libuv.handles.UDPHandle;
+
+/**
+ * Batched datagram I/O for udp_wrap. Received datagrams are copied back to back into
+ * one direct buffer, with their offsets, lengths and senders, without calling into
+ * script, and the batch is given to script once per loop iteration, or as soon as it
+ * is full. Script reads a datagram through a slice of the buffer, a view of its bytes
+ * only. The buffer and arrays are reused once the callback returns.
+ */
+public final class DatagramBatch implements UDPRecvCallback, CheckCallback {
+
+    /**
+     * A datagram of a batch could not be sent, the ones before it were.
+     */
+    public static final class SendException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int sent;
+
+        private SendException(final int sent, final Exception cause) {
+            super(cause.getMessage(), cause);
+            this.sent = sent;
+        }
+
+        public int sent() {
+            return sent;
+        }
+    }
+
+    private static final int BUFFER_SIZE = Integer.getInteger("avatar-js.udp.batch.size", 256 * 1024);
+    private static final int MAX_DATAGRAMS = Integer.getInteger("avatar-js.udp.batch.datagrams", 1024);
+
+    private final UDPHandle udp;
+    private final CheckHandle check;
+    private final Callback callback;
+    private final ByteBuffer buffer;
+    private final Buffer data;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final String[] addresses;
+    private final int[] ports;
+    private int count;
+    private long datagrams;
+    private long batches;
+    private long dropped;
+
+    public DatagramBatch(final HandleFactory factory, final UDPHandle udp, final Callback callback) {
+        this(factory, udp, callback, BUFFER_SIZE, MAX_DATAGRAMS);
+    }
+
+    public DatagramBatch(final HandleFactory factory, final UDPHandle udp, final Callback callback,
+                         final int bufferSize, final int maxDatagrams) {
+        this.udp = udp;
+        this.callback = callback;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.data = new Buffer(buffer);
+        this.offsets = new int[maxDatagrams];
+        this.lengths = new int[maxDatagrams];
+        this.addresses = new String[maxDatagrams];
+        this.ports = new int[maxDatagrams];
+        this.check = factory.newCheckHandle();
+        check.setCheckCallback(this);
+    }
+
+    /**
+     * Sends count datagrams of data, at offsets and of lengths, to one destination.
+     * Each datagram sent completes through the send callback of the handle.
+     * @return the number of datagrams sent
+     * @throws IndexOutOfBoundsException if a datagram is not within data, nothing is sent
+     * @throws SendException if a datagram could not be sent
+     */
+    public static int send(final UDPHandle udp, final boolean ipv6, final Buffer data,
+                           final int[] offsets, final int[] lengths, final int count,
+                           final int port, final String address) throws SendException {
+        final ByteBuffer buffer = data.underlying();
+        if (count < 0 || count > offsets.length || count > lengths.length) {
+            throw new IndexOutOfBoundsException("count " + count + " out of bounds");
+        }
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] > buffer.capacity() - lengths[i]) {
+                throw new IndexOutOfBoundsException("datagram " + i + " out of bounds");
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                if (ipv6) {
+                    udp.send6(buffer, offsets[i], lengths[i], port, address);
+                } else {
+                    udp.send(buffer, offsets[i], lengths[i], port, address);
+                }
+            } catch (final Exception e) {
+                throw new SendException(i, e);
+            }
+        }
+        return count;
+    }
+
+    public void start() {
+        udp.setRecvCallback(this);
+        check.start();
+        check.unref();
+    }
+
+    public void stop() throws Exception {
+        deliver();
+        check.stop();
+    }
+
+    public void close() {
+        check.close();
+    }
+
+    @Override
+    public void onRecv(final int nread, final ByteBuffer datagram, final Address address) throws Exception {
+        if (nread < 0 || address == null) {
+            // an error, or nothing to read
+            return;
+        }
+        if (nread > buffer.capacity()) {
+            dropped++;
+            return;
+        }
+        if (count == offsets.length || nread > buffer.remaining()) {
+            deliver();
+        }
+        final ByteBuffer source = datagram.duplicate();
+        source.limit(source.position() + nread);
+        offsets[count] = buffer.position();
+        lengths[count] = nread;
+        addresses[count] = address.getIp();
+        ports[count] = address.getPort();
+        buffer.put(source);
+        count++;
+        datagrams++;
+    }
+
+    @Override
+    public void onCheck(final int status) throws Exception {
+        deliver();
+    }
+
+    private void deliver() throws Exception {
+        if (count == 0) {
+            return;
+        }
+        batches++;
+        try {
+            callback.call("udp.batch", new Object[] {this});
+        } finally {
+            count = 0;
+            buffer.clear();
+        }
+    }
+
+    // the backing buffer, datagram i is at offsets()[i] and has lengths()[i] bytes
+    public Buffer data() {
+        return data;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int[] offsets() {
+        return offsets;
+    }
+
+    public int[] lengths() {
+        return lengths;
+    }
+
+    public String[] addresses() {
+        return addresses;
+    }
+
+    public int[] ports() {
+        return ports;
+    }
+
+    public long datagrams() {
+        return datagrams;
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    public long dropped() {
+        return dropped;
+    }
+}
@@ -34,6 +34,7 @@ import com.oracle.avatar.js.buffer.Buffer;
 import com.oracle.avatar.js.eventloop.Callback;
 import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.log.Logging;
 
 public abstract class CompressWriter extends Writer {
 
@@ -50,7 +51,7 @@ public abstract class CompressWriter extends Writer {
             try {
                 compressStream.close();
             } catch (IOException ex) {
-                if (LOG.enabled()) {
+                if (Logging.LOGGABLE && LOG.enabled()) {
                     LOG.log("compressStream close exception " + ex);
                 }
             }
@@ -60,7 +61,7 @@ public abstract class CompressWriter extends Writer {
             try {
                 buffOutStream.close();
             } catch (IOException ex) {
-                if (LOG.enabled()) {
+                if (Logging.LOGGABLE && LOG.enabled()) {
                     LOG.log("buffOutStream close exception " + ex);
                 }
             }
@@ -84,7 +85,7 @@ public abstract class CompressWriter extends Writer {
             eventLoop.post(new Event("zlib.error", getErrorCallback(),
                     ex.getMessage(), ZlibConstants.Z_STREAM_ERROR));
         }
-        if (LOG.enabled()) {
+        if (Logging.LOGGABLE && LOG.enabled()) {
             LOG.log("New Compression stream " + compressStream);
         }
     }
@@ -99,7 +100,7 @@ public abstract class CompressWriter extends Writer {
 
         buffOutStream = new ByteArrayOutputStream();
         compressStream = createCompressionStream(buffOutStream);
-        if (LOG.enabled()) {
+        if (Logging.LOGGABLE && LOG.enabled()) {
             LOG.log("Reset, new outputstream " + compressStream);
         }
     }
@@ -148,8 +149,8 @@ public abstract class CompressWriter extends Writer {
                 final int inOffset = inOff;
                 final int outOffset = outOff;
 
-                if (LOG.enabled()) {
-                    LOG.log("Compressing, input length" + chunk.array().length);
+                if (Logging.LOGGABLE && LOG.enabled()) {
+                    LOG.log("Compressing, input length" + chunk.capacity());
                 }
                 if (hasContent()) {
                     remainingOutput = fillBufferWithContent(buffer, outOffset, remainingOutput);
@@ -169,7 +170,7 @@ public abstract class CompressWriter extends Writer {
                             compressStream.close();
                             setContent(buffOutStream.toByteArray());
                             buffOutStream.close();
-                            if (LOG.enabled()) {
+                            if (Logging.LOGGABLE && LOG.enabled()) {
                                 LOG.log("Closing, ["+ flush +"] data length to collect " + getContent().length);
                             }
                             remainingOutput = fillBufferWithContent(buffer, outOffset, remainingOutput);
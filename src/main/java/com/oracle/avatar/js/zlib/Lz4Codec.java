@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.zlib;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 block compressor and decompressor.
+ * Instances hold the compressor hash table and are not thread safe, the
+ * decompressor is stateless.
+ */
+public final class Lz4Codec {
+
+    static final int MIN_MATCH = 4;
+    static final int MAX_DISTANCE = 65535;
+
+    private static final int HASH_LOG = 12;
+    private static final int SKIP_STRENGTH = 6;
+    // The last match must start at least MF_LIMIT bytes before the end of the block
+    private static final int MF_LIMIT = 12;
+    // The last LAST_LITERALS bytes of a block are always literals
+    private static final int LAST_LITERALS = 5;
+    private static final int RUN_MASK = 0x0F;
+
+    private final int[] hashTable = new int[1 << HASH_LOG];
+
+    /**
+     * Worst case size of a compressed block.
+     * @param length The uncompressed length
+     * @return The maximum compressed length
+     */
+    public static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compress a block.
+     *
+     * @param src The input
+     * @param srcOff Offset in the input
+     * @param srcLen Length of the input
+     * @param dst The output, at least {@link #maxCompressedLength(int)} bytes from dstOff
+     * @param dstOff Offset in the output
+     * @param acceleration 1 for the default search, higher values skip faster
+     * over incompressible data at the expense of the ratio
+     * @return The compressed length
+     */
+    public int compress(final byte[] src, final int srcOff, final int srcLen,
+                        final byte[] dst, final int dstOff, final int acceleration) {
+        final int srcEnd = srcOff + srcLen;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        int sp = srcOff;
+        int dp = dstOff;
+        int anchor = srcOff;
+
+        if (srcLen > MF_LIMIT) {
+            Arrays.fill(hashTable, -1);
+            hashTable[hash(readInt(src, sp))] = sp;
+            sp++;
+
+            search:
+            while (true) {
+                // Find a match
+                int ref;
+                int searchMatchNb = acceleration << SKIP_STRENGTH;
+                while (true) {
+                    final int h = hash(readInt(src, sp));
+                    ref = hashTable[h];
+                    hashTable[h] = sp;
+                    if (isMatch(src, ref, sp)) {
+                        break;
+                    }
+                    sp += searchMatchNb++ >>> SKIP_STRENGTH;
+                    if (sp > mfLimit) {
+                        break search;
+                    }
+                }
+
+                // Extend backward
+                while (sp > anchor && ref > srcOff && src[sp - 1] == src[ref - 1]) {
+                    sp--;
+                    ref--;
+                }
+
+                // Literals
+                int token = dp++;
+                dp = writeLiterals(src, anchor, sp - anchor, dst, token, dp);
+
+                while (true) {
+                    final int offset = sp - ref;
+                    dst[dp++] = (byte) offset;
+                    dst[dp++] = (byte) (offset >>> 8);
+
+                    // Extend forward
+                    sp += MIN_MATCH;
+                    ref += MIN_MATCH;
+                    final int matchStart = sp;
+                    while (sp < matchLimit && src[sp] == src[ref]) {
+                        sp++;
+                        ref++;
+                    }
+                    int matchLen = sp - matchStart;
+                    if (matchLen >= RUN_MASK) {
+                        dst[token] |= RUN_MASK;
+                        matchLen -= RUN_MASK;
+                        while (matchLen >= 255) {
+                            dst[dp++] = (byte) 255;
+                            matchLen -= 255;
+                        }
+                        dst[dp++] = (byte) matchLen;
+                    } else {
+                        dst[token] |= matchLen;
+                    }
+                    anchor = sp;
+
+                    if (sp > mfLimit) {
+                        break search;
+                    }
+
+                    hashTable[hash(readInt(src, sp - 2))] = sp - 2;
+
+                    // Immediate next match, without literals
+                    final int h = hash(readInt(src, sp));
+                    ref = hashTable[h];
+                    hashTable[h] = sp;
+                    if (!isMatch(src, ref, sp)) {
+                        break;
+                    }
+                    token = dp++;
+                    dst[token] = 0;
+                }
+
+                if (++sp > mfLimit) {
+                    break;
+                }
+            }
+        }
+
+        // Last literals
+        final int token = dp++;
+        dp = writeLiterals(src, anchor, srcEnd - anchor, dst, token, dp);
+        return dp - dstOff;
+    }
+
+    /**
+     * Decompress a block. Matches may reference any byte of dst located
+     * before dstOff, this is how linked blocks see the previous ones.
+     *
+     * @param src The compressed input
+     * @param srcOff Offset in the input
+     * @param srcLen Length of the compressed block
+     * @param dst The output
+     * @param dstOff Offset in the output
+     * @param dstLen Maximum uncompressed length
+     * @return The uncompressed length
+     * @throws IOException If the block is malformed
+     */
+    public static int decompress(final byte[] src, final int srcOff, final int srcLen,
+                                 final byte[] dst, final int dstOff, final int dstLen) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        int sp = srcOff;
+        int dp = dstOff;
+
+        while (true) {
+            if (sp >= srcEnd) {
+                throw malformed(sp - srcOff);
+            }
+            final int token = src[sp++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw malformed(sp - srcOff);
+                    }
+                    b = src[sp++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > srcEnd - sp || literals > dstEnd - dp) {
+                throw malformed(sp - srcOff);
+            }
+            System.arraycopy(src, sp, dst, dp, literals);
+            sp += literals;
+            dp += literals;
+
+            if (sp == srcEnd) {
+                // The last sequence only holds literals
+                return dp - dstOff;
+            }
+
+            if (srcEnd - sp < 2) {
+                throw malformed(sp - srcOff);
+            }
+            final int offset = (src[sp++] & 0xFF) | ((src[sp++] & 0xFF) << 8);
+            int ref = dp - offset;
+            if (offset == 0 || ref < 0) {
+                throw malformed(sp - srcOff);
+            }
+
+            int matchLen = token & RUN_MASK;
+            if (matchLen == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw malformed(sp - srcOff);
+                    }
+                    b = src[sp++] & 0xFF;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if (matchLen > dstEnd - dp) {
+                throw malformed(sp - srcOff);
+            }
+
+            if (offset >= matchLen) {
+                System.arraycopy(dst, ref, dst, dp, matchLen);
+                dp += matchLen;
+            } else {
+                // Overlapping copy, repeats the last offset bytes
+                final int end = dp + matchLen;
+                while (dp < end) {
+                    dst[dp++] = dst[ref++];
+                }
+            }
+        }
+    }
+
+    private static boolean isMatch(final byte[] src, final int ref, final int sp) {
+        return ref >= 0 && sp - ref <= MAX_DISTANCE && readInt(src, ref) == readInt(src, sp);
+    }
+
+    private static int writeLiterals(final byte[] src, final int from, final int length,
+                                     final byte[] dst, final int token, int dp) {
+        if (length >= RUN_MASK) {
+            dst[token] = (byte) (RUN_MASK << 4);
+            int remaining = length - RUN_MASK;
+            while (remaining >= 255) {
+                dst[dp++] = (byte) 255;
+                remaining -= 255;
+            }
+            dst[dp++] = (byte) remaining;
+        } else {
+            dst[token] = (byte) (length << 4);
+        }
+        System.arraycopy(src, from, dst, dp, length);
+        return dp + length;
+    }
+
+    private static int hash(final int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(final byte[] b, final int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8)
+                | ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24);
+    }
+
+    private static IOException malformed(final int position) {
+        return new IOException("Malformed LZ4 block at offset " + position);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.zlib;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.oracle.avatar.js.zlib.Lz4FrameOutputStream.*;
+
+/**
+ * Reads the LZ4 frame format, including linked blocks, block and content
+ * checksums, concatenated frames and skippable frames.
+ * The compressed input arrives in chunks. When the underlying stream runs out
+ * of data in the middle of a frame, -1 is returned and decoding resumes where
+ * it stopped on the next read, once more input is available.
+ */
+public final class Lz4FrameInputStream extends FilterInputStream {
+
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    private static final int SKIPPABLE_MASK = 0xFFFFFFF0;
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private enum State { MAGIC, DESCRIPTOR, BLOCK_SIZE, BLOCK, CONTENT_CHECKSUM, SKIP_SIZE, SKIP }
+
+    private final XXHash32 contentChecksum = new XXHash32(0);
+    private State state = State.MAGIC;
+    private byte[] pending = new byte[16];
+    private int pendingLength;
+    private int needed = 4;
+
+    private int flags;
+    private int blockMaxSize;
+    private int blockSize;
+    private boolean uncompressedBlock;
+    private int skipRemaining;
+
+    // Decoded data, preceded by up to WINDOW_SIZE bytes of history for linked blocks
+    private byte[] window = new byte[0];
+    private int outPosition;
+    private int outLimit;
+
+    public Lz4FrameInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (outPosition == outLimit) {
+            if (!advance()) {
+                return -1;
+            }
+        }
+        final int n = Math.min(len, outLimit - outPosition);
+        System.arraycopy(window, outPosition, b, off, n);
+        outPosition += n;
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] b = new byte[(int) Math.min(n, 4096)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int r = read(b, 0, (int) Math.min(n - skipped, b.length));
+            if (r == -1) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return outLimit - outPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Runs one step of the frame decoder.
+     * @return false if more input is needed to make progress
+     */
+    private boolean advance() throws IOException {
+        if (state == State.SKIP) {
+            while (skipRemaining > 0) {
+                final int n = in.read(pending, 0, Math.min(skipRemaining, pending.length));
+                if (n <= 0) {
+                    return false;
+                }
+                skipRemaining -= n;
+            }
+            expect(State.MAGIC, 4);
+            return true;
+        }
+
+        if (!fill()) {
+            return false;
+        }
+
+        switch (state) {
+            case MAGIC: {
+                final int magic = XXHash32.readIntLE(pending, 0);
+                if (magic == MAGIC) {
+                    expect(State.DESCRIPTOR, 2);
+                } else if ((magic & SKIPPABLE_MASK) == SKIPPABLE_MAGIC) {
+                    expect(State.SKIP_SIZE, 4);
+                } else {
+                    throw new IOException("Invalid LZ4 frame magic number");
+                }
+                break;
+            }
+            case DESCRIPTOR: {
+                flags = pending[0] & 0xFF;
+                final int length = 3 + ((flags & FLG_CONTENT_SIZE) != 0 ? 8 : 0) + ((flags & FLG_DICT_ID) != 0 ? 4 : 0);
+                if (pendingLength < length) {
+                    needed = length;
+                    return true;
+                }
+                if ((flags & 0xC0) != FLG_VERSION) {
+                    throw new IOException("Unsupported LZ4 frame version");
+                }
+                if ((flags & FLG_DICT_ID) != 0) {
+                    throw new IOException("LZ4 dictionaries are not supported");
+                }
+                final int checksum = (XXHash32.hash(pending, 0, length - 1, 0) >>> 8) & 0xFF;
+                if (checksum != (pending[length - 1] & 0xFF)) {
+                    throw new IOException("LZ4 frame header checksum mismatch");
+                }
+                final int bd = (pending[1] >>> 4) & 0x07;
+                if (bd < BD_64KB) {
+                    throw new IOException("Invalid LZ4 block maximum size");
+                }
+                blockMaxSize = 1 << (2 * bd + 8);
+                final int windowSize = blockMaxSize + ((flags & FLG_BLOCK_INDEPENDENCE) == 0 ? WINDOW_SIZE : 0);
+                if (window.length < windowSize) {
+                    window = new byte[windowSize];
+                }
+                outPosition = outLimit = 0;
+                contentChecksum.reset();
+                expect(State.BLOCK_SIZE, 4);
+                break;
+            }
+            case BLOCK_SIZE: {
+                final int value = XXHash32.readIntLE(pending, 0);
+                if (value == 0) {
+                    if ((flags & FLG_CONTENT_CHECKSUM) != 0) {
+                        expect(State.CONTENT_CHECKSUM, 4);
+                    } else {
+                        expect(State.MAGIC, 4);
+                    }
+                    break;
+                }
+                blockSize = value & ~UNCOMPRESSED_BLOCK;
+                uncompressedBlock = (value & UNCOMPRESSED_BLOCK) != 0;
+                if (blockSize > blockMaxSize) {
+                    throw new IOException("LZ4 block larger than the frame maximum");
+                }
+                expect(State.BLOCK, blockSize + ((flags & FLG_BLOCK_CHECKSUM) != 0 ? 4 : 0));
+                break;
+            }
+            case BLOCK: {
+                if ((flags & FLG_BLOCK_CHECKSUM) != 0
+                        && XXHash32.hash(pending, 0, blockSize, 0) != XXHash32.readIntLE(pending, blockSize)) {
+                    throw new IOException("LZ4 block checksum mismatch");
+                }
+                int start = 0;
+                if ((flags & FLG_BLOCK_INDEPENDENCE) == 0) {
+                    // Keep the last 64KB of decoded data visible to this block
+                    start = outLimit;
+                    if (start + blockMaxSize > window.length) {
+                        System.arraycopy(window, start - WINDOW_SIZE, window, 0, WINDOW_SIZE);
+                        start = WINDOW_SIZE;
+                    }
+                }
+                final int length;
+                if (uncompressedBlock) {
+                    System.arraycopy(pending, 0, window, start, blockSize);
+                    length = blockSize;
+                } else {
+                    length = Lz4Codec.decompress(pending, 0, blockSize, window, start, blockMaxSize);
+                }
+                if ((flags & FLG_CONTENT_CHECKSUM) != 0) {
+                    contentChecksum.update(window, start, length);
+                }
+                outPosition = start;
+                outLimit = start + length;
+                expect(State.BLOCK_SIZE, 4);
+                break;
+            }
+            case CONTENT_CHECKSUM: {
+                if (contentChecksum.getValue() != XXHash32.readIntLE(pending, 0)) {
+                    throw new IOException("LZ4 content checksum mismatch");
+                }
+                expect(State.MAGIC, 4);
+                break;
+            }
+            case SKIP_SIZE: {
+                skipRemaining = XXHash32.readIntLE(pending, 0);
+                if (skipRemaining < 0) {
+                    throw new IOException("Invalid LZ4 skippable frame size");
+                }
+                state = State.SKIP;
+                break;
+            }
+            default: assert false : "state not handled: " + state;
+        }
+        return true;
+    }
+
+    private void expect(final State next, final int length) {
+        state = next;
+        needed = length;
+        pendingLength = 0;
+        if (pending.length < length) {
+            pending = new byte[length];
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (pending.length < needed) {
+            final byte[] grown = new byte[needed];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        while (pendingLength < needed) {
+            final int n = in.read(pending, pendingLength, needed - pendingLength);
+            if (n <= 0) {
+                return false;
+            }
+            pendingLength += n;
+        }
+        return true;
+    }
+}
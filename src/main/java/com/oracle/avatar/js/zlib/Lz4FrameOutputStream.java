@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.zlib;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the LZ4 frame format: independent 64KB blocks followed by an
+ * xxHash32 content checksum. {@link #flush()} terminates the current block
+ * early so that all data written so far can be decoded by the peer.
+ */
+public final class Lz4FrameOutputStream extends FilterOutputStream {
+
+    static final int MAGIC = 0x184D2204;
+    static final int FLG_VERSION = 0x40;
+    static final int FLG_BLOCK_INDEPENDENCE = 0x20;
+    static final int FLG_BLOCK_CHECKSUM = 0x10;
+    static final int FLG_CONTENT_SIZE = 0x08;
+    static final int FLG_CONTENT_CHECKSUM = 0x04;
+    static final int FLG_DICT_ID = 0x01;
+    static final int BD_64KB = 4;
+    static final int UNCOMPRESSED_BLOCK = 0x80000000;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final Lz4Codec codec = new Lz4Codec();
+    private final XXHash32 contentChecksum = new XXHash32(0);
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[4 + Lz4Codec.maxCompressedLength(BLOCK_SIZE)];
+    private final int acceleration;
+    private int blockLength;
+    private boolean headerWritten;
+    private boolean closed;
+
+    /**
+     * @param out The underlying stream
+     * @param level The zlib compression level. 0 stores blocks uncompressed,
+     * 1 to 8 trade ratio for speed, 9 and the default level use the regular
+     * LZ4 search.
+     */
+    public Lz4FrameOutputStream(final OutputStream out, final int level) {
+        super(out);
+        if (level == ZlibConstants.Z_NO_COMPRESSION) {
+            acceleration = 0;
+        } else if (level == ZlibConstants.Z_DEFAULT_COMPRESSION) {
+            acceleration = 1;
+        } else {
+            acceleration = 1 + ZlibConstants.Z_BEST_COMPRESSION - level;
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            final int n = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == BLOCK_SIZE) {
+                writeBlock();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (blockLength > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            writeHeader();
+            if (blockLength > 0) {
+                writeBlock();
+            }
+            // End mark and content checksum
+            XXHash32.writeIntLE(0, compressed, 0);
+            XXHash32.writeIntLE(contentChecksum.getValue(), compressed, 4);
+            out.write(compressed, 0, 8);
+            out.flush();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+        final byte[] header = new byte[7];
+        XXHash32.writeIntLE(MAGIC, header, 0);
+        header[4] = (byte) (FLG_VERSION | FLG_BLOCK_INDEPENDENCE | FLG_CONTENT_CHECKSUM);
+        header[5] = (byte) (BD_64KB << 4);
+        header[6] = (byte) (XXHash32.hash(header, 4, 2, 0) >>> 8);
+        out.write(header);
+        headerWritten = true;
+    }
+
+    private void writeBlock() throws IOException {
+        writeHeader();
+        contentChecksum.update(block, 0, blockLength);
+        int size = 0;
+        if (acceleration > 0) {
+            size = codec.compress(block, 0, blockLength, compressed, 4, acceleration);
+        }
+        if (size > 0 && size < blockLength) {
+            XXHash32.writeIntLE(size, compressed, 0);
+            out.write(compressed, 0, 4 + size);
+        } else {
+            XXHash32.writeIntLE(blockLength | UNCOMPRESSED_BLOCK, compressed, 0);
+            out.write(compressed, 0, 4);
+            out.write(block, 0, blockLength);
+        }
+        blockLength = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.util.concurrent.Callable;
 import com.oracle.avatar.js.buffer.Buffer;
 import com.oracle.avatar.js.eventloop.Callback;
 import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.log.Logging;
 
 /**
  * Read compressed input and write uncompressed to output.
@@ -125,7 +126,7 @@ public abstract class UncompressWriter extends Writer {
                 int remainingOutput = availOutBefore;
                 int remainingInput = availInBefore;
                 int outOffset = outOff;
-                if (LOG.enabled()) {
+                if (Logging.LOGGABLE && LOG.enabled()) {
                     LOG.log("flush " + flush + "inOff "+ inOff + " availInBefore" + availInBefore);
                 }
                 if (hasContent()) {
@@ -137,18 +138,18 @@ public abstract class UncompressWriter extends Writer {
                 if (remainingInput > 0) {
                     assert chunk != null;
                     if (istream.isEmpty()) {// Initialize for new chunk
-                        if (LOG.enabled()) {
+                        if (Logging.LOGGABLE && LOG.enabled()) {
                             LOG.log("New chunk to read " + availInBefore + " offset is " + inOff);
                         }
                         istream.setChunk(chunk.array());
                     }
-                    if (LOG.enabled()) {
+                    if (Logging.LOGGABLE && LOG.enabled()) {
                         LOG.log("Uncompressing, input length" + remainingInput);
                     }
                     // This has to be done there, we need an header to open the stream.
                     if (uncompressStream == null) {
                         uncompressStream = createInputStream(chunk.array(), new BufferedInputStream(istream));
-                        if (LOG.enabled()) {
+                        if (Logging.LOGGABLE && LOG.enabled()) {
                             LOG.log("Initializing new InputStream " + uncompressStream);
                         }
                     }
@@ -159,7 +160,7 @@ public abstract class UncompressWriter extends Writer {
                         boolean retry = true;
                         while (retry) {
                             while (remainingOutput != 0 && (size = uncompressStream.read(buff)) >= 0) {
-                                if (LOG.enabled()) {
+                                if (Logging.LOGGABLE && LOG.enabled()) {
                                     LOG.log("Read uncompressed " + size + ", remainingOuput " + remainingOutput);
                                 }
                                 if (remainingOutput - size >= 0) {
@@ -183,14 +184,14 @@ public abstract class UncompressWriter extends Writer {
                             }
                         }
                     } catch (final EOFException ex) {
-                        if (LOG.enabled()) {
+                        if (Logging.LOGGABLE && LOG.enabled()) {
                             LOG.log("Exception " + ex.getMessage());
                         }
                         // This can happen (reason unknown yet), doesn't corrupt the stream.
                         size = -1;
                     }
                     if (size == -1) {
-                        if (LOG.enabled()) {
+                        if (Logging.LOGGABLE && LOG.enabled()) {
                             LOG.log("Chunk read");
                         }
                         remainingInput = 0;
@@ -199,7 +200,7 @@ public abstract class UncompressWriter extends Writer {
                 }
                 switch (flush) {
                     case ZlibConstants.Z_NO_FLUSH: {
-                        if (LOG.enabled()) {
+                        if (Logging.LOGGABLE && LOG.enabled()) {
                             LOG.log("Z_NO_FLUSH");
                         }
                         break;
@@ -210,7 +211,7 @@ public abstract class UncompressWriter extends Writer {
                     case ZlibConstants.Z_FULL_FLUSH:
                     case ZlibConstants.Z_BLOCK:
                     case ZlibConstants.Z_TREES: {
-                        if (LOG.enabled()) {
+                        if (Logging.LOGGABLE && LOG.enabled()) {
                             LOG.log("Finish closing stream " + flush);
                         }
                         if (remainingInput == 0 && uncompressStream != null) {
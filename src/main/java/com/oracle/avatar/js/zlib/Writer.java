@@ -31,6 +31,7 @@ import com.oracle.avatar.js.buffer.Buffer;
 import com.oracle.avatar.js.eventloop.Callback;
 import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.log.Logging;
 
 /**
  * Base class for compress and uncompress.
@@ -110,7 +111,7 @@ public abstract class Writer {
             this.strategy = strategy;
             this.dictionary = dictionary;
         } catch (final Exception exception) {
-            if (LOG.enabled()) {
+            if (Logging.LOGGABLE && LOG.enabled()) {
                 LOG.log("Invalid paremeters " + exception);
                 //exception.printStackTrace();
             }
@@ -155,7 +156,7 @@ public abstract class Writer {
      * @return The new remaining output
      */
     protected int fillBufferWithContent(final Buffer buffer, int outOffset, int remainingOutput) {
-        if (LOG.enabled()) {
+        if (Logging.LOGGABLE && LOG.enabled()) {
             LOG.log("Collecting, compressed length " + content.length);
         }
         while (remainingOutput > 0 && content != null) {
@@ -195,7 +196,7 @@ public abstract class Writer {
                 try {
                     callable.call();
                 } catch (final Exception e) {
-                    if (LOG.enabled()) {
+                    if (Logging.LOGGABLE && LOG.enabled()) {
                         LOG.log(e);
                     }
                     eventLoop.post(new Event("zlib.error", cb, e.toString(), ZlibConstants.Z_STREAM_ERROR));
@@ -208,7 +209,7 @@ public abstract class Writer {
 
     public void callback(final Callback callback, final int availInAfter,
                          final int availOutAfter) throws Exception {
-        if (LOG.enabled()) {
+        if (Logging.LOGGABLE && LOG.enabled()) {
             LOG.log("DONE, Remaining input "
                     + availInAfter + " remainingOutput " + availOutAfter);
         }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.zlib;
+
+/**
+ * Streaming xxHash32, used by the LZ4 frame format for header and content
+ * checksums.
+ */
+final class XXHash32 {
+
+    private static final int PRIME1 = 0x9E3779B1;
+    private static final int PRIME2 = 0x85EBCA77;
+    private static final int PRIME3 = 0xC2B2AE3D;
+    private static final int PRIME4 = 0x27D4EB2F;
+    private static final int PRIME5 = 0x165667B1;
+
+    private final int seed;
+    private final byte[] memory = new byte[16];
+    private int memorySize;
+    private long totalLength;
+    private int v1, v2, v3, v4;
+
+    XXHash32(final int seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    static int hash(final byte[] data, final int offset, final int length, final int seed) {
+        final XXHash32 h = new XXHash32(seed);
+        h.update(data, offset, length);
+        return h.getValue();
+    }
+
+    void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        memorySize = 0;
+        totalLength = 0;
+    }
+
+    void update(final byte[] data, int offset, int length) {
+        totalLength += length;
+
+        if (memorySize + length < 16) {
+            System.arraycopy(data, offset, memory, memorySize, length);
+            memorySize += length;
+            return;
+        }
+
+        if (memorySize > 0) {
+            final int fill = 16 - memorySize;
+            System.arraycopy(data, offset, memory, memorySize, fill);
+            offset += fill;
+            length -= fill;
+            v1 = round(v1, readIntLE(memory, 0));
+            v2 = round(v2, readIntLE(memory, 4));
+            v3 = round(v3, readIntLE(memory, 8));
+            v4 = round(v4, readIntLE(memory, 12));
+            memorySize = 0;
+        }
+
+        final int limit = offset + length - 16;
+        while (offset <= limit) {
+            v1 = round(v1, readIntLE(data, offset));
+            v2 = round(v2, readIntLE(data, offset + 4));
+            v3 = round(v3, readIntLE(data, offset + 8));
+            v4 = round(v4, readIntLE(data, offset + 12));
+            offset += 16;
+        }
+
+        final int remaining = limit + 16 - offset;
+        if (remaining > 0) {
+            System.arraycopy(data, offset, memory, 0, remaining);
+            memorySize = remaining;
+        }
+    }
+
+    int getValue() {
+        int h;
+        if (totalLength >= 16) {
+            h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7)
+                    + Integer.rotateLeft(v3, 12) + Integer.rotateLeft(v4, 18);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += (int) totalLength;
+
+        int i = 0;
+        for (; i + 4 <= memorySize; i += 4) {
+            h += readIntLE(memory, i) * PRIME3;
+            h = Integer.rotateLeft(h, 17) * PRIME4;
+        }
+        for (; i < memorySize; i++) {
+            h += (memory[i] & 0xFF) * PRIME5;
+            h = Integer.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 15;
+        h *= PRIME2;
+        h ^= h >>> 13;
+        h *= PRIME3;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int round(int acc, final int input) {
+        acc += input * PRIME2;
+        acc = Integer.rotateLeft(acc, 13);
+        return acc * PRIME1;
+    }
+
+    static int readIntLE(final byte[] b, final int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8)
+                | ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24);
+    }
+
+    static void writeIntLE(final int v, final byte[] b, final int i) {
+        b[i] = (byte) v;
+        b[i + 1] = (byte) (v >>> 8);
+        b[i + 2] = (byte) (v >>> 16);
+        b[i + 3] = (byte) (v >>> 24);
+    }
+}
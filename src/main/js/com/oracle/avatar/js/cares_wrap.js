@@ -30,6 +30,7 @@
     var net = require('net');
 
     var LibUV = Packages.com.oracle.libuv.LibUV;
+    var DNSException = Packages.com.oracle.avatar.js.dns.DNSException;
     var dns = __avatar.eventloop.dns();
 
     var mapJavaException = function(e) {
@@ -38,7 +39,10 @@
         }
         var code;
         var message;
-        if (e instanceof java.net.UnknownHostException) {
+        if (e instanceof DNSException) {
+            code = e.code;
+            message = 'query failed.';
+        } else if (e instanceof java.net.UnknownHostException) {
             code = 'ENOTFOUND';
             message = 'domain name not found.';
         } else {
@@ -90,6 +94,61 @@
         return wrapper;
     }
 
+    // record conversions, as c-ares returns them
+    var toName = function(value) {
+        return value;
+    }
+
+    var toMx = function(value) {
+        return { priority: value.priority, exchange: value.exchange };
+    }
+
+    var toSrv = function(value) {
+        return { name: value.name, port: value.port, priority: value.priority, weight: value.weight };
+    }
+
+    var query = function(type, convert) {
+        return function(name, callback) {
+            var wrapper = new RequestWrapper();
+            dns.query(name, type, function(event, args) {
+                var error = mapJavaException(args[0]);
+                if (error) {
+                    callback(error);
+                    return;
+                }
+                var results = args[1];
+                var values = [];
+                for (var i = 0; i < results.length; i++) {
+                    if (type === 'TXT') {
+                        // one entry per character string
+                        var strings = results[i];
+                        for (var j = 0; j < strings.length; j++) {
+                            values.push(String(strings[j]));
+                        }
+                    } else {
+                        values.push(convert(results[i]));
+                    }
+                }
+                callback(0, values);
+            });
+            return wrapper;
+        }
+    }
+
+    exports.queryA = query('A', toName);
+    exports.queryAaaa = query('AAAA', toName);
+    exports.queryCname = query('CNAME', toName);
+    exports.queryMx = query('MX', toMx);
+    exports.queryNs = query('NS', toName);
+    exports.queryTxt = query('TXT', toName);
+    exports.querySrv = query('SRV', toSrv);
+
+    exports.queryNaptr = function(name, callback) {
+        var error = new Error(name);
+        error.errno = 'ENOTIMP';
+        throw error;
+    }
+
     exports.isIP = function(input) {
         if (!input) {
             return 0;
@@ -110,6 +169,22 @@
         }
     }
 
+    // extension, statistics of the lookup cache of this loop
+    exports.getCacheStats = function() {
+        var cache = dns.cache();
+        return {
+            size: cache.size(),
+            hits: cache.getHits(),
+            negativeHits: cache.getNegativeHits(),
+            misses: cache.getMisses(),
+            coalesced: cache.getCoalesced()
+        };
+    }
+
+    exports.clearCache = function() {
+        dns.cache().clear();
+    }
+
     function RequestWrapper() {
     }
 
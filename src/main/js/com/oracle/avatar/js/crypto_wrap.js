@@ -128,6 +128,20 @@
             that.peer.setSessionId(sessionId);
         };
 
+        // extension, server session cache tuning
+        this.setSessionTimeout = function(seconds) {
+            that.peer.setSessionTimeout(seconds);
+        };
+
+        this.setSessionCacheSize = function(size) {
+            that.peer.setSessionCacheSize(size);
+        };
+
+        this.getSessionCacheStats = function() {
+            return { hits: that.peer.getSessionCacheHits(),
+                     misses: that.peer.getSessionCacheMisses() };
+        };
+
         this.loadPKCS12 = function(pfx) {
             var buffer = toBuffer(pfx);
             var passPhrase = null;
@@ -195,6 +209,13 @@
         };
     }
 
+    function checkPeer(peer) {
+        if (!peer) {
+            throw new Error('Not initialized');
+        }
+        return peer;
+    }
+
     function Hmac() {
         var that = this;
         this.init = function(algo, key) {
@@ -207,12 +228,15 @@
                 input_encoding = defaultEncoding;
             }
             var contentBuffer = toBuffer(content, input_encoding);
-            jBinding.update(that.peer, contentBuffer._impl);
+            jBinding.update(checkPeer(that.peer), contentBuffer._impl);
             return that;
         };
 
         this.digest = function(encoding) {
-            return toBufferorString(new Buffer(jBinding.doFinal(that.peer)), encoding);
+            // the Mac goes back to the pool
+            var result = jBinding.doFinal(checkPeer(that.peer));
+            that.peer = null;
+            return toBufferorString(new Buffer(result), encoding);
         };
     }
 
@@ -221,12 +245,33 @@
         this.peer = jBinding.newMessageDigest(algo);
         this.update = function(content, input_encoding) {
             var buff = toBuffer(content, input_encoding);
-            jBinding.update(that.peer, buff._impl);
+            jBinding.update(checkPeer(that.peer), buff._impl);
             return that;
         };
 
         this.digest = function(encoding) {
-            return toBufferorString(new Buffer(jBinding.digest(that.peer)), encoding);
+            // the MessageDigest goes back to the pool
+            var result = jBinding.digest(checkPeer(that.peer));
+            that.peer = null;
+            return toBufferorString(new Buffer(result), encoding);
+        };
+    }
+
+    // extension, ciphers into caller provided buffers.
+    // updateInto(buffer, offset, length, out, outOffset) and
+    // finalInto(out, outOffset) return the number of bytes written,
+    // outputSize(length) bounds it (length 0 for the final block).
+    function addStreaming(that) {
+        that.outputSize = function(length) {
+            return jBinding.getOutputSize(that.peer, length);
+        };
+
+        that.updateInto = function(buffer, offset, length, out, outOffset) {
+            return jBinding.update(that.peer, buffer._impl, offset, length, out._impl, outOffset || 0);
+        };
+
+        that.finalInto = function(out, outOffset) {
+            return jBinding.doFinal(that.peer, out._impl, outOffset || 0);
         };
     }
 
@@ -257,6 +302,8 @@
         this.setAutoPadding = function(pad) {
             that.peer.setAutoPadding(pad);
         };
+
+        addStreaming(that);
     }
 
     function Decipher() {
@@ -286,6 +333,8 @@
         this.setAutoPadding = function(pad) {
             that.peer.setAutoPadding(pad);
         };
+
+        addStreaming(that);
     }
 
     function DH(peer) {
@@ -394,6 +443,55 @@
         }
     }
 
+    // extension, one-shot digest of buffer[offset, offset + length) written
+    // at the start of out, returns the digest length.
+    function hash(algo, buffer, offset, length, out) {
+        return jBinding.hash(algo, buffer._impl, offset, length, out._impl);
+    }
+
+    // extension, one-shot HMAC, see hash.
+    function hmac(algo, key, buffer, offset, length, out) {
+        return jBinding.hmac(algo, toBuffer(key)._impl, buffer._impl, offset, length, out._impl);
+    }
+
+    function toImpls(buffers) {
+        var impls = [];
+        for (var i = 0; i < buffers.length; i++) {
+            impls.push(toBuffer(buffers[i])._impl);
+        }
+        return impls;
+    }
+
+    // extension, verifies signatures[i] of data[i] in the thread pool.
+    // keys is one PEM for all the signatures or one per signature.
+    // callback(err, results) with one boolean per signature.
+    function verifyAll(algo, keys, data, signatures, callback) {
+        var pems = [];
+        for (var i = 0; i < data.length; i++) {
+            pems.push((Array.isArray(keys) ? keys[i] : keys).toString());
+        }
+        jBinding.verifyAll(algo, pems, toImpls(data), toImpls(signatures), function(name, args) {
+            callback(args[0], args[0] ? undefined : Java.from(args[1]));
+        });
+    }
+
+    // extension, signs every data[i] with privKey in the thread pool.
+    // callback(err, signatures) with one Buffer per data.
+    function signAll(algo, privKey, data, callback) {
+        jBinding.signAll(algo, privKey.toString(), toImpls(data), function(name, args) {
+            if (args[0]) {
+                callback(args[0]);
+                return;
+            }
+            var signatures = [];
+            var impls = args[1];
+            for (var i = 0; i < impls.length; i++) {
+                signatures.push(new Buffer(impls[i]));
+            }
+            callback(null, signatures);
+        });
+    }
+
     exports.SecureContext = SecureContext;
     exports.Hmac = Hmac;
     exports.Hash = Hash;
@@ -406,6 +504,10 @@
     exports.PBKDF2 = PBKDF2;
     exports.randomBytes = randomBytes;
     exports.pseudoRandomBytes = pseudoRandomBytes;
+    exports.hash = hash;
+    exports.hmac = hmac;
+    exports.verifyAll = verifyAll;
+    exports.signAll = signAll;
 
     function checkSize(size) {
         if ((typeof size === "number")) {
@@ -424,7 +526,7 @@
     // TLS support
     // reqCert means client authentication, server only
     // serverName is for client side
-    // callbacks: onhandshakestart, onhandshakedone,
+    // callbacks: onhandshakestart, onhandshakedone, ontasksdone,
     // properties: handshakes, timer
     function Connection(secureContext, isServer, reqCertOrServerName, rejectUnauthorized) {
         var that = this;
@@ -473,6 +575,12 @@
             if (this.onhandshakestart) {
                 this.onhandshakestart();
             }
+            if (this.ontasksdone) {
+                // handshake tasks run in the thread pool, tls.js cycles the pair once they are done
+                that.peer.setTasksCallback(function() {
+                    that.ontasksdone();
+                });
+            }
             that.peer.start();
         };
 
@@ -35,68 +35,90 @@
       debug = function() { };
     }
 
+    // The parser executing, callbacks of the shared settings below are dispatched to it.
+    var current = null;
+
+    // One ParserSettings is shared by all the parsers of this event loop.
+    // execute() and finish() are synchronous, so the parser a callback belongs to
+    // is the one executing. This avoids a settings object and four closures per
+    // parser, and keeps the callback call sites monomorphic.
+    var settings = new ParserSettings(
+        // on_headers_complete
+        function(url, jheaders, method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade) {
+            var that = current;
+            // http.js only reads headers by index and length, the Java
+            // array is handed over as is rather than copied into a JS array.
+            // Well-known names are already lower cased and shared (see HeaderNames).
+            var info = {
+                headers : jheaders,
+                versionMinor : httpVersionMinor,
+                versionMajor : httpVersionMajor,
+                shouldKeepAlive : shouldKeepAlive,
+                upgrade : upgrade
+            };
+
+            if (that._type === HTTPParser.REQUEST) {
+                info.url = url;
+                info.method = method;
+            }
+            if (that._type === HTTPParser.RESPONSE) {
+                info.statusCode = status;
+            }
+
+            var response;
+            try {
+                response = that.onHeadersComplete(info);
+            } catch (e) {
+                debug(e.stack);
+                that._got_exception = e;
+                return -1;
+            }
+            return response ? 1 : 0;
+        },
+        // on_body
+        function(offset, length) {
+            var that = current;
+            try {
+                var bodyOffset = that._dataStart + offset;
+                that.onBody(that._data, bodyOffset, length);
+            } catch (e) {
+                debug(e.stack);
+                that._got_exception = e;
+                return -1;
+            }
+            return 0;
+        },
+        // on_message_complete
+        function() {
+            var that = current;
+            try {
+                that.onMessageComplete();
+            } catch (e) {
+                debug(e.stack);
+                that._got_exception = e;
+                return -1;
+            }
+            return 0;
+        },
+        // on_headers
+        function(url, jheaders) {
+            current.onHeaders(Java.from(jheaders), url);
+        });
+
     function HTTPParser(type) {
         this.reinitialize(type);
-        var that = this;
-        Object.defineProperty(this, '_settings', {
-            value : new ParserSettings(
-            // on_headers_complete
-            function(url, jheaders, method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade) {
-                var headers = Java.from(jheaders);
-                var info = {
-                    headers : headers,
-                    versionMinor : httpVersionMinor,
-                    versionMajor : httpVersionMajor,
-                    shouldKeepAlive : shouldKeepAlive,
-                    upgrade : upgrade
-                };
-
-                if (that._type === HTTPParser.REQUEST) {
-                    info.url = url;
-                    info.method = method;
-                }
-                if (that._type === HTTPParser.RESPONSE) {
-                    info.statusCode = status;
-                }
-
-                var response;
-                try {
-                    response = that.onHeadersComplete(info);
-                } catch (e) {
-                    debug(e.stack);
-                    that._got_exception = e;
-                    return -1;
-                }
-                return response ? 1 : 0;
-            },
-            // on_body
-            function(offset, length) {
-                try {
-                    var bodyOffset = that._dataStart + offset;
-                    that.onBody(that._data, bodyOffset, length);
-                } catch (e) {
-                    debug(e.stack);
-                    that._got_exception = e;
-                    return -1;
-                }
-                return 0;
-            },
-            // on_message_complete
-            function() {
-                try {
-                    that.onMessageComplete();
-                } catch (e) {
-                    debug(e.stack);
-                    that._got_exception = e;
-                    return -1;
-                }
-                return 0;
-            },
-            // on_headers
-            function(url, jheaders) {
-               that.onHeaders(Java.from(jheaders), url);
-            })
-        });
+    }
+
+    // Runs the parser with the shared settings, restoring the previous parser
+    // in case a callback executes another parser.
+    function execute(parser, buffer, start, length) {
+        var previous = current;
+        current = parser;
+        try {
+            return parser._parser.execute(settings, buffer, start, length);
+        } finally {
+            current = previous;
+        }
     }
 
     exports.HTTPParser = HTTPParser;
@@ -138,7 +160,7 @@
         this._got_exception = null;
         this._data = data;
         this._dataStart = start;
-        var nparsed = this._parser.execute(this._settings, data._impl.underlying(), start, length);
+        var nparsed = execute(this, data._impl.underlying(), start, length);
         this._data = null;
         this._dataStart = -1;
         if (this._got_exception)
@@ -161,7 +183,7 @@
     var FINISH_BUFFER = new Buffer(0)._impl.toByteBuffer()
     HTTPParser.prototype.finish = function() {
         this._got_exception = null;
-        var nparsed = this._parser.execute(this._settings, FINISH_BUFFER, 0, 0);
+        var nparsed = execute(this, FINISH_BUFFER, 0, 0);
         if (this._got_exception) {
             throw this._got_exception;
         }
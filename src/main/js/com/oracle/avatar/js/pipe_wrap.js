@@ -30,6 +30,17 @@
     var net = require("net");
     var dgram = require("dgram");
     var TCP = process.binding('tcp_wrap').TCP;
+    var WriteQueue = process.binding('tcp_wrap')._WriteQueue;
+    var WriteBatcher = process.binding('tcp_wrap')._WriteBatcher;
+    var onread = process.binding('tcp_wrap')._onread;
+    var handleOpened = process.binding('tcp_wrap')._handleOpened;
+    var handleClosed = process.binding('tcp_wrap')._handleClosed;
+    var handleAccepted = process.binding('tcp_wrap')._handleAccepted;
+    var handleStats = process.binding('tcp_wrap')._handleStats;
+    var setWriteLimit = process.binding('tcp_wrap')._setWriteLimit;
+    var sendFile = process.binding('tcp_wrap')._sendFile;
+    var completeSendFiles = process.binding('tcp_wrap')._completeSendFiles;
+    var cancelSendFiles = process.binding('tcp_wrap')._cancelSendFiles;
     var UDP = process.binding('udp_wrap').UDP;
 
     var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
@@ -51,6 +62,7 @@
     function Pipe(ipc, pipe) {
         events.EventEmitter.call(this);
         var that = this;
+        handleOpened(this);
 
         // User context, used to check accept permission.
         Object.defineProperty(this, '_callerContext', { value: AccessController.getContext() });
@@ -65,8 +77,7 @@
         this._pipe.readCallback = function(byteBuffer) {
             if (byteBuffer) {
                process._errno = undefined;
-               var data = new Buffer(new JavaBuffer(byteBuffer));
-               that.onread(data, 0, data.length);
+               onread(that, byteBuffer);
             } else {
                 var errno = 'EOF';
                 process._errno = errno;
@@ -122,10 +133,17 @@
                 var errno = nativeException.errnoString();
                 process._errno = errno;
             }
-            var wrapper = that._writeWrappers.shift();
+            var head = that._writeWrappers.peek();
+            if (head && head._sender) {
+                // a chunk of a file being sent
+                head._sender.written(status, nativeException);
+                return;
+            }
+            var wrapper = that._writeWrappers.complete(status);
             if (wrapper && wrapper.oncomplete) {
                 wrapper.oncomplete(status, that, wrapper);
             }
+            completeSendFiles(that);
         }
 
         this._pipe.connectCallback = function(status, nativeException) {
@@ -149,11 +167,18 @@
                     that._pipe.accept(clientHandle._pipe);
                 }
             }, that._callerContext);
+            if (status == -1) {
+                clientHandle.close();
+                that.onconnection(undefined);
+                return;
+            }
             clientHandle._pipe.readStart();
-            that.onconnection(status == -1 ? undefined : clientHandle);
+            handleAccepted();
+            that.onconnection(clientHandle);
         }
 
         this._pipe.closeCallback = function() {
+            handleClosed(that);
             if (that._closeCallback) {
                 // net.js, line 422, fireErrorCallbacks uses nextTick to do
                 // error handling. error handling MUST be handled before this close callback is called
@@ -172,10 +197,13 @@
             }
         }
 
-        Object.defineProperty(this, '_writeWrappers', { value: [] });
+        Object.defineProperty(this, '_writeWrappers', { value: new WriteQueue(this) });
+
+        Object.defineProperty(this, '_batcher', { value: new WriteBatcher(this._writeWrappers,
+            function(byteBuffer) { that._pipe.write(byteBuffer); }) });
 
         Object.defineProperty(this, 'writeQueueSize', { enumerable: true,
-            get : function() {  return that._pipe ? that._pipe.writeQueueSize() : 0 } } );
+            get : function() {  return that._pipe ? that._pipe.writeQueueSize() + that._batcher.bytes : 0 } } );
     }
 
     util.inherits(Pipe, events.EventEmitter);
@@ -218,10 +246,14 @@
     }
 
     Pipe.prototype.readStart = function() {
-        this._pipe.readStart();
+        this._readWanted = true;
+        if (!this._limitPaused) {
+            this._pipe.readStart();
+        }
     }
 
     Pipe.prototype.readStop = function() {
+        this._readWanted = false;
         this._pipe.readStop();
     }
 
@@ -239,6 +271,12 @@
                 send_handle = handle._udp;
             }
             var buffer  = new JavaBuffer(message, 'utf8');
+            if (this._batcher.held()) {
+                // handles are not queued behind a file being sent
+                process._errno = 'EBUSY';
+                return null;
+            }
+            this._batcher.flush();
             var wrapper = {bytes: buffer.array().length};
             this._writeWrappers.push(wrapper);
             this._pipe.write2(buffer.toStringContent(), send_handle);
@@ -249,10 +287,12 @@
 
     Pipe.prototype.writeBuffer = function(message) {
         if (message._impl) message = message._impl; // unwrap if necessary
-        var wrapper = {bytes: message.underlying().capacity()};
-        this._writeWrappers.push(wrapper);
-        this._pipe.write(message.underlying());
-        return wrapper;
+        return this._batcher.write(message.underlying());
+    }
+
+    // Writes buffers with one gather write, the returned wrapper completes once for all of them.
+    Pipe.prototype.writev = function(buffers) {
+        return this._batcher.writev(buffers);
     }
 
     Pipe.prototype._writeString = function(string, encoding) {
@@ -262,9 +302,14 @@
     }
 
     Pipe.prototype._writeStringLowerBytes = function(string) {
+        if (this._batcher.held()) {
+            // queued behind a file being sent
+            return this.writeBuffer(new JavaBuffer(string, 'binary'));
+        }
         // optimization - bypass the utf encoder if str does not have any multi-byte chars
         // in this case string.length == Buffer.byteLength(string, encoding)
         // only the lower byte of each char in input string is written
+        this._batcher.flush();
         var wrapper = {bytes: string.length};
         this._writeWrappers.push(wrapper);
         this._pipe.writeLowerBytes(string);
@@ -280,7 +325,10 @@
     }
 
     Pipe.prototype.close = function(callback) {
-        if (this._pipe) {
+        if (this._pipe && !this._closed) {
+            this._closed = true;
+            cancelSendFiles(this);
+            this._batcher.flush();
             this._pipe.readStop();
             this._pipe.close();
             if (callback) {
@@ -292,10 +340,27 @@
     Pipe.prototype.shutdown = function() {
         var wrapper = {};
         Object.defineProperty(this, '_shutdownWrapper', { value: wrapper });
-        this._pipe.closeWrite();
+        this._batcher.flush();
+        var pipe = this._pipe;
+        this._batcher.later(function() {
+            pipe.closeWrite();
+        });
         return wrapper;
     }
 
+    // Sends length bytes of the file open as fd from offset, or up to its end when length
+    // is -1 or undefined. The returned wrapper completes like the wrapper of a write.
+    Pipe.prototype.sendFile = function(fd, offset, length) {
+        return sendFile(this, this._pipe, fd, offset, length);
+    }
+
+    // bytes read and written by this handle, its queued write bytes and lifetime in ms
+    Pipe.prototype.getStats = function() {
+        return handleStats(this);
+    }
+
+    Pipe.prototype.setWriteLimit = setWriteLimit;
+
     Pipe.prototype.ref = function() {
       this._pipe.ref();
     }
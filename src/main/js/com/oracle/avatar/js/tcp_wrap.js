@@ -31,6 +31,7 @@
     var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
     var StringUtils = Packages.com.oracle.libuv.StringUtils;
     var TCPHandle = Packages.com.oracle.libuv.handles.TCPHandle;
+    var JavaHttpRouter = Packages.com.oracle.avatar.js.http.HttpRouter;
     var loop = __avatar.eventloop.loop();
     var factory = __avatar.eventloop.handleFactory();
 
@@ -41,17 +42,166 @@
     var avatarContext = __avatar.controlContext;
 
     exports.TCP = TCP;
+    exports._WriteQueue = WriteQueue;
+    exports._WriteBatcher = WriteBatcher;
+    exports._onread = onread;
+    exports._handleOpened = handleOpened;
+    exports._handleClosed = handleClosed;
+    exports._handleAccepted = handleAccepted;
+    exports._handleStats = handleStats;
+    exports.getConnectionMetrics = getConnectionMetrics;
+    exports._setWriteLimit = setWriteLimit;
+    exports._sendFile = sendFile;
+    exports._completeSendFiles = completeSendFiles;
+    exports._cancelSendFiles = cancelSendFiles;
+
+    // Gives the data of a stream read to handle.onread and counts it.
+    function onread(handle, byteBuffer) {
+        var length = byteBuffer.remaining();
+        handle._bytesRead += length;
+        if (counting) {
+            metrics.read(length);
+        }
+        handle.onread(new Buffer(new JavaBuffer(byteBuffer)), 0, length);
+    }
+
+    // Handle accounting, the totals of the loop are kept by ConnectionMetrics, also exported through JMX.
+    var metrics = __avatar.eventloop.connectionMetrics();
+    var counting = metrics.enabled();
+
+    function handleOpened(handle) {
+        Object.defineProperty(handle, '_openedAt', { value: Date.now() });
+        Object.defineProperty(handle, '_bytesRead', { value: 0, writable: true });
+        Object.defineProperty(handle, '_bytesWritten', { value: 0, writable: true });
+        Object.defineProperty(handle, '_closed', { value: false, writable: true });
+        Object.defineProperty(handle, '_queuedBytes', { value: 0, writable: true });
+        Object.defineProperty(handle, '_writeLimit', { value: socketWriteLimit, writable: true });
+        Object.defineProperty(handle, '_closeOnWriteLimit', { value: closeOnWriteLimit, writable: true });
+        Object.defineProperty(handle, '_limitPaused', { value: false, writable: true });
+        Object.defineProperty(handle, '_limitClosing', { value: false, writable: true });
+        Object.defineProperty(handle, '_readWanted', { value: true, writable: true });
+        if (counting) {
+            metrics.opened();
+        }
+    }
+
+    // Called from the close callback of the libuv handle, whoever closed it: close(),
+    // the http router or a failed accept.
+    function handleClosed(handle) {
+        handle._closed = true;
+        if (counting) {
+            metrics.closed(Date.now() - handle._openedAt);
+        }
+    }
+
+    function handleAccepted() {
+        if (counting) {
+            metrics.accepted();
+        }
+    }
+
+    function handleStats(handle) {
+        return {
+            bytesRead: handle._bytesRead,
+            bytesWritten: handle._bytesWritten,
+            writeQueueSize: handle.writeQueueSize,
+            lifetime: Date.now() - handle._openedAt
+        };
+    }
+
+    function getConnectionMetrics() {
+        return {
+            openHandles: metrics.getOpenHandles(),
+            closedHandles: metrics.getClosedHandles(),
+            acceptedConnections: metrics.getAcceptedConnections(),
+            averageLifetime: metrics.getAverageLifetime(),
+            bytesRead: metrics.getBytesRead(),
+            bytesWritten: metrics.getBytesWritten(),
+            queuedWriteBytes: metrics.getQueuedWriteBytes(),
+            writeLimitPauses: metrics.getWriteLimitPauses(),
+            writeLimitCloses: metrics.getWriteLimitCloses()
+        };
+    }
+
+    // Caps on queued write bytes, see WriteLimits. A handle over its cap, or any handle
+    // writing while the loop is over its cap, stops reading until its queue and the loop
+    // are back under half their caps, its owner then gets a drain event. With the close
+    // policy the handle is destroyed with ENOBUFS instead.
+    var limits = __avatar.eventloop.writeLimits();
+    var socketWriteLimit = limits.socketLimit();
+    var loopWriteLimit = limits.loopLimit();
+    var closeOnWriteLimit = limits.closeOnLimit();
+    var loopQueuedBytes = 0;
+    var pausedHandles = [];
+
+    function stream(handle) {
+        return handle._connection || handle._pipe;
+    }
+
+    function writeLimitExceeded(handle) {
+        if (handle._closeOnWriteLimit) {
+            if (!handle._limitClosing) {
+                handle._limitClosing = true;
+                metrics.writeLimitClosed();
+                // not while the write that went over the cap is being issued
+                process.nextTick(function() {
+                    var e = new Error('write queue limit exceeded');
+                    e.code = e.errno = 'ENOBUFS';
+                    if (handle.owner && handle.owner.destroy) {
+                        handle.owner.destroy(e);
+                    } else {
+                        handle.close();
+                    }
+                });
+            }
+            return;
+        }
+        if (!handle._limitPaused) {
+            handle._limitPaused = true;
+            pausedHandles.push(handle);
+            metrics.writeLimitPaused();
+            stream(handle).readStop();
+        }
+    }
+
+    function resumeHandles() {
+        var paused = pausedHandles;
+        pausedHandles = [];
+        paused.forEach(function(handle) {
+            if (handle._closed) {
+                return;
+            }
+            if (handle._writeLimit && handle._queuedBytes > handle._writeLimit / 2) {
+                pausedHandles.push(handle);
+                return;
+            }
+            handle._limitPaused = false;
+            // only reading resumes, 'drain' is the writable stream's own
+            if (handle._readWanted) {
+                stream(handle).readStart();
+            }
+        });
+    }
+
+    // Overrides the write cap of this handle, 0 for none, policy is 'pause' or 'close'.
+    function setWriteLimit(bytes, policy) {
+        this._writeLimit = bytes || 0;
+        if (policy !== undefined) {
+            this._closeOnWriteLimit = policy === 'close';
+        }
+    }
 
     function TCP(socket) {
 
-        Object.defineProperty(this, '_writeWrappers', { value: [] });
+        handleOpened(this);
+        Object.defineProperty(this, '_writeWrappers', { value: new WriteQueue(this) });
 
         // User context, used to check accept permission.
         Object.defineProperty(this, '_callerContext', { value: AccessController.getContext() });
 
         var that = this;
         Object.defineProperty(this, 'writeQueueSize', { enumerable: true,
-            get : function() { return that._connection ? that._connection.writeQueueSize() : 0 } });
+            get : function() { return that._connection ? that._connection.writeQueueSize() + that._batcher.bytes : 0 } });
 
         var clientHandle = AccessController.doPrivileged(new PrivilegedAction() {
             run: function() {
@@ -59,6 +209,9 @@
             }
         }, avatarContext, LibUVPermission.HANDLE);
 
+        Object.defineProperty(this, '_batcher', { value: new WriteBatcher(this._writeWrappers,
+            function(byteBuffer) { that._connection.write(byteBuffer); }) });
+
         this._connection.connectionCallback = function(status, nativeException) {
             if (status == -1) {
                 var errno = nativeException.errnoString();
@@ -71,9 +224,19 @@
                 }
             }, that._callerContext);
 
+            if (status == -1) {
+                clientHandle.close();
+                that.onconnection(undefined);
+                return;
+            }
             Object.defineProperty(clientHandle, '_connected', {value: true});
+            handleAccepted();
+            if (that._router) {
+                route(that, clientHandle);
+                return;
+            }
             clientHandle._connection.readStart();
-            that.onconnection(status == -1 ? undefined : clientHandle);
+            that.onconnection(clientHandle);
         }
 
         this._connection.connectCallback = function(status, nativeException) {
@@ -87,29 +250,41 @@
             that._connectWrapper.oncomplete(status, that, that._connectWrapper, true, true);
         }
 
-        this._connection.readCallback = function(byteBuffer) {
+        Object.defineProperty(this, '_readCallback', { value: function(byteBuffer) {
             if (byteBuffer) {
-                var buffer = new Buffer(new JavaBuffer(byteBuffer));
-                that.onread(buffer, 0, buffer.length);
+                onread(that, byteBuffer);
             } else {
                 var errno = loop.getLastError().errnoString();
                 process._errno = errno;
                 that.onread(undefined, 0, 0);
             }
-        }
+        }});
+        this._connection.readCallback = this._readCallback;
 
-        this._connection.writeCallback = function(status, nativeException) {
+        Object.defineProperty(this, '_writeCallback', { value: function(status, nativeException) {
             if (status == -1) {
                 var errno = nativeException.errnoString();
                 process._errno = errno;
             }
-            var wrapper = that._writeWrappers.shift();
+            var head = that._writeWrappers.peek();
+            if (head && head._sender) {
+                // a chunk of a file being sent
+                head._sender.written(status, nativeException);
+                return;
+            }
+            var wrapper = that._writeWrappers.complete(status);
             if (wrapper && wrapper.oncomplete) {
                 wrapper.oncomplete(status, that, wrapper);
             }
-        }
+            completeSendFiles(that);
+        }});
+        this._connection.writeCallback = this._writeCallback;
 
         this._connection.closeCallback = function() {
+            handleClosed(that);
+            if (that._routedBy) {
+                unrouted(that, true);
+            }
             if (that._closeCallback) {
                 // net.js, line 422, fireErrorCallbacks uses nextTick to do
                 // error handling. error handling MUST be handled before this close callback is called
@@ -197,21 +372,25 @@
     }
 
     TCP.prototype.readStart = function() {
-        if (this._connected) {
+        this._readWanted = true;
+        if (this._connected && !this._limitPaused) {
             this._connection.readStart();
         }
     }
 
     TCP.prototype.readStop = function() {
+        this._readWanted = false;
         this._connection.readStop();
     }
 
     TCP.prototype.writeBuffer = function(data) {
         if (data._impl) data = data._impl; // unwrap if necessary
-        var wrapper = {bytes: data.underlying().capacity()};
-        this._writeWrappers.push(wrapper);
-        this._connection.write(data.underlying());
-        return wrapper;
+        return this._batcher.write(data.underlying());
+    }
+
+    // Writes buffers with one gather write, the returned wrapper completes once for all of them.
+    TCP.prototype.writev = function(buffers) {
+        return this._batcher.writev(buffers);
     }
 
     TCP.prototype._writeString = function(string, encoding) {
@@ -219,9 +398,14 @@
     }
 
     TCP.prototype._writeStringLowerBytes = function(string) {
+        if (this._batcher.held()) {
+            // queued behind a file being sent
+            return this.writeBuffer(new JavaBuffer(string, 'binary'));
+        }
         // optimization - bypass the utf encoder if str does not have any multi-byte chars
         // in this case string.length == Buffer.byteLength(string, encoding)
         // only the lower byte of each char in input string is written
+        this._batcher.flush();
         var wrapper = {bytes: string.length};
         this._writeWrappers.push(wrapper);
         this._connection.writeLowerBytes(string);
@@ -234,13 +418,15 @@
         if (!ConsString) {
             ConsString = Packages.jdk.nashorn.internal.runtime.ConsString;
         }
-        if (string instanceof ConsString) {
+        if (string instanceof ConsString && !this._batcher.held()) {
+            this._batcher.flush();
             var wrapper = {bytes: string.length()};
             this._writeWrappers.push(wrapper);
             this._connection.write(string, encoding);
             return wrapper;
         }
 
+        string = String(string);
         return StringUtils.hasMultiByte(string, encoding) ?
             this._writeString(string, encoding) :
             this._writeStringLowerBytes(string);
@@ -283,7 +469,16 @@
     }
 
     TCP.prototype.close = function(cb) {
-        if (this._connection) {
+        if (this._connection && !this._closed) {
+            this._closed = true;
+            if (this._routedHandles) {
+                // the connections still answered by the router close with the server
+                this._routedHandles.slice().forEach(function(handle) {
+                    handle._routed.close();
+                });
+            }
+            cancelSendFiles(this);
+            this._batcher.flush();
             this._connection.readStop();
             this._connection.close();
             if (cb) {
@@ -295,10 +490,78 @@
     TCP.prototype.shutdown = function() {
         var wrapper = {};
         Object.defineProperty(this, '_shutdownWrapper', { value: wrapper });
-        this._connection.closeWrite();
+        this._batcher.flush();
+        var connection = this._connection;
+        this._batcher.later(function() {
+            connection.closeWrite();
+        });
         return wrapper;
     }
 
+    // Answers static routes of the connections accepted by this server in Java.
+    // See HttpRouter below, connections fully served by the router never
+    // reach net.js.
+    TCP.prototype.setRouter = function(router) {
+        Object.defineProperty(this, '_router', { value: router ? router._router : undefined,
+                                                 writable: true, configurable: true });
+        if (!this._routedHandles) {
+            Object.defineProperty(this, '_routedHandles', { value: [] });
+        }
+    }
+
+    // Requests for static routes are answered in Java, the connection is only given to
+    // net.js once a request needs script. Until then it is counted in the connections of
+    // the server, for maxConnections and close, and closed with the listening handle.
+    function route(serverHandle, clientHandle) {
+        var server = serverHandle.owner;
+        if (server && server.maxConnections && server._connections >= server.maxConnections) {
+            clientHandle.close();
+            return;
+        }
+        if (server) {
+            server._connections++;
+        }
+        Object.defineProperty(clientHandle, '_routedBy', { value: serverHandle, writable: true });
+        serverHandle._routedHandles.push(clientHandle);
+        var routed = serverHandle._router.attach(clientHandle._connection,
+            clientHandle._readCallback, clientHandle._writeCallback,
+            function() {
+                // net.js counts the connection from now on
+                unrouted(clientHandle, false);
+                serverHandle.onconnection(clientHandle);
+            });
+        Object.defineProperty(clientHandle, '_routed', { value: routed });
+        clientHandle._connection.readStart();
+    }
+
+    // A routed connection was forwarded to net.js or closed.
+    function unrouted(clientHandle, closed) {
+        var serverHandle = clientHandle._routedBy;
+        clientHandle._routedBy = null;
+        var handles = serverHandle._routedHandles;
+        handles.splice(handles.indexOf(clientHandle), 1);
+        var server = serverHandle.owner;
+        if (server) {
+            server._connections--;
+            if (closed && server._emitCloseIfDrained) {
+                server._emitCloseIfDrained();
+            }
+        }
+    }
+
+    // Sends length bytes of the file open as fd from offset, or up to its end when length
+    // is -1 or undefined. The returned wrapper completes like the wrapper of a write.
+    TCP.prototype.sendFile = function(fd, offset, length) {
+        return sendFile(this, this._connection, fd, offset, length);
+    }
+
+    // bytes read and written by this handle, its queued write bytes and lifetime in ms
+    TCP.prototype.getStats = function() {
+        return handleStats(this);
+    }
+
+    TCP.prototype.setWriteLimit = setWriteLimit;
+
     TCP.prototype.ref = function() {
         this._connection.ref();
     }
@@ -307,4 +570,604 @@
         this._connection.unref();
     }
 
+    // The write wrappers in flight, an array-backed ring completed in order by the write callback.
+    function WriteQueue(handle) {
+        this._handle = handle;
+        this._ring = new Array(16);
+        this._head = 0;
+        this.length = 0;
+    }
+
+    WriteQueue.prototype.push = function(wrapper) {
+        var ring = this._ring;
+        if (this.length === ring.length) {
+            var grown = new Array(ring.length * 2);
+            for (var i = 0; i < this.length; i++) {
+                grown[i] = ring[(this._head + i) % ring.length];
+            }
+            this._ring = ring = grown;
+            this._head = 0;
+        }
+        ring[(this._head + this.length) % ring.length] = wrapper;
+        this.length++;
+        if (!wrapper._queued) {
+            this.account(wrapper);
+        }
+    }
+
+    // Counts the bytes of a write against the caps. Writes batched or held by the
+    // WriteBatcher are counted when they are made, before they reach the queue.
+    WriteQueue.prototype.account = function(wrapper) {
+        wrapper._queued = true;
+        var handle = this._handle;
+        handle._queuedBytes += wrapper.bytes;
+        loopQueuedBytes += wrapper.bytes;
+        if (counting) {
+            metrics.queued(wrapper.bytes);
+        }
+        if ((handle._writeLimit && handle._queuedBytes > handle._writeLimit) ||
+            (loopWriteLimit && loopQueuedBytes > loopWriteLimit)) {
+            writeLimitExceeded(handle);
+        }
+    }
+
+    WriteQueue.prototype.peek = function() {
+        return this.length === 0 ? undefined : this._ring[this._head];
+    }
+
+    WriteQueue.prototype.shift = function() {
+        if (this.length === 0) {
+            return undefined;
+        }
+        var wrapper = this._ring[this._head];
+        this._ring[this._head] = undefined;
+        this._head = (this._head + 1) % this._ring.length;
+        this.length--;
+        return wrapper;
+    }
+
+    // Takes the wrapper of the write that completed and accounts for its bytes.
+    WriteQueue.prototype.complete = function(status) {
+        var wrapper = this.shift();
+        if (wrapper) {
+            var handle = this._handle;
+            handle._queuedBytes -= wrapper.bytes;
+            loopQueuedBytes -= wrapper.bytes;
+            if (status != -1) {
+                handle._bytesWritten += wrapper.bytes;
+            }
+            if (counting) {
+                metrics.written(wrapper.bytes, status != -1);
+            }
+            if (pausedHandles.length > 0 && !(loopWriteLimit && loopQueuedBytes > loopWriteLimit / 2)) {
+                resumeHandles();
+            }
+        }
+        return wrapper;
+    }
+
+    // Small buffers written in the same tick are gathered into one heap buffer and
+    // written once at the next tick, larger ones are written at once after the pending
+    // batch. A batch is one entry of the write queue and completes all of its wrappers.
+    // While a file is being sent the batcher is held, writes and deferred operations
+    // wait in order until it is released.
+    var GATHER_LIMIT = 16 * 1024;
+    var ByteBufferArray = Java.type('java.nio.ByteBuffer[]');
+
+    function WriteBatcher(queue, write) {
+        this._queue = queue;
+        this._write = write;
+        this._buffers = [];
+        this._wrappers = [];
+        this._scheduled = false;
+        this._held = null;
+        this.bytes = 0;
+    }
+
+    WriteBatcher.prototype.write = function(byteBuffer) {
+        var wrapper = {bytes: byteBuffer.remaining()};
+        this._queue.account(wrapper);
+        if (this._held) {
+            this._held.push({buffer: byteBuffer, wrapper: wrapper});
+            this.bytes += wrapper.bytes;
+            return wrapper;
+        }
+        return this._add(byteBuffer, wrapper);
+    }
+
+    WriteBatcher.prototype._add = function(byteBuffer, wrapper) {
+        if (wrapper.bytes >= GATHER_LIMIT) {
+            this.flush();
+            this._queue.push(wrapper);
+            this._write(byteBuffer);
+            return wrapper;
+        }
+        this._buffers.push(byteBuffer);
+        this._wrappers.push(wrapper);
+        this.bytes += wrapper.bytes;
+        if (this.bytes >= GATHER_LIMIT) {
+            this.flush();
+        } else if (!this._scheduled) {
+            this._scheduled = true;
+            var that = this;
+            process.nextTick(function() {
+                that._scheduled = false;
+                that.flush();
+            });
+        }
+        return wrapper;
+    }
+
+    WriteBatcher.prototype.writev = function(buffers) {
+        this.flush();
+        var byteBuffers = new ByteBufferArray(buffers.length);
+        for (var i = 0; i < buffers.length; i++) {
+            var data = buffers[i];
+            if (!Buffer.isBuffer(data)) {
+                data = new Buffer(String(data));
+            }
+            byteBuffers[i] = data._impl.underlying();
+        }
+        var gathered = JavaBuffer.gather(byteBuffers);
+        var wrapper = {bytes: gathered.remaining()};
+        this._queue.account(wrapper);
+        if (this._held) {
+            this._held.push({buffer: gathered, wrapper: wrapper});
+            this.bytes += wrapper.bytes;
+            return wrapper;
+        }
+        this._queue.push(wrapper);
+        this._write(gathered);
+        return wrapper;
+    }
+
+    WriteBatcher.prototype.flush = function() {
+        var count = this._buffers.length;
+        if (count === 0 || this._held) {
+            return;
+        }
+        var buffers = this._buffers;
+        var wrappers = this._wrappers;
+        var bytes = this.bytes;
+        this._buffers = [];
+        this._wrappers = [];
+        this.bytes = 0;
+        if (count === 1) {
+            this._queue.push(wrappers[0]);
+            this._write(buffers[0]);
+            return;
+        }
+        var batch = {
+            bytes: bytes,
+            _queued: true,
+            oncomplete: function(status, handle) {
+                for (var i = 0; i < count; i++) {
+                    var wrapper = wrappers[i];
+                    if (wrapper.oncomplete) {
+                        wrapper.oncomplete(status, handle, wrapper);
+                    }
+                }
+            }
+        };
+        this._queue.push(batch);
+        this._write(JavaBuffer.gather(Java.to(buffers, ByteBufferArray)));
+    }
+
+    WriteBatcher.prototype.held = function() {
+        return this._held !== null;
+    }
+
+    // Runs fn now, or once the batcher is released when it is held.
+    WriteBatcher.prototype.later = function(fn) {
+        if (this._held) {
+            this._held.push({fn: fn});
+        } else {
+            fn();
+        }
+    }
+
+    WriteBatcher.prototype.hold = function() {
+        this.flush();
+        this._held = [];
+    }
+
+    // Writes what waited for the release in order, until an operation holds the batcher again.
+    WriteBatcher.prototype.release = function() {
+        var held = this._held;
+        this._held = null;
+        while (held && held.length > 0) {
+            var op = held.shift();
+            if (op.fn) {
+                this.flush();
+                op.fn();
+            } else {
+                this.bytes -= op.wrapper.bytes;
+                this._add(op.buffer, op.wrapper);
+            }
+            if (this._held) {
+                this._held = held.concat(this._held);
+                return;
+            }
+        }
+    }
+
+    // libuv-java has no uv_fs_sendfile and does not expose socket descriptors, the file is
+    // read with libuv into direct buffers written to the stream by FileSender. Writes made
+    // while the file is being sent are queued behind it.
+    var FileSender = Packages.com.oracle.avatar.js.stream.FileSender;
+    var sendFiles = null; // Files shared by the senders of this loop, created on first use
+
+    function sendFile(handle, stream, fd, offset, length) {
+        if (length === undefined || length === null) {
+            length = -1;
+        }
+        var wrapper = {bytes: length < 0 ? 0 : length};
+        var start = function() {
+            if (handle._closed) {
+                return;
+            }
+            if (!sendFiles) {
+                sendFiles = AccessController.doPrivileged(new PrivilegedAction() {
+                    run: function() {
+                        return factory.newFiles();
+                    }
+                }, avatarContext, LibUVPermission.HANDLE);
+                sendFiles.setReadCallback(FileSender.READ_CALLBACK);
+            }
+            handle._batcher.hold();
+            var starting = true;
+            wrapper._sender = new FileSender(sendFiles, stream, fd, offset || 0, length, function(name, args) {
+                var error = args[0];
+                if (error) {
+                    wrapper._status = -1;
+                    wrapper._errno = error.errnoString ? error.errnoString() : 'EIO';
+                } else {
+                    wrapper._status = 0;
+                }
+                if (starting) {
+                    // nothing to send or a failed first read, the caller has not
+                    // yet received the wrapper
+                    process.nextTick(function() {
+                        completeSendFiles(handle);
+                    });
+                    return;
+                }
+                completeSendFiles(handle);
+            });
+            handle._writeWrappers.push(wrapper);
+            wrapper._sender.start();
+            starting = false;
+        }
+        handle._batcher.later(start);
+        return wrapper;
+    }
+
+    // Completes the file sends that finished at the head of the write queue of handle.
+    // The length queued for a send is the requested one, it is replaced by the bytes
+    // actually sent before the write queue accounts for them.
+    function completeSendFiles(handle) {
+        var queue = handle._writeWrappers;
+        var head = queue.peek();
+        while (head && head._sender && head._sender.finished()) {
+            if (head._status == -1) {
+                process._errno = head._errno;
+            }
+            var sent = Number(head._sender.sent());
+            var delta = sent - head.bytes;
+            if (delta != 0) {
+                handle._queuedBytes += delta;
+                loopQueuedBytes += delta;
+                if (counting) {
+                    metrics.queued(delta);
+                }
+                head.bytes = sent;
+            }
+            queue.complete(head._status);
+            handle._batcher.release();
+            if (head.oncomplete) {
+                head.oncomplete(head._status, handle, head);
+            }
+            head = queue.peek();
+        }
+    }
+
+    // Stops reading the files being sent when handle closes, their chunks still complete.
+    function cancelSendFiles(handle) {
+        var queue = handle._writeWrappers;
+        for (var i = 0; i < queue.length; i++) {
+            var wrapper = queue._ring[(queue._head + i) % queue._ring.length];
+            if (wrapper._sender) {
+                wrapper._sender.cancel();
+            }
+        }
+        handle._batcher.release();
+    }
+    exports.connectRace = connectRace;
+    exports.getConnectStats = getConnectStats;
+
+    // Happy eyeballs (RFC 8305) for outbound connections. The resolved addresses
+    // of host are interleaved by family and tried with staggered starts, a failed
+    // attempt starts the next one at once. The first attempt to connect wins and
+    // the others are closed.
+    // var tcp = process.binding('tcp_wrap');
+    // tcp.connectRace('example.com', 80, {delay: 250}, function(err, handle, info) {
+    //     var socket = new net.Socket({handle: handle, readable: true, writable: true});
+    // });
+    // options are delay, the ms between two attempts, family, 4 or 6 to use only one, and
+    // addresses, to try instead of the resolved ones.
+    // net.connect({host: 'example.com', port: 80, race: true}) connects this way, race can
+    // also be {delay: ms}.
+    var ATTEMPT_DELAY = 250;
+    var MIN_ATTEMPT_DELAY = 10;
+    var MAX_STATS = 1024;
+
+    // per address connect attempts and latencies, oldest addresses are dropped first
+    var connectStats = {};
+    var connectStatsSize = 0;
+
+    function connectRace(host, port, options, callback) {
+        if (typeof options === 'function') {
+            callback = options;
+            options = {};
+        }
+        options = options || {};
+        var delay = options.delay === undefined ? ATTEMPT_DELAY : Math.max(options.delay, MIN_ATTEMPT_DELAY);
+        var family = options.family;
+        var cares = process.binding('cares_wrap');
+
+        var start = function(addresses) {
+            addresses = interleave(addresses.filter(function(address) {
+                return !family || cares.isIP(address) === family;
+            }));
+            if (addresses.length === 0) {
+                callback(connectError('ENOTFOUND'));
+                return;
+            }
+            new Race(addresses, port, delay, callback).next();
+        }
+
+        if (options.addresses) {
+            var addresses = options.addresses.slice();
+            process.nextTick(function() { start(addresses); });
+            return;
+        }
+        if (cares.isIP(host)) {
+            process.nextTick(function() { start([host]); });
+            return;
+        }
+        var wrapper = cares.getaddrinfo(host, family || 0);
+        wrapper.oncomplete = function(addresses) {
+            if (addresses) {
+                start(addresses);
+            } else {
+                callback(connectError(process._errno));
+            }
+        }
+    }
+
+    function getConnectStats() {
+        var result = {};
+        for (var address in connectStats) {
+            var stats = connectStats[address];
+            result[address] = {
+                attempts: stats.attempts,
+                connected: stats.connected,
+                failed: stats.failed,
+                cancelled: stats.cancelled,
+                lastLatency: stats.lastLatency,
+                averageLatency: stats.connected ? stats.totalLatency / stats.connected : 0
+            };
+        }
+        return result;
+    }
+
+    function statsFor(address) {
+        var stats = connectStats[address];
+        if (!stats) {
+            if (connectStatsSize === MAX_STATS) {
+                for (var oldest in connectStats) {
+                    delete connectStats[oldest];
+                    break;
+                }
+            } else {
+                connectStatsSize++;
+            }
+            stats = connectStats[address] = {attempts: 0, connected: 0, failed: 0, cancelled: 0,
+                                              lastLatency: 0, totalLatency: 0};
+        }
+        return stats;
+    }
+
+    function connectError(errno) {
+        var e = new Error('connect ' + errno);
+        e.code = e.errno = errno;
+        e.syscall = 'connect';
+        return e;
+    }
+
+    function isIPv6(address) {
+        return address.indexOf(':') >= 0;
+    }
+
+    // Alternates families, starting with the family of the first (preferred) address.
+    function interleave(addresses) {
+        var preferred = [];
+        var other = [];
+        var seen = {};
+        var v6 = addresses.length > 0 && isIPv6(addresses[0]);
+        addresses.forEach(function(address) {
+            if (!seen[address]) {
+                seen[address] = true;
+                (isIPv6(address) === v6 ? preferred : other).push(address);
+            }
+        });
+        var result = [];
+        for (var i = 0; i < preferred.length || i < other.length; i++) {
+            if (i < preferred.length) result.push(preferred[i]);
+            if (i < other.length) result.push(other[i]);
+        }
+        return result;
+    }
+
+    function Race(addresses, port, delay, callback) {
+        this.addresses = addresses;
+        this.port = port;
+        this.delay = delay;
+        this.callback = callback;
+        this.index = 0;
+        this.pending = [];
+        this.timer = null;
+        this.done = false;
+        this.errno = undefined;
+    }
+
+    Race.prototype.next = function() {
+        if (this.timer) {
+            clearTimeout(this.timer);
+            this.timer = null;
+        }
+        if (this.done) {
+            return;
+        }
+        if (this.index === this.addresses.length) {
+            if (this.pending.length === 0) {
+                this.done = true;
+                this.callback(connectError(this.errno));
+            }
+            return;
+        }
+
+        var race = this;
+        var address = this.addresses[this.index++];
+        var attempt = {address: address, handle: new TCP(), start: Date.now(), cancelled: false};
+        statsFor(address).attempts++;
+        var wrapper = isIPv6(address) ?
+            attempt.handle.connect6(address, this.port) :
+            attempt.handle.connect(address, this.port);
+        if (!wrapper) {
+            statsFor(address).failed++;
+            this.errno = process._errno;
+            attempt.handle.close();
+            this.next();
+            return;
+        }
+        wrapper.oncomplete = function(status) {
+            race.complete(attempt, status);
+        }
+        this.pending.push(attempt);
+        if (this.index < this.addresses.length) {
+            this.timer = setTimeout(function() { race.next(); }, this.delay);
+        }
+    }
+
+    Race.prototype.complete = function(attempt, status) {
+        if (attempt.cancelled) {
+            return;
+        }
+        this.pending.splice(this.pending.indexOf(attempt), 1);
+        var stats = statsFor(attempt.address);
+        if (status === -1) {
+            stats.failed++;
+            this.errno = process._errno;
+            attempt.handle.close();
+            this.next();
+            return;
+        }
+
+        var latency = Date.now() - attempt.start;
+        stats.connected++;
+        stats.lastLatency = latency;
+        stats.totalLatency += latency;
+        this.done = true;
+        if (this.timer) {
+            clearTimeout(this.timer);
+            this.timer = null;
+        }
+        this.pending.forEach(function(loser) {
+            loser.cancelled = true;
+            statsFor(loser.address).cancelled++;
+            loser.handle.close();
+        });
+        this.pending.length = 0;
+        // reading starts once the handle is given to a socket
+        attempt.handle.readStop();
+        this.callback(null, attempt.handle, {
+            address: attempt.address,
+            port: this.port,
+            family: isIPv6(attempt.address) ? 'IPv6' : 'IPv4',
+            latency: latency,
+            attempts: this.index
+        });
+    }
+
+    exports.connectionPool = connectionPool;
+    exports.keepAlive = keepAlive;
+    exports.getPoolStats = getPoolStats;
+
+    // The ConnectionPool of the loop, idle keep-alive sockets of the agents of the
+    // _http_pool module. Evicted sockets are destroyed.
+    var pool = __avatar.eventloop.connectionPool();
+    pool.setEvictCallback(function(name, args) {
+        args[0].destroy();
+    });
+
+    function connectionPool() {
+        return pool;
+    }
+
+    // true with -Davatar-js.http.keepalive=true, the global agent of http is then pooled
+    function keepAlive() {
+        return pool.keepAlive();
+    }
+
+    function getPoolStats() {
+        return {
+            hits: pool.hits(),
+            misses: pool.misses(),
+            hitRate: pool.hitRate(),
+            idle: pool.idle(),
+            evictions: pool.evictions(),
+            failedChecks: pool.failedChecks()
+        };
+    }
+
+    exports.HttpRouter = HttpRouter;
+
+    // Static HTTP routes answered on the event loop thread without calling into script.
+    // var router = new (process.binding('tcp_wrap').HttpRouter)();
+    // router.addStatic('/health', 200, 'text/plain', 'OK');
+    // server.listen(port, function() { server._handle.setRouter(router); });
+    // Routed connections idle for 2 minutes are closed, see setTimeout.
+    function HttpRouter() {
+        Object.defineProperty(this, '_router', { value: new JavaHttpRouter(__avatar.eventloop) });
+    }
+
+    // Closes the routed connections idle for ms, 0 for never.
+    HttpRouter.prototype.setTimeout = function(ms) {
+        this._router.setIdleTimeout(ms || 0);
+    }
+
+    HttpRouter.prototype.addStatic = function(path, statusCode, contentType, body) {
+        if (!Buffer.isBuffer(body)) {
+            body = new Buffer(body === undefined ? '' : String(body));
+        }
+        var reason = require('http').STATUS_CODES[statusCode] || 'unknown';
+        this._router.addStatic(path, statusCode, reason, contentType || null, body._impl);
+    }
+
+    HttpRouter.prototype.addFile = function(path, file, contentType) {
+        this._router.addFile(path, file, contentType || null);
+    }
+
+    HttpRouter.prototype.remove = function(path) {
+        return this._router.removeRoute(path);
+    }
+
+    HttpRouter.prototype.stats = function() {
+        return {
+            requestsServed: this._router.requestsServed(),
+            connectionsForwarded: this._router.connectionsForwarded()
+        };
+    }
+
 });
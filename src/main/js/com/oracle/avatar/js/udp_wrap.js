@@ -27,6 +27,9 @@
 
     var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
     var UDPHandle = Packages.com.oracle.libuv.handles.UDPHandle;
+    var DatagramBatch = Packages.com.oracle.avatar.js.udp.DatagramBatch;
+    var SendException = Packages.com.oracle.avatar.js.udp.DatagramBatch.SendException;
+    var IndexOutOfBoundsException = java.lang.IndexOutOfBoundsException;
     var loop = __avatar.eventloop.loop();
     var factory = __avatar.eventloop.handleFactory();
     var AccessController = java.security.AccessController;
@@ -49,17 +52,28 @@
         }, avatarContext, LibUVPermission.HANDLE);
 
 
-        this._udp.recvCallback = function(nread, data, rinfo) {
+        Object.defineProperty(this, '_recvCallback', { value: function(nread, data, rinfo) {
             var buffer = new Buffer(new JavaBuffer(data));
             that.onmessage(that, buffer, 0, buffer.length, { address: rinfo.getIp(), port: rinfo.getPort() })
-        }
+        }});
+        this._udp.recvCallback = this._recvCallback;
 
         this._udp.sendCallback = function(status, nativeException) {
             if (status == -1) {
                 var errno = nativeException.errnoString();
                 process._errno = errno;
             }
-            var wrapper = that._writeWrappers.shift();
+            var wrapper = that._writeWrappers[0];
+            if (wrapper && wrapper._pending > 1) {
+                // a batch completes with its last datagram
+                wrapper._pending--;
+                wrapper._status = status == -1 ? -1 : wrapper._status;
+                return;
+            }
+            that._writeWrappers.shift();
+            if (wrapper && wrapper._status == -1) {
+                status = -1;
+            }
             if (wrapper && wrapper.oncomplete) {
                 wrapper.oncomplete(status, that, wrapper, wrapper._buffer);
             }
@@ -102,6 +116,89 @@
         return wrapper;
     }
 
+    // Sends count datagrams of buffer to one destination, datagram i is at offsets[i] and has
+    // lengths[i] bytes. The returned wrapper completes once, after the last datagram is sent.
+    UDP.prototype.sendBatch = function(buffer, offsets, lengths, count, port, ip) {
+        return this._sendBatch(false, buffer, offsets, lengths, count, port, ip);
+    }
+
+    UDP.prototype.sendBatch6 = function(buffer, offsets, lengths, count, port, ip) {
+        return this._sendBatch(true, buffer, offsets, lengths, count, port, ip);
+    }
+
+    UDP.prototype._sendBatch = function(ipv6, buffer, offsets, lengths, count, port, ip) {
+        var wrapper = {_buffer: buffer, _pending: count, _status: 0};
+        if (count === 0) {
+            var that = this;
+            process.nextTick(function() {
+                if (wrapper.oncomplete) {
+                    wrapper.oncomplete(0, that, wrapper, buffer);
+                }
+            });
+            return wrapper;
+        }
+        this._writeWrappers.push(wrapper);
+        try {
+            DatagramBatch.send(this._udp, ipv6, buffer._impl, offsets, lengths, count, port, ip);
+        } catch (err) {
+            var sent = err instanceof SendException ? err.sent() : 0;
+            if (sent === 0) {
+                // nothing will complete
+                this._writeWrappers.pop();
+            } else {
+                // completes with the datagrams sent
+                wrapper._pending = sent;
+                wrapper._status = -1;
+            }
+            var cause = err instanceof SendException ? err.getCause() : err;
+            if (cause instanceof IndexOutOfBoundsException) {
+                throw new RangeError(cause.getMessage());
+            }
+            if (!cause.errnoString) {
+                throw cause;
+            }
+            throw newError(cause);
+        }
+        return wrapper;
+    }
+
+    // Receives datagrams in batches instead of one onmessage call each, see DatagramBatch.
+    // onbatch(buffer, count, offsets, lengths, addresses, ports) is called at most once per
+    // loop iteration, datagram i is buffer.slice(offsets[i], offsets[i] + lengths[i]) and was
+    // sent by addresses[i]:ports[i]. Slices are views of buffer, which is reused with the
+    // arrays once onbatch returns, a datagram kept longer must be copied.
+    UDP.prototype.recvBatchStart = function(onbatch) {
+        var that = this;
+        if (!this._batch) {
+            var buffer;
+            var callback = function(name, args) {
+                var batch = args[0];
+                if (!buffer) {
+                    buffer = new Buffer(batch.data());
+                }
+                that._onbatch(buffer, batch.count(), batch.offsets(), batch.lengths(), batch.addresses(), batch.ports());
+            }
+            AccessController.doPrivileged(new PrivilegedAction() {
+                run: function() {
+                    Object.defineProperty(that, '_batch', { value: new DatagramBatch(factory, that._udp, callback) });
+                }
+            }, avatarContext, LibUVPermission.HANDLE);
+        }
+        Object.defineProperty(this, '_onbatch', { value: onbatch, writable: true });
+        this._batch.start();
+        return this._udp.recvStart();
+    }
+
+    // Delivers the datagrams received so far and goes back to onmessage.
+    UDP.prototype.recvBatchStop = function() {
+        var result = this._udp.recvStop();
+        if (this._batch) {
+            this._batch.stop();
+            this._udp.recvCallback = this._recvCallback;
+        }
+        return result;
+    }
+
     UDP.prototype.recvStart = function() {
         this._udp.recvStart();
     }
@@ -111,6 +208,9 @@
     }
 
     UDP.prototype.close = function() {
+        if (this._batch) {
+            this._batch.close();
+        }
         this._udp.close();
     }
 
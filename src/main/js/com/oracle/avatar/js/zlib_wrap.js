@@ -111,6 +111,18 @@
             return new Packages.com.oracle.avatar.js.zlib.Unzip(__avatar.eventloop);
         }
     }
+
+    function Lz4() {
+        this.createPeer = function() {
+            return new Packages.com.oracle.avatar.js.zlib.Lz4(__avatar.eventloop);
+        }
+    }
+
+    function UnLz4() {
+        this.createPeer = function() {
+            return new Packages.com.oracle.avatar.js.zlib.UnLz4(__avatar.eventloop);
+        }
+    }
     exports.GZIP    = new Gzip();
     exports.DEFLATE = new Deflate();
     exports.DEFLATERAW = new DeflateRaw();
@@ -118,6 +130,9 @@
     exports.INFLATE = new Inflate();
     exports.INFLATERAW = new InflateRaw();
     exports.UNZIP    = new Unzip();
+    // LZ4 frame format, not part of node's zlib binding.
+    exports.LZ4 = new Lz4();
+    exports.UNLZ4 = new UnLz4();
 
     function init(windowBits,
         level,
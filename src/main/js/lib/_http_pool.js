@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Keep-alive http agent over the ConnectionPool of the loop, the http.Agent of node
+// destroys a socket once no request waits for it. A socket freed by its response is
+// checked in, idle and unref'ed, and checked out last in first out by the next request
+// of the same agent to the same host:port, and for tls the same server name. Sockets
+// are never shared between agents, their tls options (ca, cert, rejectUnauthorized)
+// are the agent's. Requests beyond the pool's maximum per host wait for a socket like
+// with http.Agent.
+//   var agent = require('_http_pool').createAgent({secure: false});
+//   http.get({host: 'example.com', path: '/', agent: agent}, ...);
+// With -Davatar-js.http.keepalive=true the global agent of http is one of these.
+
+var util = require('util');
+var tcp = process.binding('tcp_wrap');
+
+var connectionPool = tcp.connectionPool();
+var PooledAgent; // defined on first use, http creates its global agent from here
+var agentIds = 0;
+
+exports.createAgent = createAgent;
+exports.keepAlive = tcp.keepAlive;
+exports.getPoolStats = tcp.getPoolStats;
+
+function createAgent(options) {
+    if (!PooledAgent) {
+        PooledAgent = definePooledAgent(require('http'));
+    }
+    return new PooledAgent(options);
+}
+
+function definePooledAgent(http) {
+    function PooledAgent(options) {
+        options = options || {};
+        http.Agent.call(this, options);
+        Object.defineProperty(this, '_poolId', { value: ++agentIds });
+        this._secure = !!options.secure;
+        if (this._secure) {
+            this.createConnection = require('https').globalAgent.createConnection;
+            this.defaultPort = 443;
+        }
+        // replaces the listener of http.Agent that destroys the free socket
+        this.removeAllListeners('free');
+        this.on('free', this._free);
+    }
+    util.inherits(PooledAgent, http.Agent);
+
+    PooledAgent.prototype._key = function(host, port, localAddress, servername) {
+        var key = this._poolId + ':' + host + ':' + port + ':' + this._secure;
+        if (this._secure) {
+            key += ':' + servername;
+        }
+        return localAddress ? key + ':' + localAddress : key;
+    }
+
+    PooledAgent.prototype.addRequest = function(req, host, port, localAddress) {
+        var key = this._key(host, port, localAddress, serverName(req, host));
+        var socket = connectionPool.checkout(key, healthy);
+        if (socket) {
+            socket.removeListener('error', ignoreError);
+            rawSocket(socket).ref();
+            req.onSocket(socket);
+        } else if (connectionPool.reserve(key)) {
+            req.onSocket(this.createSocket(key, host, port, localAddress, req));
+        } else {
+            if (!this.requests[key]) {
+                this.requests[key] = [];
+            }
+            this.requests[key].push(req);
+        }
+    }
+
+    // the socket keeps its key, its server name is not passed along with 'free'
+    PooledAgent.prototype.createSocket = function(key, host, port, localAddress, req) {
+        var socket = http.Agent.prototype.createSocket.apply(this, arguments);
+        Object.defineProperty(socket, '_poolKey', { value: key });
+        return socket;
+    }
+
+    PooledAgent.prototype._free = function(socket, host, port, localAddress) {
+        var key = socket._poolKey;
+        var requests = this.requests[key];
+        if (requests && requests.length) {
+            requests.shift().onSocket(socket);
+            if (requests.length === 0) {
+                delete this.requests[key];
+            }
+        } else if (healthy(socket) && connectionPool.checkin(key, socket)) {
+            // errors of an idle socket are followed by its close
+            socket.on('error', ignoreError);
+            rawSocket(socket).unref();
+        } else {
+            socket.destroy();
+        }
+    }
+
+    // sockets are created with the key as name, see addRequest
+    PooledAgent.prototype.removeSocket = function(socket, key, host, port, localAddress) {
+        var sockets = this.sockets[key];
+        if (sockets) {
+            var index = sockets.indexOf(socket);
+            if (index !== -1) {
+                sockets.splice(index, 1);
+                if (sockets.length === 0) {
+                    delete this.sockets[key];
+                }
+            }
+        }
+        connectionPool.closed(key, socket);
+        var requests = this.requests[key];
+        if (requests && requests.length && connectionPool.reserve(key)) {
+            this.createSocket(key, host, port, localAddress, requests[0]).emit('free');
+        }
+    }
+
+    return PooledAgent;
+}
+
+// as http.Agent.createSocket names the tls server
+function serverName(req, host) {
+    var hostHeader = req.getHeader('host');
+    return hostHeader ? hostHeader.replace(/:.*$/, '') : host;
+}
+
+function healthy(socket) {
+    return !socket.destroyed && socket.writable && !!rawSocket(socket)._handle;
+}
+
+function ignoreError() {
+}
+
+// the net.Socket under a tls cleartext stream
+function rawSocket(socket) {
+    return socket.socket || socket;
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.nio.charset.StandardCharsets;
+
+import com.oracle.avatar.js.buffer.Buffer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the slices of heap and direct buffers.
+ *
+ */
+public class BufferTest {
+
+    @Test
+    public void testHeapSlice() throws Exception {
+        final Buffer parent = Buffer.wrap("0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII));
+        final Buffer slice = parent.slice(10, 20);
+        Assert.assertEquals(slice.capacity(), 10);
+
+        // the bytes of the slice, not of its parent
+        Assert.assertEquals(new String(slice.array(), StandardCharsets.US_ASCII), "abcdefghij");
+        Assert.assertEquals(slice.toString("UTF-8", 2, 3), "cde");
+        Assert.assertEquals(slice.toStringContent(StandardCharsets.US_ASCII, 1, 4), "bcd");
+        Assert.assertEquals(slice.slice(5, 7).toString("UTF-8", 0, 2), "fg");
+
+        // the slice shares the bytes of its parent
+        parent.setByteAt(11, 'B');
+        Assert.assertEquals(slice.toString("UTF-8", 0, 3), "aBc");
+
+        // filling the slice fills its region of the parent only
+        slice.fill(0.0, 0, 10);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(parent.getByteAt(i), '0' + i);
+            Assert.assertEquals(parent.getByteAt(10 + i), 0);
+        }
+        Assert.assertEquals(slice.array(), new byte[10]);
+
+        final Buffer target = new Buffer(4);
+        Assert.assertEquals(parent.slice(2, 6).copy(target, 0, 0, 4), 4);
+        Assert.assertEquals(target.toString("UTF-8", 0, 4), "2345");
+    }
+
+    @Test
+    public void testWholeArray() {
+        final byte[] bytes = {1, 2, 3};
+        // a buffer spanning its whole array hands it out as is
+        Assert.assertSame(Buffer.wrap(bytes).array(), bytes);
+        Assert.assertSame(Buffer.wrap(bytes).slice(0, 3).array(), bytes);
+    }
+
+    @Test
+    public void testDirectSlice() throws Exception {
+        final Buffer parent = new Buffer(20);
+        for (int i = 0; i < 20; i++) {
+            parent.setByteAt(i, 'a' + i);
+        }
+        final Buffer slice = parent.slice(5, 10);
+        Assert.assertEquals(new String(slice.array(), StandardCharsets.US_ASCII), "fghij");
+        slice.fill(0.0, 1, 3);
+        Assert.assertEquals(parent.getByteAt(5), 'f');
+        Assert.assertEquals(parent.getByteAt(6), 0);
+        Assert.assertEquals(parent.getByteAt(7), 0);
+        Assert.assertEquals(parent.getByteAt(8), 'i');
+        Assert.assertEquals(parent.getByteAt(0), 'a');
+
+        // regions do not depend on the position of the buffer
+        parent.position(15);
+        final Buffer target = new Buffer(8);
+        Assert.assertEquals(parent.copy(target, 2, 10, 15), 5);
+        Assert.assertEquals(target.toString("UTF-8", 2, 5), "klmno");
+        Assert.assertEquals(parent.toString("UTF-8", 11, 3), "lmn");
+        Assert.assertEquals(parent.position(), 15);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.File;
+import java.io.StringReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.oracle.avatar.js.Server;
+import com.oracle.avatar.js.dns.DNSMessage;
+import com.oracle.avatar.js.dns.ResolverConfig;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the DNS stub resolver, against a local stub server.
+ *
+ */
+public class DNSTest {
+
+    @Test
+    public void testMessage() throws Exception {
+        final ByteBuffer query = DNSMessage.query(0x1234, "www.example.com", DNSMessage.TYPE_A);
+        final DNSMessage parsed = DNSMessage.parse(query);
+        Assert.assertEquals(parsed.id(), 0x1234);
+        Assert.assertFalse(parsed.isResponse());
+        Assert.assertEquals(parsed.question(), "www.example.com");
+        Assert.assertEquals(parsed.questionType(), DNSMessage.TYPE_A);
+
+        final List<DNSMessage.Record> answers = new ArrayList<>();
+        answers.add(new DNSMessage.Record("www.example.com", DNSMessage.TYPE_AAAA, 300, "2001:db8::1"));
+        answers.add(new DNSMessage.Record("www.example.com", DNSMessage.TYPE_AAAA, 60, "::"));
+        final DNSMessage response = DNSMessage.parse(DNSMessage.response(7, DNSMessage.RCODE_OK,
+                "www.example.com", DNSMessage.TYPE_AAAA, answers));
+        Assert.assertTrue(response.isResponse());
+        Assert.assertEquals(response.answers(DNSMessage.TYPE_AAAA).get(0).data, "2001:db8::1");
+        Assert.assertEquals(response.answers(DNSMessage.TYPE_AAAA).get(0).ttl, 300);
+        Assert.assertEquals(response.answers(DNSMessage.TYPE_AAAA).get(1).data, "::");
+    }
+
+    @Test
+    public void testCompressedNames() throws Exception {
+        // a response with the answer owner and the CNAME target pointing into the question
+        final byte[] message = {
+            0, 1, (byte) 0x81, (byte) 0x80, 0, 1, 0, 2, 0, 0, 0, 0,
+            3, 'w', 'w', 'w', 4, 't', 'e', 's', 't', 0, 0, 1, 0, 1,
+            (byte) 0xc0, 12, 0, 5, 0, 1, 0, 0, 0, 60, 0, 7, 4, 'r', 'e', 'a', 'l', (byte) 0xc0, 16,
+            (byte) 0xc0, 38, 0, 1, 0, 1, 0, 0, 0, 30, 0, 4, 10, 0, 0, 1
+        };
+        final DNSMessage parsed = DNSMessage.parse(ByteBuffer.wrap(message));
+        Assert.assertEquals(parsed.answers(DNSMessage.TYPE_CNAME).get(0).data, "real.test");
+        Assert.assertEquals(parsed.answers(DNSMessage.TYPE_A).get(0).name, "real.test");
+        Assert.assertEquals(parsed.answers(DNSMessage.TYPE_A).get(0).data, "10.0.0.1");
+
+        // a pointer to itself
+        final byte[] loop = Arrays.copyOf(message, message.length);
+        loop[26] = (byte) 0xc0;
+        loop[27] = 26;
+        try {
+            DNSMessage.parse(ByteBuffer.wrap(loop));
+            Assert.fail("compression loop not detected");
+        } catch (final IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testConfig() throws Exception {
+        final ResolverConfig config = new ResolverConfig();
+        config.parseResolvConf(new StringReader(
+                "# comment\n" +
+                "nameserver 10.0.0.53\n" +
+                "nameserver 2001:db8::53 ; comment\n" +
+                "search corp.example example\n" +
+                "options ndots:2 timeout:3 attempts:4 rotate\n"));
+        config.parseHosts(new StringReader(
+                "127.0.0.1 localhost\n" +
+                "::1 localhost ip6-localhost # comment\n" +
+                "10.1.1.1 Server.corp.example server\n"));
+        Assert.assertEquals(config.servers().size(), 2);
+        Assert.assertEquals(config.servers().get(1).getHostString(), "2001:db8::53");
+        Assert.assertEquals(config.servers().get(1).getPort(), 53);
+        Assert.assertEquals(config.ndots(), 2);
+        Assert.assertEquals(config.timeout(), 3000);
+        Assert.assertEquals(config.attempts(), 4);
+        Assert.assertTrue(config.rotate());
+        Assert.assertEquals(config.host("LOCALHOST"), Arrays.asList("127.0.0.1", "::1"));
+        Assert.assertEquals(config.host("server.corp.example"), Arrays.asList("10.1.1.1"));
+        Assert.assertEquals(config.candidates("www"), Arrays.asList("www.corp.example", "www.example", "www"));
+        Assert.assertEquals(config.candidates("a.b.c"), Arrays.asList("a.b.c", "a.b.c.corp.example", "a.b.c.example"));
+        Assert.assertEquals(config.candidates("www."), Arrays.asList("www"));
+    }
+
+    @Test
+    public void testStubServer() throws Throwable {
+        final DatagramSocket server = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    serve(server);
+                } catch (final Exception e) {
+                    // closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        System.setProperty("avatar-js.dns.servers", "127.0.0.1:" + server.getLocalPort());
+        try {
+            final String[] args = { new File("src/test/js/dns/stub-resolver.js").getAbsolutePath() };
+            new Server().run(args);
+        } finally {
+            System.clearProperty("avatar-js.dns.servers");
+            server.close();
+        }
+    }
+
+    private static void serve(final DatagramSocket server) throws Exception {
+        final byte[] buffer = new byte[512];
+        while (true) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            server.receive(packet);
+            final DNSMessage query = DNSMessage.parse(ByteBuffer.wrap(buffer, 0, packet.getLength()));
+            final String name = query.question();
+            final List<DNSMessage.Record> answers = new ArrayList<>();
+            int rcode = DNSMessage.RCODE_OK;
+            switch (name) {
+                case "www.avatar.test":
+                    answers.add(new DNSMessage.Record(name, DNSMessage.TYPE_CNAME, 60, "real.avatar.test"));
+                    answers.add(new DNSMessage.Record("real.avatar.test", DNSMessage.TYPE_A, 60, "10.0.0.1"));
+                    answers.add(new DNSMessage.Record("real.avatar.test", DNSMessage.TYPE_A, 60, "10.0.0.2"));
+                    answers.add(new DNSMessage.Record("real.avatar.test", DNSMessage.TYPE_AAAA, 60, "2001:db8::1"));
+                    break;
+                case "mail.avatar.test":
+                    answers.add(new DNSMessage.Record(name, DNSMessage.TYPE_MX, 60, new DNSMessage.Mx(10, "mx1.avatar.test")));
+                    break;
+                case "_http._tcp.avatar.test":
+                    answers.add(new DNSMessage.Record(name, DNSMessage.TYPE_SRV, 60, new DNSMessage.Srv(1, 5, 8080, "web.avatar.test")));
+                    break;
+                case "txt.avatar.test":
+                    answers.add(new DNSMessage.Record(name, DNSMessage.TYPE_TXT, 60, new String[] {"v=spf1 -all"}));
+                    break;
+                case "timeout.avatar.test":
+                    continue;
+                default:
+                    rcode = DNSMessage.RCODE_NXDOMAIN;
+                    break;
+            }
+            final List<DNSMessage.Record> typed = new ArrayList<>();
+            for (final DNSMessage.Record answer : answers) {
+                if (answer.type == query.questionType() || answer.type == DNSMessage.TYPE_CNAME) {
+                    typed.add(answer);
+                }
+            }
+            final ByteBuffer response = DNSMessage.response(query.id(), rcode, name, query.questionType(), typed);
+            server.send(new DatagramPacket(response.array(), response.remaining(), packet.getSocketAddress()));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.oracle.avatar.js.http.HeaderBlock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the encoding of HTTP response headers.
+ *
+ */
+public class HeaderBlockTest {
+
+    @Test
+    public void testEncode() {
+        final String[] headers = {"Content-Type", "text/plain", "Content-Length", "5", "Connection", "keep-alive"};
+        Assert.assertEquals(string(HeaderBlock.encode(200, "OK", headers, false)),
+                "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 5\r\nConnection: keep-alive\r\n\r\n");
+        Assert.assertEquals(string(HeaderBlock.encode(204, "No Content", null, false)),
+                "HTTP/1.1 204 No Content\r\n\r\n");
+    }
+
+    @Test
+    public void testStatusReason() {
+        Assert.assertEquals(string(HeaderBlock.encode(404, "Not Found", null, false)), "HTTP/1.1 404 Not Found\r\n\r\n");
+        Assert.assertEquals(string(HeaderBlock.encode(404, "Nope", null, false)), "HTTP/1.1 404 Nope\r\n\r\n");
+        Assert.assertEquals(string(HeaderBlock.encode(404, "Not Found", null, false)), "HTTP/1.1 404 Not Found\r\n\r\n");
+        Assert.assertEquals(string(HeaderBlock.encode(1000, "Odd", null, false)), "HTTP/1.1 1000 Odd\r\n\r\n");
+    }
+
+    @Test
+    public void testValues() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append('x');
+        }
+        final String longValue = sb.toString();
+        for (int i = 0; i < 5000; i++) {
+            final String[] headers = {"X-Id", Integer.toString(i), "ETag", "\"" + i + "\"", "X-Long", longValue};
+            Assert.assertEquals(string(HeaderBlock.encode(200, "OK", headers, false)),
+                    "HTTP/1.1 200 OK\r\nX-Id: " + i + "\r\nETag: \"" + i + "\"\r\nX-Long: " + longValue + "\r\n\r\n");
+        }
+        Assert.assertEquals(string(HeaderBlock.encode(200, "OK", new String[] {"X-Id", "0"}, false)),
+                "HTTP/1.1 200 OK\r\nX-Id: 0\r\n\r\n");
+    }
+
+    @Test
+    public void testUtf8() {
+        final String[] headers = {"X-Name", "caf\u00e9"};
+        Assert.assertEquals(HeaderBlock.encode(200, "Tr\u00e8s bien", headers, false),
+                ByteBuffer.wrap("HTTP/1.1 200 Tr\u00e8s bien\r\nX-Name: caf\u00e9\r\n\r\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testDate() {
+        final String block = string(HeaderBlock.encode(200, "OK", new String[] {"Connection", "close"}, true));
+        Assert.assertTrue(block.startsWith("HTTP/1.1 200 OK\r\nConnection: close\r\nDate: "), block);
+        Assert.assertTrue(block.endsWith(" GMT\r\n\r\n"), block);
+        Assert.assertTrue(HeaderBlock.dateSecond() > 0);
+    }
+
+    private static String string(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import com.oracle.avatar.js.http.HeaderNames;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the canonical instances of HTTP header names.
+ *
+ */
+public class HeaderNamesTest {
+
+    @Test
+    public void testKnown() {
+        final String name = HeaderNames.canonical("content-type");
+        Assert.assertEquals(name, "content-type");
+        // any case gives the same instance
+        Assert.assertSame(HeaderNames.canonical("Content-Type"), name);
+        Assert.assertSame(HeaderNames.canonical("CONTENT-TYPE"), name);
+        Assert.assertSame(HeaderNames.canonical("cOnTeNt-TyPe"), name);
+        Assert.assertSame(HeaderNames.canonical(new String("content-type")), name);
+        Assert.assertEquals(HeaderNames.canonical("X-Forwarded-For"), "x-forwarded-for");
+        Assert.assertEquals(HeaderNames.canonical("TE"), "te");
+        Assert.assertEquals(HeaderNames.canonical("WWW-Authenticate"), "www-authenticate");
+    }
+
+    @Test
+    public void testUnknown() {
+        // unknown names are returned as they are
+        final String name = "X-Custom-Header";
+        Assert.assertSame(HeaderNames.canonical(name), name);
+        final String lower = "x-custom-header";
+        Assert.assertSame(HeaderNames.canonical(lower), lower);
+        // as long as a known name, with other characters
+        final String close = "Content-Typf";
+        Assert.assertSame(HeaderNames.canonical(close), close);
+        final String underscore = "content_type";
+        Assert.assertSame(HeaderNames.canonical(underscore), underscore);
+        final String empty = "";
+        Assert.assertSame(HeaderNames.canonical(empty), empty);
+        Assert.assertNull(HeaderNames.canonical(null));
+    }
+
+    @Test
+    public void testCanonicalize() {
+        final String custom = "X-Custom";
+        final String[] headers = {"Host", "a", "X-Custom", "Keep-Alive", "ACCEPT", "*/*"};
+        headers[2] = custom;
+        Assert.assertSame(HeaderNames.canonicalize(headers), headers);
+        Assert.assertSame(headers[0], HeaderNames.canonical("host"));
+        Assert.assertSame(headers[2], custom);
+        Assert.assertSame(headers[4], HeaderNames.canonical("accept"));
+        // values are left alone
+        Assert.assertEquals(headers[1], "a");
+        Assert.assertEquals(headers[3], "Keep-Alive");
+        Assert.assertEquals(headers[5], "*/*");
+        Assert.assertNull(HeaderNames.canonicalize(null));
+    }
+}
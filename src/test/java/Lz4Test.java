@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import com.oracle.avatar.js.zlib.Lz4FrameInputStream;
+import com.oracle.avatar.js.zlib.Lz4FrameOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test LZ4 frame encoding and decoding.
+ *
+ */
+public class Lz4Test {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Random random = new Random(7);
+        for (int size : new int[] {0, 1, 12, 13, 100, 65536, 65537, 300000}) {
+            final byte[] text = new byte[size];
+            for (int i = 0; i < size; i++) {
+                text[i] = (byte) ('a' + random.nextInt(4));
+            }
+            final byte[] noise = new byte[size];
+            random.nextBytes(noise);
+            for (int level = -1; level <= 9; level++) {
+                Assert.assertEquals(uncompress(compress(text, level, size + 1), 1024), text);
+                Assert.assertEquals(uncompress(compress(noise, level, size + 1), 1024), noise);
+            }
+        }
+    }
+
+    @Test
+    public void testFlushedBlocks() throws Exception {
+        final byte[] data = "hello hello hello hello hello lz4".getBytes();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Lz4FrameOutputStream lz4 = new Lz4FrameOutputStream(out, -1);
+        for (int i = 0; i < 3; i++) {
+            lz4.write(data);
+            lz4.flush();
+        }
+        lz4.close();
+        final byte[] expected = new byte[data.length * 3];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(data, 0, expected, i * data.length, data.length);
+        }
+        Assert.assertEquals(uncompress(out.toByteArray(), 7), expected);
+    }
+
+    @Test
+    public void testChunkedInput() throws Exception {
+        final byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        final byte[] compressed = compress(data, -1, 4096);
+        // The stream reports the end of each chunk and resumes with the next one
+        final ChunkedInputStream chunks = new ChunkedInputStream(compressed, 3);
+        final Lz4FrameInputStream in = new Lz4FrameInputStream(chunks);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buff = new byte[1000];
+        while (chunks.next()) {
+            int n;
+            while ((n = in.read(buff)) != -1) {
+                out.write(buff, 0, n);
+            }
+        }
+        Assert.assertEquals(out.toByteArray(), data);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testCorruptedContent() throws Exception {
+        final byte[] compressed = compress(new byte[1000], -1, 1000);
+        compressed[compressed.length - 1] ^= 1;
+        uncompress(compressed, 1024);
+    }
+
+    private static byte[] compress(final byte[] data, final int level, final int writeSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Lz4FrameOutputStream lz4 = new Lz4FrameOutputStream(out, level)) {
+            for (int off = 0; off < data.length; off += writeSize) {
+                lz4.write(data, off, Math.min(writeSize, data.length - off));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] uncompress(final byte[] data, final int readSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new Lz4FrameInputStream(new ByteArrayInputStream(data))) {
+            final byte[] buff = new byte[readSize];
+            int n;
+            while ((n = in.read(buff)) != -1) {
+                out.write(buff, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final byte[] data;
+        private final int chunkSize;
+        private int position;
+        private int limit;
+
+        ChunkedInputStream(final byte[] data, final int chunkSize) {
+            this.data = data;
+            this.chunkSize = chunkSize;
+        }
+
+        boolean next() {
+            if (limit == data.length) {
+                return false;
+            }
+            limit = Math.min(data.length, limit + chunkSize);
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return position < limit ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (position == limit) {
+                return -1;
+            }
+            final int n = Math.min(len, limit - position);
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
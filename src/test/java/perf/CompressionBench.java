@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package perf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.oracle.avatar.js.zlib.Lz4FrameInputStream;
+import com.oracle.avatar.js.zlib.Lz4FrameOutputStream;
+
+/* Compares throughput and ratio of the LZ4 frame codec with Deflate at each level.
+ * call it with an optional list of files to use as input, a generated
+ * text-like corpus is used otherwise.
+ * The streams are the ones created by the Deflate and Lz4 zlib writers.
+ */
+public class CompressionBench {
+
+    private static final int CHUNK = 16 * 1024;
+    private static final long RUN_NANOS = 2_000_000_000L;
+
+    private interface Codec {
+        OutputStream compress(OutputStream out) throws IOException;
+        InputStream uncompress(InputStream in) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final byte[] input = args.length == 0 ? corpus(8 * 1024 * 1024) : read(args);
+        System.out.printf("input %d bytes%n", input.length);
+        System.out.printf("%-10s %8s %12s %12s%n", "codec", "ratio", "comp MB/s", "decomp MB/s");
+
+        for (int level = 0; level <= 9; level++) {
+            final int l = level;
+            run("deflate-" + level, input, new Codec() {
+                @Override
+                public OutputStream compress(OutputStream out) {
+                    return new DeflaterOutputStream(out, new Deflater(l), true);
+                }
+
+                @Override
+                public InputStream uncompress(InputStream in) {
+                    return new InflaterInputStream(in);
+                }
+            });
+        }
+
+        for (int level = 0; level <= 9; level++) {
+            final int l = level;
+            run("lz4-" + level, input, new Codec() {
+                @Override
+                public OutputStream compress(OutputStream out) {
+                    return new Lz4FrameOutputStream(out, l);
+                }
+
+                @Override
+                public InputStream uncompress(InputStream in) {
+                    return new Lz4FrameInputStream(in);
+                }
+            });
+        }
+    }
+
+    private static void run(final String name, final byte[] input, final Codec codec) throws IOException {
+        // warm up, then measure
+        byte[] compressed = compress(input, codec);
+        uncompress(compressed, input.length, codec);
+
+        long bytes = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            compressed = compress(input, codec);
+            bytes += input.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < RUN_NANOS);
+        final double compressRate = mbPerSecond(bytes, elapsed);
+
+        bytes = 0;
+        start = System.nanoTime();
+        do {
+            uncompress(compressed, input.length, codec);
+            bytes += input.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < RUN_NANOS);
+        final double uncompressRate = mbPerSecond(bytes, elapsed);
+
+        System.out.printf("%-10s %8.3f %12.1f %12.1f%n", name,
+                (double) compressed.length / input.length, compressRate, uncompressRate);
+    }
+
+    private static byte[] compress(final byte[] input, final Codec codec) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(input.length);
+        try (OutputStream os = codec.compress(out)) {
+            for (int off = 0; off < input.length; off += CHUNK) {
+                os.write(input, off, Math.min(CHUNK, input.length - off));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void uncompress(final byte[] compressed, final int length, final Codec codec) throws IOException {
+        final byte[] buff = new byte[CHUNK];
+        int total = 0;
+        try (InputStream is = codec.uncompress(new ByteArrayInputStream(compressed))) {
+            int n;
+            while ((n = is.read(buff)) != -1) {
+                total += n;
+            }
+        }
+        if (total != length) {
+            throw new IOException("uncompressed " + total + " bytes, expected " + length);
+        }
+    }
+
+    private static double mbPerSecond(final long bytes, final long nanos) {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+
+    private static byte[] read(final String[] files) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String f : files) {
+            out.write(Files.readAllBytes(Paths.get(f)));
+        }
+        return out.toByteArray();
+    }
+
+    // JSON-like records, roughly as compressible as typical service traffic
+    private static byte[] corpus(final int size) {
+        final String[] words = {"id", "name", "status", "ok", "error", "timestamp", "value",
+            "request", "response", "user", "items", "count", "true", "false", "null"};
+        final Random random = new Random(42);
+        final StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append('{');
+            for (int i = 0; i < 6; i++) {
+                sb.append('"').append(words[random.nextInt(words.length)]).append("\":");
+                if (random.nextBoolean()) {
+                    sb.append(random.nextInt(100000));
+                } else {
+                    sb.append('"').append(words[random.nextInt(words.length)]).append('"');
+                }
+                sb.append(i < 5 ? "," : "}\n");
+            }
+        }
+        final byte[] bytes = new byte[size];
+        System.arraycopy(sb.toString().getBytes(), 0, bytes, 0, size);
+        return bytes;
+    }
+}
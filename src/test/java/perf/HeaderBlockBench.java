@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package perf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.oracle.avatar.js.http.HeaderBlock;
+
+/* Measures what the head of a response costs, once encoded for each
+ * response from one string the way the http module writes it, once with
+ * HeaderBlock, and once reused the way HttpRouter does: encoded when the
+ * second of its Date header changes, duplicated for every other response.
+ */
+public class HeaderBlockBench {
+
+    private static final long RUN_NANOS = 1_000_000_000L;
+
+    private static final String[] HEADERS = {
+        "Content-Type", "text/html; charset=utf-8",
+        "Cache-Control", "no-cache",
+        "Server", "avatar-js",
+        "Content-Length", "1024",
+        "Connection", "keep-alive"
+    };
+
+    private interface Encoder {
+        ByteBuffer encode();
+    }
+
+    private static volatile int sink;
+
+    private static long second = -1;
+    private static ByteBuffer cached;
+
+    public static void main(String[] args) throws Exception {
+        final String date = "Mon, 19 Oct 2026 15:06:21 GMT";
+        System.out.printf("%-12s %10s%n", "head", "ns/op");
+        for (int round = 0; round < 2; round++) {
+            run("string", () -> {
+                final StringBuilder sb = new StringBuilder("HTTP/1.1 200 OK\r\n");
+                for (int i = 0; i + 1 < HEADERS.length; i += 2) {
+                    sb.append(HEADERS[i]).append(": ").append(HEADERS[i + 1]).append("\r\n");
+                }
+                sb.append("Date: ").append(date).append("\r\n\r\n");
+                return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            });
+            run("HeaderBlock", () -> HeaderBlock.encode(200, "OK", HEADERS, true));
+            run("reused", () -> {
+                final long now = HeaderBlock.dateSecond();
+                if (now != second) {
+                    cached = HeaderBlock.encode(200, "OK", HEADERS, true);
+                    second = now;
+                }
+                return cached.duplicate();
+            });
+        }
+    }
+
+    private static void run(final String name, final Encoder encoder) {
+        // warm up, then measure
+        for (int i = 0; i < 1_000_000; i++) {
+            sink += encoder.encode().remaining();
+        }
+        long ops = 0;
+        final long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100_000; i++) {
+                sink += encoder.encode().remaining();
+            }
+            ops += 100_000;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < RUN_NANOS);
+        System.out.printf("%-12s %10.2f%n", name, (double) elapsed / ops);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package perf;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import com.oracle.avatar.js.log.Logger;
+import com.oracle.avatar.js.log.Logging;
+
+/* Measures what a log statement costs when its logger is disabled,
+ * for each way of writing it. Both the null logger handed out by a disabled
+ * Logging and a file logger that was disabled at runtime are measured.
+ * Run with -Davatar-js.log.disabled=true to see the constant guard fold away.
+ */
+public class LoggingBench {
+
+    private static final long RUN_NANOS = 1_000_000_000L;
+
+    private interface Statement {
+        void run(Logger log, ByteBuffer record, int i);
+    }
+
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        final Logger nullLogger = new Logging(false).get("bench");
+        final Logging logging = new Logging(new File(System.getProperty("java.io.tmpdir")), true);
+        final Logger fileLogger = logging.get("bench");
+        fileLogger.disable();
+
+        System.out.printf("%-14s %-12s %10s%n", "statement", "logger", "ns/op");
+        for (Logger log : new Logger[] {nullLogger, fileLogger, nullLogger, fileLogger}) {
+            final String kind = log == nullLogger ? "null" : "disabled";
+            run("none", kind, log, (l, r, i) -> sink += i);
+            run("concat", kind, log, (l, r, i) -> {
+                sink += i;
+                l.log("unwrap " + r + ", consumed " + i + ", produced " + r.position());
+            });
+            run("varargs", kind, log, (l, r, i) -> {
+                sink += i;
+                l.log("unwrap %s, consumed %s, produced %s, limit %s", r, i, r.position(), r.limit());
+            });
+            run("parameterized", kind, log, (l, r, i) -> {
+                sink += i;
+                l.log("unwrap %s, consumed %s, produced %s", r, i, r.position());
+            });
+            run("supplier", kind, log, (l, r, i) -> {
+                sink += i;
+                l.log(() -> "unwrap " + r + ", consumed " + i + ", produced " + r.position());
+            });
+            run("guarded", kind, log, (l, r, i) -> {
+                sink += i;
+                if (Logging.LOGGABLE && l.enabled()) {
+                    l.log("unwrap " + r + ", consumed " + i + ", produced " + r.position());
+                }
+            });
+        }
+        logging.shutdown();
+    }
+
+    private static void run(final String name, final String kind, final Logger log, final Statement statement) {
+        final ByteBuffer record = ByteBuffer.allocate(16 * 1024);
+        record.position(1024);
+        // warm up, then measure
+        for (int i = 0; i < 1_000_000; i++) {
+            statement.run(log, record, i);
+        }
+        long ops = 0;
+        final long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 100_000; i++) {
+                statement.run(log, record, i);
+            }
+            ops += 100_000;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < RUN_NANOS);
+        System.out.printf("%-14s %-12s %10.2f%n", name, kind, (double) elapsed / ops);
+    }
+}
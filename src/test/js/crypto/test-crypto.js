@@ -64,6 +64,26 @@ function testCipher(key, algo) {
     assert.equal(txt, plaintext, 'encryption and decryption');
 }
 
+// Streaming into caller provided buffers
+function testCipherInto(key, iv, algo) {
+    var plaintext = new Buffer('Keep this a secret? No! Tell everyone about node.js!');
+    var expected = crypto.createCipheriv(algo, key, iv).update(plaintext, 'buffer', 'hex');
+    var cryptoBinding = process.binding('crypto');
+    var cipher = new cryptoBinding.Cipher().initiv(algo, key, iv);
+    var out = new Buffer(cipher.outputSize(plaintext.length) + cipher.outputSize(0));
+    var written = cipher.updateInto(plaintext, 0, 20, out, 0);
+    written += cipher.updateInto(plaintext, 20, plaintext.length - 20, out, written);
+    written += cipher.finalInto(out, written);
+    var decipher = new cryptoBinding.Decipher().initiv(algo, key, iv);
+    var clear = new Buffer(decipher.outputSize(written) + decipher.outputSize(0));
+    var read = decipher.updateInto(out, 0, written, clear, 0);
+    read += decipher.finalInto(clear, read);
+    assert.equal(clear.slice(0, read).toString(), plaintext.toString());
+    assert.equal(out.slice(0, expected.length / 2).toString('hex'), expected);
+}
+testCipherInto('0123456789abcd0123456789', '12345678', 'des-ede3-cbc');
+testCipherInto('0123456789abcdef', '0123456789abcdef', 'aes-128-cbc');
+
 function testCipherIV(key, iv, algo) {
     // Test encryption and decryption
     var plaintext = 'Keep this a secret? No! Tell everyone about node.js!';
@@ -208,6 +228,32 @@ for(var i = 0; i < hmacAlgos.length; i++){
     testHashMacDigest(hmacAlgos[i]);
 }
 
+// Digests are pooled once digested, a finished hash can't be updated.
+function testHashReuse(create){
+    var first = create();
+    first.update("some data to hash");
+    var expected = first.digest('hex');
+    assert.throws(function() { first.update("more"); }, /Not initialized/);
+    var second = create();
+    second.update("some data to hash");
+    assert.equal(second.digest('hex'), expected);
+}
+testHashReuse(function() { return crypto.createHash("sha256"); });
+testHashReuse(function() { return crypto.createHmac("sha256", "key"); });
+
+// One-shot hash and hmac of a buffer region
+var cryptoBinding = process.binding('crypto');
+var region = new Buffer("xxsome data to hashyy");
+var out = new Buffer(64);
+var hashLength = cryptoBinding.hash("sha256", region, 2, 17, out);
+assert.equal(hashLength, 32);
+assert.equal(out.slice(0, hashLength).toString('hex'),
+    crypto.createHash("sha256").update("some data to hash").digest('hex'));
+var hmacLength = cryptoBinding.hmac("sha256", "key", region, 2, 17, out);
+assert.equal(out.slice(0, hmacLength).toString('hex'),
+    crypto.createHmac("sha256", "key").update("some data to hash").digest('hex'));
+assert.throws(function() { cryptoBinding.hash("sha256", region, 10, 17, out); });
+
 
 // Sign / verify
 var dsaprivateKey = fs.readFileSync('crypto/fixtures/test_dsa_privkey.pem');
@@ -227,6 +273,28 @@ for(var i = 0; i < rsa_sign_algos.length; i++){
     testSignVerify(rsa_sign_algos[i], rsaprivateKey, rsapublicKey);
 }
 
+// Batch sign / verify in the thread pool
+var batch = [];
+for (var i = 0; i < 20; i++) {
+    batch.push(new Buffer("batch content " + i));
+}
+cryptoBinding.signAll("rsa-sha256", rsaprivateKey, batch, function(err, signatures) {
+    assert.ifError(err);
+    assert.equal(signatures.length, batch.length);
+    var single = crypto.createVerify("rsa-sha256");
+    single.update("batch content 3");
+    assert.strictEqual(single.verify(rsapublicKey, signatures[3]), true);
+    signatures[5] = signatures[6];
+    cryptoBinding.verifyAll("rsa-sha256", rsapublicKey, batch, signatures, function(err, results) {
+        assert.ifError(err);
+        assert.equal(results.length, batch.length);
+        for (var i = 0; i < results.length; i++) {
+            assert.strictEqual(results[i], i !== 5);
+        }
+        log("batch sign / verify");
+    });
+});
+
 function testSignVerify(algo, privateKey, publicKey){
 var rsaSign = crypto.createSign(algo);
 var rsaVerify = crypto.createVerify(algo);
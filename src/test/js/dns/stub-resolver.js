@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Run by DNSTest, with a stub DNS server as the only name server.
+
+var dns = require('dns');
+var assert = require('assert');
+
+var done = 0;
+
+dns.resolve4('www.avatar.test', function(err, addresses) {
+    assert.ifError(err);
+    assert.deepEqual(addresses, ['10.0.0.1', '10.0.0.2']);
+    done++;
+});
+
+dns.resolve6('www.avatar.test', function(err, addresses) {
+    assert.ifError(err);
+    assert.deepEqual(addresses, ['2001:db8::1']);
+    done++;
+});
+
+dns.resolveMx('mail.avatar.test', function(err, records) {
+    assert.ifError(err);
+    assert.deepEqual(records, [{ priority: 10, exchange: 'mx1.avatar.test' }]);
+    done++;
+});
+
+dns.resolveSrv('_http._tcp.avatar.test', function(err, records) {
+    assert.ifError(err);
+    assert.deepEqual(records, [{ name: 'web.avatar.test', port: 8080, priority: 1, weight: 5 }]);
+    done++;
+});
+
+dns.resolveTxt('txt.avatar.test', function(err, records) {
+    assert.ifError(err);
+    assert.deepEqual(records, ['v=spf1 -all']);
+    done++;
+});
+
+dns.resolve4('missing.avatar.test', function(err, addresses) {
+    assert.equal(err.code, 'ENOTFOUND');
+    done++;
+});
+
+process.on('exit', function() {
+    assert.equal(done, 6);
+});
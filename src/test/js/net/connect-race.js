@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var net = require('net');
+var assert = require('assert');
+var tcp = process.binding('tcp_wrap');
+
+var received = '';
+var refused = false;
+var fellBack = false;
+var staggered = false;
+var viaNet = false;
+
+var server = net.createServer(function(socket) {
+    socket.end('race');
+});
+
+server.listen(0, '127.0.0.1', function() {
+    var port = server.address().port;
+    // localhost may also resolve to ::1, where nothing listens
+    tcp.connectRace('localhost', port, {delay: 50}, function(err, handle, info) {
+        assert.ifError(err);
+        assert.equal(info.address, '127.0.0.1');
+        assert.equal(info.family, 'IPv4');
+        var socket = new net.Socket({handle: handle, readable: true, writable: true});
+        socket.on('data', function(data) {
+            received += data;
+        });
+        socket.on('end', function() {
+            refusedFirst(port);
+        });
+    });
+});
+
+// nothing listens on 127.0.0.2, the refused attempt starts the next one at once
+function refusedFirst(port) {
+    var start = Date.now();
+    tcp.connectRace('localhost', port, {delay: 5000, addresses: ['127.0.0.2', '127.0.0.1']}, function(err, handle, info) {
+        assert.ifError(err);
+        assert(Date.now() - start < 5000);
+        assert.equal(info.address, '127.0.0.1');
+        assert.equal(info.attempts, 2);
+        assert.equal(tcp.getConnectStats()['127.0.0.2'].failed, 1);
+        handle.close();
+        fellBack = true;
+        unreachableFirst(port);
+    });
+}
+
+// 192.0.2.1 (TEST-NET-1) does not answer, the next attempt starts after the delay and
+// wins, the pending one is cancelled. Where it is rejected at once instead, it fails.
+function unreachableFirst(port) {
+    var start = Date.now();
+    tcp.connectRace('localhost', port, {delay: 100, addresses: ['192.0.2.1', '127.0.0.1']}, function(err, handle, info) {
+        assert.ifError(err);
+        assert.equal(info.address, '127.0.0.1');
+        var stats = tcp.getConnectStats()['192.0.2.1'];
+        assert.equal(stats.attempts, 1);
+        assert.equal(stats.cancelled + stats.failed, 1);
+        if (stats.cancelled === 1) {
+            assert(Date.now() - start >= 100);
+        }
+        handle.close();
+        staggered = true;
+        netConnect(port);
+    });
+}
+
+// net.connect with race uses connectRace
+function netConnect(port) {
+    var before = tcp.getConnectStats()['127.0.0.1'].attempts;
+    var socket = net.connect({host: 'localhost', port: port, race: {delay: 50}}, function() {
+        assert.equal(socket.remoteAddress, '127.0.0.1');
+        assert(tcp.getConnectStats()['127.0.0.1'].attempts > before);
+        socket.destroy();
+        viaNet = true;
+        server.close();
+        var stats = tcp.getConnectStats()['127.0.0.1'];
+        assert(stats.connected >= 1);
+        assert(stats.averageLatency >= 0);
+        // nothing listens on the port once the server is closed
+        tcp.connectRace('127.0.0.1', port, function(err, handle) {
+            assert.equal(err.code, 'ECONNREFUSED');
+            assert.equal(handle, undefined);
+            refused = true;
+        });
+    });
+}
+
+process.on('exit', function() {
+    assert.equal(received, 'race');
+    assert(fellBack && staggered && viaNet && refused);
+});
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var http = require('http');
+var assert = require('assert');
+
+var pool = require('_http_pool');
+var before = pool.getPoolStats();
+var connections = 0;
+var serverSockets = [];
+var responses = 0;
+
+var server = http.createServer(function(req, res) {
+    res.end(req.url);
+});
+server.on('connection', function(socket) {
+    connections++;
+    serverSockets.push(socket);
+});
+
+server.listen(0, '127.0.0.1', function() {
+    var agent = pool.createAgent();
+    var port = server.address().port;
+    var get = function(n) {
+        http.get({host: '127.0.0.1', port: port, path: '/' + n, agent: agent}, function(res) {
+            var body = '';
+            res.on('data', function(data) {
+                body += data;
+            });
+            res.on('end', function() {
+                assert.equal(body, '/' + n);
+                responses++;
+                if (n < 3) {
+                    // the socket is checked in once the response ends
+                    setTimeout(function() {
+                        get(n + 1);
+                    }, 10);
+                } else {
+                    var stats = pool.getPoolStats();
+                    assert.equal(stats.hits - before.hits, 2);
+                    assert.equal(stats.misses - before.misses, 1);
+                    assert.equal(stats.hitRate > 0, true);
+                    setTimeout(other, 10);
+                }
+            });
+        });
+    };
+    // another agent does not get the idle socket of the first one
+    var other = function() {
+        http.get({host: '127.0.0.1', port: port, path: '/other', agent: pool.createAgent()}, function(res) {
+            res.resume();
+            res.on('end', function() {
+                responses++;
+                var stats = pool.getPoolStats();
+                assert.equal(stats.hits - before.hits, 2);
+                assert.equal(stats.misses - before.misses, 2);
+                // the idle client sockets are evicted once the server closes them
+                serverSockets.forEach(function(socket) {
+                    socket.destroy();
+                });
+                server.close();
+            });
+        });
+    };
+    get(1);
+});
+
+process.on('exit', function() {
+    assert.equal(responses, 4);
+    assert.equal(connections, 2);
+});
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var assert = require('assert');
+
+// All the parsers of a loop share one ParserSettings, its callbacks go to the parser
+// executing. A parser executed from the callback of another one must not take the
+// callbacks the outer parser still has to receive.
+var HTTPParser = process.binding('http_parser').HTTPParser;
+
+var events = [];
+
+function parser(type, name) {
+    var p = new HTTPParser(type);
+    p.onHeadersComplete = function(info) {
+        events.push(name + ' headers ' + (info.url || info.statusCode));
+    };
+    p.onBody = function(b, start, len) {
+        events.push(name + ' body ' + b.toString('binary', start, start + len));
+    };
+    p.onMessageComplete = function() {
+        events.push(name + ' complete');
+    };
+    return p;
+}
+
+function execute(p, data) {
+    var buffer = new Buffer(data, 'binary');
+    var n = p.execute(buffer, 0, buffer.length);
+    assert.equal(n, buffer.length);
+}
+
+var outer = parser(HTTPParser.REQUEST, 'outer');
+var inner = parser(HTTPParser.RESPONSE, 'inner');
+var innermost = parser(HTTPParser.REQUEST, 'innermost');
+
+// a whole response parsed from the headers of the outer request
+var onOuterHeaders = outer.onHeadersComplete;
+outer.onHeadersComplete = function(info) {
+    onOuterHeaders(info);
+    execute(inner, 'HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nabc');
+};
+
+// a request parsed from the body of the inner response, two levels deep
+var onInnerBody = inner.onBody;
+inner.onBody = function(b, start, len) {
+    onInnerBody(b, start, len);
+    execute(innermost, 'GET /deep HTTP/1.1\r\n\r\n');
+};
+
+// an error thrown by a nested parser's callback stays with that parser
+var onOuterBody = outer.onBody;
+var failing = parser(HTTPParser.REQUEST, 'failing');
+failing.onHeadersComplete = function() {
+    throw new Error('failing');
+};
+outer.onBody = function(b, start, len) {
+    onOuterBody(b, start, len);
+    assert.throws(function() {
+        execute(failing, 'GET /fail HTTP/1.1\r\n\r\n');
+    }, /failing/);
+};
+
+execute(outer, 'POST /outer HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello');
+
+assert.deepEqual(events, [
+    'outer headers /outer',
+    'inner headers 200',
+    'inner body abc',
+    'innermost headers /deep',
+    'innermost complete',
+    'inner complete',
+    'outer body hello',
+    'outer complete'
+]);
+
+// finish runs the shared settings too, a response read until the connection closes
+// completes from it and may run another parser
+events = [];
+var closing = parser(HTTPParser.RESPONSE, 'closing');
+var onClosingComplete = closing.onMessageComplete;
+closing.onMessageComplete = function() {
+    execute(outer, 'GET /after HTTP/1.1\r\n\r\n');
+    onClosingComplete();
+};
+outer.onHeadersComplete = onOuterHeaders;
+execute(closing, 'HTTP/1.1 200 OK\r\n\r\nuntil close');
+assert.equal(closing.finish(), undefined);
+
+assert.deepEqual(events, [
+    'closing headers 200',
+    'closing body until close',
+    'outer headers /after',
+    'outer complete',
+    'closing complete'
+]);
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var http = require('http');
+var net = require('net');
+var assert = require('assert');
+
+// Static routes are answered by HttpRouter in Java, see setRouter in tcp_wrap. The
+// first request that needs script hands the connection, and the bytes the router
+// has not consumed, to net.js.
+var TCP = process.binding('tcp_wrap');
+
+var large = new Buffer(1024 * 1024);
+large.fill('x');
+
+var router = new TCP.HttpRouter();
+router.addStatic('/static', 200, 'text/plain', 'hello router');
+router.addStatic('/large', 200, null, large);
+
+var handled = [];
+var server = http.createServer(function(req, res) {
+    var body = '';
+    req.setEncoding('binary');
+    req.on('data', function(data) {
+        body += data;
+    });
+    req.on('end', function() {
+        handled.push(req.method + ' ' + req.url);
+        var content = 'script ' + req.method + ' ' + req.url + ' ' + body;
+        res.writeHead(200, {'Content-Length': content.length});
+        res.end(content);
+    });
+});
+
+function exchange(port, start, onData, done) {
+    var received = '';
+    var client = net.connect(port, '127.0.0.1', function() {
+        start(client);
+    });
+    client.setEncoding('binary');
+    client.on('data', function(data) {
+        received += data;
+        if (onData) {
+            onData(client, received);
+        }
+    });
+    client.on('end', function() {
+        client.destroy();
+        done(received);
+    });
+}
+
+function responses(received) {
+    return received.split('HTTP/1.1 ').slice(1).map(function(response) {
+        var end = response.indexOf('\r\n\r\n');
+        return {
+            status: response.substring(0, response.indexOf('\r\n')),
+            head: response.substring(0, end).toLowerCase(),
+            body: response.substring(end + 4)
+        };
+    });
+}
+
+var results = {};
+
+// GET and HEAD of a static route, keep-alive and pipelined requests, the last one
+// asks to close
+function staticRoutes(port, next) {
+    var sent = false;
+    exchange(port, function(client) {
+        client.write('GET /static HTTP/1.1\r\nHost: a\r\n\r\n' +
+                     'GET /static?q=1 HTTP/1.1\r\nHost: a\r\n\r\n' +
+                     'HEAD /static HTTP/1.1\r\nHost: a\r\n\r\n');
+    }, function(client, received) {
+        // the connection is kept alive once the three responses are in
+        if (!sent && responses(received).length === 3 && /\r\n\r\n$/.test(received)) {
+            sent = true;
+            client.write('GET /static HTTP/1.1\r\nHost: a\r\nConnection: close\r\n\r\n');
+        }
+    }, function(received) {
+        results.staticRoutes = responses(received);
+        next();
+    });
+}
+
+// A request with a body is forwarded with the bytes read after it, the rest of the
+// connection belongs to script
+function forwarded(port, next) {
+    exchange(port, function(client) {
+        client.write('GET /static HTTP/1.1\r\nHost: a\r\n\r\n' +
+                     'POST /echo HTTP/1.1\r\nHost: a\r\nContent-Length: 5\r\n\r\nhel');
+        setTimeout(function() {
+            client.write('lo');
+        }, 20);
+    }, function(client, received) {
+        if (/script POST \/echo hello$/.test(received)) {
+            client.write('GET /static HTTP/1.1\r\nHost: a\r\nConnection: close\r\n\r\n');
+        }
+    }, function(received) {
+        results.forwarded = responses(received);
+        next();
+    });
+}
+
+// A request head split over two reads is buffered before it is forwarded
+function forwardedPartial(port, next) {
+    exchange(port, function(client) {
+        client.write('GET /dyn');
+        setTimeout(function() {
+            client.write('amic HTTP/1.1\r\nHost: a\r\nConnection: close\r\n\r\n');
+        }, 20);
+    }, null, function(received) {
+        results.forwardedPartial = responses(received);
+        next();
+    });
+}
+
+// A connection closed by the router sends its pending response before it closes,
+// what is pipelined after the request is dropped
+function closeWithPendingWrites(port, next) {
+    exchange(port, function(client) {
+        client.write('GET /large HTTP/1.0\r\n\r\nGET /static HTTP/1.1\r\n\r\n');
+    }, null, function(received) {
+        results.closeWithPendingWrites = responses(received);
+        next();
+    });
+}
+
+// A routed connection idle for the router's timeout is closed
+function idleTimeout(port, next) {
+    router.setTimeout(200);
+    var start = Date.now();
+    exchange(port, function(client) {
+        client.write('GET /static HTTP/1.1\r\nHost: a\r\n\r\n');
+    }, null, function(received) {
+        results.idleTimeout = {responses: responses(received), elapsed: Date.now() - start};
+        router.setTimeout(0);
+        next();
+    });
+}
+
+// A routed connection counts as a connection of the server, closing the server closes
+// it even while its keep-alive client is connected
+function serverClose(port, next) {
+    exchange(port, function(client) {
+        client.write('GET /static HTTP/1.1\r\nHost: a\r\n\r\n');
+    }, function(client, received) {
+        if (/hello router$/.test(received)) {
+            results.connections = server._connections;
+            server.close(function() {
+                results.serverClosed = true;
+            });
+        }
+    }, function(received) {
+        results.serverClose = responses(received);
+        next();
+    });
+}
+
+server.listen(0, '127.0.0.1', function() {
+    server._handle.setRouter(router);
+    var port = server.address().port;
+    var steps = [staticRoutes, forwarded, forwardedPartial, closeWithPendingWrites,
+                 idleTimeout, serverClose];
+    (function next() {
+        var step = steps.shift();
+        if (step) {
+            step(port, next);
+        }
+    })();
+});
+
+process.on('exit', function() {
+    var r = results.staticRoutes;
+    assert.equal(r.length, 4);
+    [0, 1, 2, 3].forEach(function(i) {
+        assert.equal(r[i].status, '200 OK');
+        assert.notEqual(r[i].head.indexOf('content-type: text/plain'), -1);
+        assert.notEqual(r[i].head.indexOf('content-length: 12'), -1);
+        assert.notEqual(r[i].head.indexOf('date: '), -1);
+    });
+    assert.equal(r[0].body, 'hello router');
+    assert.equal(r[1].body, 'hello router');
+    assert.equal(r[2].body, '');
+    assert.equal(r[3].body, 'hello router');
+    assert.notEqual(r[0].head.indexOf('connection: keep-alive'), -1);
+    assert.notEqual(r[2].head.indexOf('connection: keep-alive'), -1);
+    assert.notEqual(r[3].head.indexOf('connection: close'), -1);
+
+    r = results.forwarded;
+    assert.equal(r.length, 3);
+    assert.equal(r[0].body, 'hello router');
+    assert.equal(r[1].body, 'script POST /echo hello');
+    assert.equal(r[2].body, 'script GET /static ');
+
+    r = results.forwardedPartial;
+    assert.equal(r.length, 1);
+    assert.equal(r[0].body, 'script GET /dynamic ');
+
+    r = results.closeWithPendingWrites;
+    assert.equal(r.length, 1);
+    assert.notEqual(r[0].head.indexOf('connection: close'), -1);
+    assert.equal(r[0].body.length, large.length);
+
+    assert.deepEqual(handled, ['POST /echo', 'GET /static', 'GET /dynamic']);
+    var stats = router.stats();
+    r = results.idleTimeout;
+    assert.equal(r.responses.length, 1);
+    assert.equal(r.responses[0].body, 'hello router');
+    assert(r.elapsed >= 200, 'closed after ' + r.elapsed + 'ms');
+
+    assert.equal(results.serverClose.length, 1);
+    assert.equal(results.connections, 1);
+    assert.equal(results.serverClosed, true);
+    assert.equal(server._connections, 0);
+
+    assert.equal(Number(stats.requestsServed), 8);
+    assert.equal(Number(stats.connectionsForwarded), 2);
+});
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var net = require('net');
+var assert = require('assert');
+var tcp = process.binding('tcp_wrap');
+
+var before = tcp.getConnectionMetrics();
+var checked = false;
+
+var server = net.createServer(function(socket) {
+    socket.on('data', function(data) {
+        socket.end(data);
+    });
+});
+
+server.listen(0, '127.0.0.1', function() {
+    var client = net.connect(server.address().port, '127.0.0.1', function() {
+        client.write('hello');
+    });
+    var echoed = '';
+    client.on('data', function(data) {
+        echoed += data;
+    });
+    client.on('end', function() {
+        assert.equal(echoed, 'hello');
+        var stats = client._handle.getStats();
+        assert.equal(stats.bytesRead, 5);
+        assert.equal(stats.bytesWritten, 5);
+        assert.equal(stats.writeQueueSize, 0);
+        assert(stats.lifetime >= 0);
+
+        var metrics = tcp.getConnectionMetrics();
+        assert.equal(metrics.acceptedConnections - before.acceptedConnections, 1);
+        assert(metrics.openHandles >= 3);
+        assert(metrics.bytesRead - before.bytesRead >= 10);
+        assert(metrics.bytesWritten - before.bytesWritten >= 10);
+
+        var mbeans = java.lang.management.ManagementFactory.getPlatformMBeanServer().queryNames(
+            new javax.management.ObjectName('com.oracle.avatar.js:type=Connections,*'), null);
+        assert(mbeans.size() > 0);
+
+        client.destroy();
+        server.close(function() {
+            checked = true;
+        });
+    });
+});
+
+process.on('exit', function() {
+    assert(checked);
+    // closes are counted from the close callbacks, they have all run by now
+    var after = tcp.getConnectionMetrics();
+    assert.equal(after.openHandles, before.openHandles);
+    assert.equal(after.closedHandles - before.closedHandles, 3);
+    assert.equal(after.queuedWriteBytes, before.queuedWriteBytes);
+});
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var net = require('net');
+var fs = require('fs');
+var os = require('os');
+var path = require('path');
+var assert = require('assert');
+
+var file = path.join(os.tmpdir(), 'avatar-js-sendfile-' + process.pid);
+var content = new Buffer(200000);
+for (var i = 0; i < content.length; i++) {
+    content[i] = 'a'.charCodeAt(0) + i % 26;
+}
+fs.writeFileSync(file, content);
+
+var received = [];
+var completed = [];
+var bytesWritten = 0;
+
+var server = net.createServer(function(socket) {
+    socket.on('data', function(data) {
+        received.push(data);
+    });
+    socket.on('end', function() {
+        server.close();
+    });
+});
+
+server.listen(0, '127.0.0.1', function() {
+    var client = net.connect(server.address().port, '127.0.0.1', function() {
+        var handle = client._handle;
+        var fd = fs.openSync(file, 'r');
+        var complete = function(status, h, wrapper) {
+            assert.equal(status, 0);
+            completed.push(wrapper.bytes);
+            if (completed.length === 5) {
+                bytesWritten = h._bytesWritten;
+                fs.closeSync(fd);
+                client.end();
+            }
+        };
+        // nothing to send, completes after the wrapper is returned
+        handle.sendFile(fd, 5, 0).oncomplete = complete;
+        handle.writeAsciiString('<').oncomplete = complete;
+        // a region, then the file from an offset to its end, writes in between wait
+        handle.sendFile(fd, 10, 100000).oncomplete = complete;
+        handle.writeAsciiString('|').oncomplete = complete;
+        handle.sendFile(fd, 150000).oncomplete = complete;
+    });
+});
+
+process.on('exit', function() {
+    fs.unlinkSync(file);
+    var expected = '<' + content.toString('binary', 10, 100010) + '|' +
+                   content.toString('binary', 150000);
+    assert.equal(Buffer.concat(received).toString('binary'), expected);
+    // a send to the end of the file completes with the bytes sent
+    assert.deepEqual(completed, [0, 1, 100000, 1, 50000]);
+    assert.equal(bytesWritten, 150002);
+});
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var assert = require('assert');
+var UDP = process.binding('udp_wrap').UDP;
+
+var COUNT = 100;
+var received = [];
+var sent = false;
+
+var receiver = new UDP();
+receiver.bind('127.0.0.1', 0, 0);
+var port = receiver.getsockname().port;
+receiver.recvBatchStart(function(buffer, count, offsets, lengths, addresses, ports) {
+    assert(count > 0);
+    for (var i = 0; i < count; i++) {
+        assert.equal(addresses[i], '127.0.0.1');
+        var datagram = i % 2 ?
+            buffer.toString('utf8', offsets[i], offsets[i] + lengths[i]) :
+            buffer.slice(offsets[i], offsets[i] + lengths[i]).toString();
+        received.push(datagram);
+    }
+    if (received.length === COUNT) {
+        receiver.recvBatchStop();
+        receiver.close();
+        sender.close();
+    }
+});
+
+// one buffer holding all datagrams, metric:value|c
+var sender = new UDP();
+sender.bind('127.0.0.1', 0, 0);
+var payload = '';
+var offsets = [];
+var lengths = [];
+for (var i = 0; i < COUNT; i++) {
+    var datagram = 'metric' + i + ':1|c';
+    offsets.push(payload.length);
+    lengths.push(datagram.length);
+    payload += datagram;
+}
+// a datagram out of the buffer, nothing is sent or queued
+assert.throws(function() {
+    sender.sendBatch(new Buffer('abc'), [0, 2], [2, 5], 2, port, '127.0.0.1');
+}, RangeError);
+assert.equal(sender._writeWrappers.length, 0);
+
+var req = sender.sendBatch(new Buffer(payload), offsets, lengths, COUNT, port, '127.0.0.1');
+req.oncomplete = function(status) {
+    assert.equal(status, 0);
+    sent = true;
+};
+
+process.on('exit', function() {
+    assert(sent);
+    assert.equal(received.length, COUNT);
+    for (var i = 0; i < COUNT; i++) {
+        assert.equal(received[i], 'metric' + i + ':1|c');
+    }
+});
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var net = require('net');
+var assert = require('assert');
+
+// Batched small writes interleaved with large writes, string writes, a gather
+// write and a shutdown are written, and complete, in the order they were made.
+
+var large = new Buffer(32 * 1024);
+large.fill('L');
+
+var received = [];
+var completed = [];
+var shutdown = false;
+
+var server = net.createServer(function(socket) {
+    socket.on('data', function(data) {
+        received.push(data);
+    });
+    socket.on('end', function() {
+        server.close();
+    });
+});
+
+server.listen(0, '127.0.0.1', function() {
+    var client = net.connect(server.address().port, '127.0.0.1', function() {
+        var handle = client._handle;
+        var complete = function(name) {
+            return function(status, h, wrapper) {
+                assert.equal(status, 0);
+                completed.push(name + ':' + wrapper.bytes);
+            };
+        };
+        handle.writeBuffer(new Buffer('a')).oncomplete = complete('a');
+        handle.writeBuffer(new Buffer('bc')).oncomplete = complete('b');
+        // flushes the batch before it
+        handle.writeBuffer(large).oncomplete = complete('large');
+        handle.writeBuffer(new Buffer('d')).oncomplete = complete('d');
+        handle.writeAsciiString('ef').oncomplete = complete('ascii');
+        handle.writeBuffer(new Buffer('g')).oncomplete = complete('g');
+        handle.writeUtf8String('h\u00e9').oncomplete = complete('utf8');
+        handle.writeBuffer(new Buffer('i')).oncomplete = complete('i');
+        handle.writev([new Buffer('j'), 'k']).oncomplete = complete('writev');
+        handle.writeBuffer(new Buffer('l')).oncomplete = complete('l');
+        handle.writeBuffer(new Buffer('mn')).oncomplete = complete('m');
+        handle.shutdown().oncomplete = function(status) {
+            assert.equal(status, 0);
+            // every write completed before the shutdown
+            assert.equal(completed.length, 11);
+            shutdown = true;
+            client.destroy();
+        };
+    });
+});
+
+process.on('exit', function() {
+    var expected = 'abc' + large.toString('binary') + 'd' + 'ef' + 'g' +
+                   new Buffer('h\u00e9').toString('binary') + 'i' + 'jk' + 'lmn';
+    assert.equal(Buffer.concat(received).toString('binary'), expected);
+    assert.deepEqual(completed, ['a:1', 'b:2', 'large:32768', 'd:1', 'ascii:2', 'g:1',
+                                 'utf8:3', 'i:1', 'writev:2', 'l:1', 'm:2']);
+    assert.equal(shutdown, true);
+});
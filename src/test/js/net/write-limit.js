@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var net = require('net');
+var fs = require('fs');
+var os = require('os');
+var path = require('path');
+var assert = require('assert');
+var tcp = process.binding('tcp_wrap');
+
+var before = tcp.getConnectionMetrics();
+var drained = false;
+var closed = false;
+var held = false;
+
+var file = path.join(os.tmpdir(), 'avatar-js-write-limit-' + process.pid);
+fs.writeFileSync(file, new Buffer(100000));
+
+var server = net.createServer(function(socket) {
+    socket.resume();
+});
+
+server.listen(0, '127.0.0.1', function() {
+    var port = server.address().port;
+
+    // over the cap, reads pause until the queue drains
+    var paused = net.connect(port, '127.0.0.1', function() {
+        paused._handle.setWriteLimit(1000);
+        var drains = 0;
+        paused.on('drain', function() {
+            drains++;
+        });
+        paused.once('drain', function() {
+            drained = true;
+            // reads resumed before the stream's own 'drain', which is not doubled
+            assert.equal(paused._handle._limitPaused, false);
+            setImmediate(function() {
+                assert.equal(drains, 1);
+            });
+            paused.destroy();
+            done();
+        });
+        paused.write(new Buffer(20000));
+        assert.equal(paused._handle._limitPaused, true);
+    });
+
+    // over the cap with the close policy, the socket is destroyed
+    var refused = net.connect(port, '127.0.0.1', function() {
+        refused._handle.setWriteLimit(1000, 'close');
+        refused.write(new Buffer(20000));
+    });
+    refused.on('error', function(e) {
+        assert.equal(e.code, 'ENOBUFS');
+        closed = true;
+        done();
+    });
+
+    // writes waiting behind a file being sent count against the cap
+    var sending = net.connect(port, '127.0.0.1', function() {
+        var handle = sending._handle;
+        var fd = fs.openSync(file, 'r');
+        handle.setWriteLimit(1000);
+        // to the end of the file, its length is only known once sent
+        handle.sendFile(fd).oncomplete = function(status) {
+            assert.equal(status, 0);
+            fs.closeSync(fd);
+        };
+        assert.equal(handle._limitPaused, false);
+        handle.writeBuffer(new Buffer(20000)).oncomplete = function(status) {
+            assert.equal(status, 0);
+            held = true;
+            sending.destroy();
+            done();
+        };
+        assert.equal(handle._limitPaused, true);
+    });
+});
+
+function done() {
+    if (drained && closed && held) {
+        server.close();
+    }
+}
+
+process.on('exit', function() {
+    fs.unlinkSync(file);
+    assert(drained && closed && held);
+    var metrics = tcp.getConnectionMetrics();
+    assert.equal(metrics.writeLimitPauses - before.writeLimitPauses, 2);
+    assert.equal(metrics.writeLimitCloses - before.writeLimitCloses, 1);
+});
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var net = require('net');
+var assert = require('assert');
+
+var received = '';
+var completed = [];
+
+var server = net.createServer(function(socket) {
+    socket.on('data', function(data) {
+        received += data;
+    });
+    socket.on('end', function() {
+        server.close();
+    });
+});
+
+server.listen(0, '127.0.0.1', function() {
+    var client = net.connect(server.address().port, '127.0.0.1', function() {
+        var handle = client._handle;
+        var complete = function(status, h, wrapper) {
+            assert.equal(status, 0);
+            completed.push(wrapper.bytes);
+            if (completed.length === 4) {
+                client.end();
+            }
+        };
+        // one gather write for three chunks
+        handle.writev([new Buffer('ab'), 'cd', new Buffer('e')]).oncomplete = complete;
+        // small writes of the same tick are batched, each completes once
+        handle.writeBuffer(new Buffer('fg')).oncomplete = complete;
+        handle.writeBuffer(new Buffer('h')).oncomplete = complete;
+        assert.equal(handle.writeQueueSize >= 3, true);
+        handle.writeAsciiString('ij').oncomplete = complete;
+    });
+});
+
+process.on('exit', function() {
+    assert.equal(received, 'abcdefghij');
+    assert.deepEqual(completed, [5, 2, 1, 2]);
+});
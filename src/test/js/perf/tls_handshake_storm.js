@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+/*
+ * Latency of established TLS connections while new connections keep
+ * handshaking. Compare the percentiles of
+ *   avatar-js -Davatar-js.tls.handshake.offload=false tls_handshake_storm.js
+ *   avatar-js tls_handshake_storm.js
+ * adding -Davatar-js.tls.context.cache.size=0 to both, so that every
+ * handshake of the storm is a full one.
+ * options: -duration <seconds> -established <n> -storm <concurrent handshakes>
+ */
+var tls = require('tls');
+var fs = require('fs');
+var log = console.log;
+
+var port = parseInt(process.env.PORT || 8000);
+var duration = 20;
+var established = 10;
+var storm = 50;
+for (var i = 0; i < process.argv.length - 1; i++) {
+    switch (process.argv[i]) {
+        case '-duration': duration = +process.argv[i + 1]; break;
+        case '-established': established = +process.argv[i + 1]; break;
+        case '-storm': storm = +process.argv[i + 1]; break;
+    }
+}
+
+var options = {
+    key: fs.readFileSync('test/fixtures/keys/agent1-key.pem'),
+    cert: fs.readFileSync('test/fixtures/keys/agent1-cert.pem')
+};
+
+var go = true;
+var latencies = [];
+var handshakes = 0;
+
+var server = tls.createServer(options, function(socket) {
+    // echo server, the storm connections end immediately
+    socket.on('data', function(data) {
+        socket.write(data);
+    });
+    socket.on('error', function() {});
+});
+
+function ping(socket) {
+    var sent = process.hrtime();
+    socket.once('data', function() {
+        var elapsed = process.hrtime(sent);
+        latencies.push(elapsed[0] * 1e3 + elapsed[1] / 1e6);
+        if (go) {
+            setTimeout(function() { ping(socket); }, 1);
+        } else {
+            socket.end();
+        }
+    });
+    socket.write('ping');
+}
+
+function handshake() {
+    var socket = tls.connect({port: port, rejectUnauthorized: false}, function() {
+        handshakes++;
+        socket.end();
+    });
+    socket.on('error', function() {});
+    socket.on('close', function() {
+        if (go) {
+            handshake();
+        }
+    });
+}
+
+function percentile(sorted, p) {
+    return sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * p))];
+}
+
+server.listen(port, function() {
+    var ready = 0;
+    for (var i = 0; i < established; i++) {
+        var socket = tls.connect({port: port, rejectUnauthorized: false}, function() {
+            ping(this);
+            if (++ready === established) {
+                // established connections are warm, start the storm
+                latencies = [];
+                for (var j = 0; j < storm; j++) {
+                    handshake();
+                }
+            }
+        });
+    }
+    log('Perf test started for ' + duration + ' seconds.');
+    setTimeout(function() {
+        go = false;
+        var sorted = latencies.slice().sort(function(a, b) { return a - b; });
+        log('handshakes %d, %d per sec', handshakes, Math.floor(handshakes / duration));
+        log('established round trips %d', sorted.length);
+        log('p50 %d ms, p99 %d ms, max %d ms',
+            percentile(sorted, 0.5).toFixed(2),
+            percentile(sorted, 0.99).toFixed(2),
+            sorted[sorted.length - 1].toFixed(2));
+        process.exit(0);
+    }, duration * 1000);
+});